@@ -1,14 +1,12 @@
 package control;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
-import io.FixationTimeWriter;
-import io.IteratedSimulationWriter;
-import io.PhaseWriter;
-import io.RdfWriter;
 import operations.Simulator;
 import structures.distributions.AbstractPointDistribution;
-import structures.distributions.ZeroOriginDistribution;
 import control.parameters.Parameters;
 
 
@@ -35,7 +33,15 @@ import control.parameters.Parameters;
  * Runs the simulation, possibly multiple times depending on the parameters.
  * 
  * Performs prefactor steps only once, even if simulation is to be run
- * several times.
+ * several times: the distribution is shared by every replicate, and
+ * each thread's solver (including the FFT of the kernel and, usually,
+ * the first full solve) by every replicate on that thread. See
+ * ReplicateExecutor.
+ * 
+ * REPLICATES is the number of replicates to run, or, if
+ * REPLICATE_TOLERANCE is set, the most that will be run: replicates stop
+ * once the cheater fixation probability is known to within the
+ * tolerance (see FixationEstimate).
  * 
  * @author dbborens@princeton.edu
  *
@@ -43,48 +49,42 @@ import control.parameters.Parameters;
 public abstract class AbstractRunner {
 
 	protected static void run(Parameters p) throws IOException {
+		ArrayList<Parameters> points = new ArrayList<Parameters>();
+		points.add(p);
 		
-		AbstractPointDistribution dist = new ZeroOriginDistribution(p);
-		FixationTimeWriter ftw = new FixationTimeWriter(p);
-		
-		IteratedSimulationWriter isw;
-		if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
-			isw = new IteratedSimulationWriter(p);
-		else
-			isw = null;
-		
-		RdfWriter rdf;
-		
-		if (p.getHaltCount() != -1)
-			rdf = new RdfWriter(p);
-		else
-			rdf = null;
-		
-		PhaseWriter pw = new PhaseWriter(p);
-		
-		for (int i = 0; i < p.getReplicates(); i++) {
+		run(points);
+	}
 	
-			Simulator solver = new Simulator(p, dist, isw, ftw, rdf, pw);
-			String simPath = solver.getSimPath();
+	/**
+	 * Runs each of several parameter sets, with its output under its own
+	 * PATH. Parameter sets that share a point source distribution (see
+	 * Simulator.distributionKey) are run one after another, and the
+	 * distribution is only constructed once for all of them. Every
+	 * replicate of every parameter set runs on the same pool of
+	 * REPLICATE_THREADS threads, which is taken from the first set.
+	 */
+	protected static void run(List<Parameters> points) throws IOException {
+		
+		LinkedHashMap<String, List<Parameters>> groups = new LinkedHashMap<String, List<Parameters>>();
+		for (Parameters p : points) {
+			String key = Simulator.distributionKey(p);
 			
-			if (p.getOutput().equalsIgnoreCase("FULL"))
-				new Visualizer(simPath);
-	
-			// NOTE: Even if the random seed is set to '*' in the parameters,
-			// all replicates beyond the first one will receive new random seeds.
-			if (p.getReplicates() > 1) {
-				p.nextReplicate();
-			}
+			if (!groups.containsKey(key))
+				groups.put(key, new ArrayList<Parameters>());
+			
+			groups.get(key).add(p);
 		}
 		
-		if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
-			isw.close();
+		ReplicateExecutor executor = new ReplicateExecutor(points.get(0).getReplicateThreads());
 		
-		if (p.getHaltCount() != -1)
-			rdf.close();
+		for (List<Parameters> group : groups.values()) {
+			AbstractPointDistribution dist = Simulator.makeDistribution(group.get(0));
+			
+			for (Parameters p : group)
+				executor.submit(new Ensemble(p, dist));
+		}
 		
-		ftw.close();
-		pw.close();
+		executor.finish();
 		System.out.println("Done.");
 	}
 	
@@ -0,0 +1,209 @@
+package control;
+
+import io.Checkpoint;
+import io.FixationTimeWriter;
+import io.IteratedSimulationWriter;
+import io.MetricsWriter;
+import io.PhaseWriter;
+import io.RdfWriter;
+import operations.Simulator;
+import structures.distributions.AbstractPointDistribution;
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * The replicates of one parameter set: the parameters, the point source
+ * distribution they share, and the writers that aggregate them. The
+ * writers are opened on construction, and written out by close() once
+ * the last replicate has been merged (see ReplicateExecutor).
+ * 
+ * If REPLICATE_TOLERANCE is set, the ensemble also keeps an estimate of
+ * the cheater fixation probability (see FixationEstimate), and is
+ * settled, needing no more replicates, once it is precise enough.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class Ensemble {
+
+	private Parameters p;
+	private AbstractPointDistribution dist;
+	
+	private IteratedSimulationWriter isw;
+	private FixationTimeWriter ftw;
+	private RdfWriter rdf;
+	private PhaseWriter pw;
+	private MetricsWriter mw;
+	
+	// The solver every replicate uses, once it has been chosen
+	private String solverName = null;
+	
+	// Null unless the number of replicates is adaptive
+	private FixationEstimate estimate;
+	private volatile boolean settled = false;
+	
+	public Ensemble(Parameters p, AbstractPointDistribution dist) {
+		this.p = p;
+		this.dist = dist;
+		
+		ftw = new FixationTimeWriter(p);
+		
+		if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
+			isw = new IteratedSimulationWriter(p);
+		else
+			isw = null;
+		
+		if (p.getHaltCount() != -1)
+			rdf = new RdfWriter(p);
+		else
+			rdf = null;
+		
+		pw = new PhaseWriter(p);
+		
+		if (p.isCollectingMetrics())
+			mw = new MetricsWriter(p);
+		else
+			mw = null;
+		
+		if (p.isAdaptiveReplicates())
+			estimate = new FixationEstimate(p);
+		else
+			estimate = null;
+	}
+	
+	public Parameters getParameters() {
+		return p;
+	}
+	
+	public AbstractPointDistribution getDistribution() {
+		return dist;
+	}
+	
+	/**
+	 * The name of the solver for this ensemble's replicates (see
+	 * Simulator.resolveSolver). With SOLVER=AUTO, the solvers are timed
+	 * the first time this is called, and every thread then uses the same
+	 * one, so that the output does not depend on which thread ran which
+	 * replicate.
+	 */
+	public synchronized String getSolverName() {
+		if (solverName == null)
+			solverName = Simulator.resolveSolver(p, dist);
+		
+		return solverName;
+	}
+	
+	/**
+	 * Null if OUTPUT=MINIMAL.
+	 */
+	public IteratedSimulationWriter getIteratedSimulationWriter() {
+		return isw;
+	}
+	
+	public FixationTimeWriter getFixationTimeWriter() {
+		return ftw;
+	}
+	
+	/**
+	 * Null unless HALT_COUNT is set.
+	 */
+	public RdfWriter getRdfWriter() {
+		return rdf;
+	}
+	
+	public PhaseWriter getPhaseWriter() {
+		return pw;
+	}
+	
+	/**
+	 * Null unless METRICS is set.
+	 */
+	public MetricsWriter getMetricsWriter() {
+		return mw;
+	}
+	
+	/**
+	 * Records the outcome of a merged replicate. Replicates must be
+	 * recorded in order, so that the point at which the ensemble settles
+	 * does not depend on the number of threads.
+	 */
+	public void record(byte fixationType) {
+		if (estimate == null)
+			return;
+		
+		estimate.record(fixationType);
+		
+		if (estimate.isPrecise())
+			settled = true;
+	}
+	
+	/**
+	 * True once the fixation estimate is precise enough that no more
+	 * replicates need be run. Always false unless REPLICATE_TOLERANCE is
+	 * set.
+	 */
+	public boolean isSettled() {
+		return settled;
+	}
+	
+	public void close() {
+		if (isw != null)
+			isw.close();
+		
+		if (rdf != null)
+			rdf.close();
+		
+		ftw.close();
+		pw.close();
+		
+		if (mw != null)
+			mw.close();
+		
+		if (estimate != null) {
+			System.out.println(estimate.report());
+			estimate.write();
+		}
+		
+		// Every replicate is now in the files
+		if (p.isCheckpointing())
+			Checkpoint.clear(p);
+	}
+	
+	/**
+	 * Closes the writers after a replicate has failed, so that the
+	 * replicates merged so far are written out. Unlike close(), this
+	 * reports no estimate and keeps the checkpoints, so that the run can
+	 * be resumed.
+	 */
+	public void abort() {
+		if (isw != null)
+			isw.close();
+		
+		if (rdf != null)
+			rdf.close();
+		
+		ftw.close();
+		pw.close();
+		
+		if (mw != null)
+			mw.close();
+	}
+}
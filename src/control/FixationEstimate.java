@@ -0,0 +1,209 @@
+package control;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import structures.cell.AbstractCell;
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * A running estimate of the probability that cheaters go to fixation,
+ * for an ensemble whose number of replicates is not fixed in advance
+ * (REPLICATE_TOLERANCE). The outcome of each replicate is recorded as
+ * it is merged (see FixationTimeWriter.getFixationType); a replicate
+ * that reaches MAX_TIME_STEP without fixation counts as one in which
+ * cheaters did not fix.
+ *
+ * The uncertainty is the Wilson score interval at REPLICATE_CONFIDENCE,
+ * which unlike the normal approximation stays sensible when few or none
+ * of the replicates fix. Once at least MIN_REPLICATES have been
+ * recorded and its half-width is within REPLICATE_TOLERANCE, the
+ * estimate is precise enough and no more replicates need be run.
+ * When nothing has fixed, the half-width is z^2 / (2 (n + z^2)), so a
+ * loose tolerance can be met by MIN_REPLICATES alone (see
+ * Parameters.replicateTolerance).
+ * Outcomes are recorded in replicate order, so where a run stops does
+ * not depend on the number of threads.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class FixationEstimate {
+
+	private Parameters p;
+
+	// Standard normal quantile for the confidence level
+	private double z;
+
+	private int trials = 0;
+	private int cheaterFixations = 0;
+	private int cooperatorFixations = 0;
+
+	public FixationEstimate(Parameters p) {
+		this.p = p;
+		z = normalQuantile(1D - (1D - p.getReplicateConfidence()) / 2D);
+	}
+
+	/**
+	 * Records the outcome of one replicate: the type that went to
+	 * fixation, or AbstractCell.OTHER.
+	 */
+	public void record(byte fixationType) {
+		trials++;
+
+		if (fixationType == AbstractCell.CHEATER)
+			cheaterFixations++;
+		else if (fixationType == AbstractCell.COOPERATOR)
+			cooperatorFixations++;
+	}
+
+	/**
+	 * True once enough replicates have been recorded for the interval to
+	 * be within the tolerance.
+	 */
+	public boolean isPrecise() {
+		return trials >= p.getMinReplicates() && getHalfWidth() <= p.getReplicateTolerance();
+	}
+
+	public int getTrials() {
+		return trials;
+	}
+
+	/**
+	 * Fraction of the recorded replicates in which cheaters went to
+	 * fixation.
+	 */
+	public double getProbability() {
+		return (double) cheaterFixations / trials;
+	}
+
+	/**
+	 * Half the width of the Wilson interval.
+	 */
+	public double getHalfWidth() {
+		if (trials == 0)
+			return 0.5D;
+
+		double n = trials;
+		double phat = getProbability();
+
+		return z / (1D + z * z / n) * Math.sqrt(phat * (1D - phat) / n + z * z / (4D * n * n));
+	}
+
+	/**
+	 * Center of the Wilson interval, which is pulled from the observed
+	 * fraction toward one half.
+	 */
+	public double getCenter() {
+		if (trials == 0)
+			return 0.5D;
+
+		double n = trials;
+		return (getProbability() + z * z / (2D * n)) / (1D + z * z / n);
+	}
+
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Ran ");
+		sb.append(trials);
+		sb.append(" of at most ");
+		sb.append(p.getReplicates());
+		sb.append(" replicates. Cheater fixation probability: ");
+		sb.append(String.format("%.4f", getProbability()));
+		sb.append(" (interval at confidence ");
+		sb.append(p.getReplicateConfidence());
+		sb.append(": ");
+		sb.append(String.format("%.4f", getCenter() - getHalfWidth()));
+		sb.append(" to ");
+		sb.append(String.format("%.4f", getCenter() + getHalfWidth()));
+		sb.append(", half-width ");
+		sb.append(String.format("%.4f", getHalfWidth()));
+		sb.append("; target ");
+		sb.append(p.getReplicateTolerance());
+		sb.append(")");
+
+		if (!isPrecise())
+			sb.append(". The target was not reached.");
+
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the estimate and its precision to fix.precision.txt.
+	 */
+	public void write() {
+		try {
+			File file = new File(p.getRootPath() + "/fix.precision.txt");
+			BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+
+			bw.write("REPLICATES_RUN=" + trials + "\n");
+			bw.write("REPLICATES_MAX=" + p.getReplicates() + "\n");
+			bw.write("CHEATER_FIXATIONS=" + cheaterFixations + "\n");
+			bw.write("COOPERATOR_FIXATIONS=" + cooperatorFixations + "\n");
+			bw.write("PROBABILITY=" + getProbability() + "\n");
+			bw.write("LOWER=" + (getCenter() - getHalfWidth()) + "\n");
+			bw.write("UPPER=" + (getCenter() + getHalfWidth()) + "\n");
+			bw.write("HALF_WIDTH=" + getHalfWidth() + "\n");
+			bw.write("CONFIDENCE=" + p.getReplicateConfidence() + "\n");
+			bw.write("TOLERANCE=" + p.getReplicateTolerance() + "\n");
+			bw.write("PRECISE=" + isPrecise() + "\n");
+
+			bw.close();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Inverse of the standard normal CDF, by Acklam's rational
+	 * approximation (relative error below 1.2e-9).
+	 */
+	private static double normalQuantile(double q) {
+		double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+				1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+		double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+				6.680131188771972e+01, -1.328068155288572e+01};
+		double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+				-2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+		double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+				3.754408661907416e+00};
+
+		double low = 0.02425D;
+
+		if (q < low) {
+			double t = Math.sqrt(-2D * Math.log(q));
+			return (((((c[0] * t + c[1]) * t + c[2]) * t + c[3]) * t + c[4]) * t + c[5])
+					/ ((((d[0] * t + d[1]) * t + d[2]) * t + d[3]) * t + 1D);
+		} else if (q > 1D - low) {
+			double t = Math.sqrt(-2D * Math.log(1D - q));
+			return -(((((c[0] * t + c[1]) * t + c[2]) * t + c[3]) * t + c[4]) * t + c[5])
+					/ ((((d[0] * t + d[1]) * t + d[2]) * t + d[3]) * t + 1D);
+		} else {
+			double u = q - 0.5D;
+			double r = u * u;
+			return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * u
+					/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1D);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package control;
+
+import io.MetricsWriter;
+
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import structures.LatencyHistogram;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * The counters and latency histograms of one replicate (see
+ * Parameters.getMetrics), or the totals of an ensemble (see
+ * io.MetricsWriter). Instrumented code looks its counters and
+ * histograms up by name once, when it is constructed, and keeps them.
+ * 
+ * Unless METRICS is set, the histograms are disabled and record
+ * nothing, and nothing is written. Counters count either way, since
+ * that costs no more than checking.
+ * 
+ * The names in use are:
+ *   solve        time to compute the catalyst field (Simulator)
+ *   turnover     time for the life cycle to carry out one step
+ *   pdf.build    time to bring the distribution of events up to date
+ *   pdf.sample   time to draw an event from it
+ *   schedule     time to reschedule threshold events
+ *   writer.push  time spent reporting to the writers
+ *   events       number of time steps
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class Metrics {
+
+	private boolean enabled;
+
+	// Seconds between samples (0 = never)
+	private double interval;
+
+	private LinkedHashMap<String, Counter> counters;
+	private LinkedHashMap<String, LatencyHistogram> histograms;
+
+	// Wall clock time over which the replicate ran
+	private long begin = 0L;
+	private long elapsed = 0L;
+
+	// Where samples go, if anywhere, and when the last was taken
+	private MetricsWriter sink = null;
+	private long lastSample;
+
+	public Metrics(boolean enabled, double interval) {
+		this.enabled = enabled;
+		this.interval = interval;
+
+		counters = new LinkedHashMap<String, Counter>();
+		histograms = new LinkedHashMap<String, LatencyHistogram>();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the counter with the given name, creating it if need be.
+	 */
+	public Counter counter(String name) {
+		Counter counter = counters.get(name);
+
+		if (counter == null) {
+			counter = new Counter();
+			counters.put(name, counter);
+		}
+
+		return counter;
+	}
+
+	/**
+	 * Returns the histogram with the given name, creating it if need be.
+	 */
+	public LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+
+		if (histogram == null) {
+			histogram = new LatencyHistogram(enabled);
+			histograms.put(name, histogram);
+		}
+
+		return histogram;
+	}
+
+	public Set<String> getCounterNames() {
+		return counters.keySet();
+	}
+
+	public Set<String> getHistogramNames() {
+		return histograms.keySet();
+	}
+
+	/**
+	 * Marks the start of the replicate.
+	 */
+	public void begin() {
+		begin = System.nanoTime();
+		lastSample = begin;
+	}
+
+	/**
+	 * Marks the end of the replicate.
+	 */
+	public void end() {
+		elapsed += System.nanoTime() - begin;
+	}
+
+	/**
+	 * Wall clock time between begin and end, in seconds. For a total,
+	 * this is the sum over the replicates.
+	 */
+	public double getSeconds() {
+		return elapsed / 1E9;
+	}
+
+	/**
+	 * Time steps per second of wall clock time.
+	 */
+	public double getEventRate() {
+		return elapsed == 0L ? 0D : counter("events").get() / getSeconds();
+	}
+
+	/**
+	 * Sends samples to the given writer every METRICS_INTERVAL seconds.
+	 */
+	public void setSink(MetricsWriter sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * True if a sample is due. Checking reads the clock, so this is only
+	 * done between time steps.
+	 */
+	public boolean isSampleDue() {
+		return enabled && sink != null && interval > 0D && System.nanoTime() - lastSample >= interval * 1E9;
+	}
+
+	/**
+	 * Sends the current values to the sink.
+	 */
+	public void sample(int replicate, int step) {
+		long now = System.nanoTime();
+		lastSample = now;
+
+		sink.sample(this, replicate, step, (now - begin) / 1E9);
+	}
+
+	/**
+	 * Adds the counts, values and running time of another registry.
+	 */
+	public void merge(Metrics other) {
+		for (String name : other.counters.keySet())
+			counter(name).add(other.counters.get(name).get());
+
+		for (String name : other.histograms.keySet())
+			histogram(name).merge(other.histograms.get(name));
+
+		elapsed += other.elapsed;
+	}
+
+	public static class Counter {
+
+		private long value = 0L;
+
+		public void increment() {
+			value++;
+		}
+
+		public void add(long n) {
+			value += n;
+		}
+
+		public long get() {
+			return value;
+		}
+	}
+}
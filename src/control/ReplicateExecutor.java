@@ -0,0 +1,335 @@
+package control;
+
+import io.FixationTimeWriter;
+import io.IteratedSimulationWriter;
+import io.PhaseWriter;
+import io.RdfWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import operations.Simulator;
+import operations.solvers.AbstractRDSolver;
+import operations.solvers.SolverRegistry;
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Runs the replicates of one or more ensembles (see Ensemble) on a
+ * single work-stealing pool of REPLICATE_THREADS threads.
+ * 
+ * Each replicate gets its own copy of the parameters, with its own
+ * random seed and streams (see Parameters.forReplicate). Each thread
+ * keeps the solver of the last ensemble it worked on, and reuses it as
+ * long as it is given replicates of that ensemble.
+ * 
+ * A replicate reports to forks of the writers (see, e.g.,
+ * IteratedSimulationWriter.fork), which are merged into the writers in
+ * the order the replicates were submitted, on the calling thread. The
+ * output is therefore the same however many threads are used. At most
+ * twice as many replicates as threads are running or waiting to be
+ * merged at any time, and an ensemble is closed as soon as its last
+ * replicate has been merged. Replicates of the next ensemble start
+ * while the last ones of the previous ensemble are still running. If a
+ * replicate fails, the ensembles still open are closed with what has
+ * been merged so far (see Ensemble.abort), and the failure is rethrown.
+ * 
+ * If the ensemble's number of replicates is adaptive, the outcome of
+ * each replicate is recorded as it is merged (see Ensemble.record).
+ * Once the ensemble is settled, no more of its replicates are
+ * submitted, and those already submitted are discarded unmerged: at
+ * most a window's worth of work is wasted. Since outcomes are recorded
+ * in order, the replicates that make it into the output are the same
+ * however many threads are used.
+ * 
+ * If METRICS is set, each replicate's counters and timings (see
+ * Metrics) are merged along with its writers. The solver is built
+ * before a replicate's clock starts, so that building it is not
+ * counted against the first replicate on each thread. The timings, of
+ * course, differ from one run to the next.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class ReplicateExecutor {
+
+	private ForkJoinPool pool;
+	private int window;
+	
+	// Submitted replicates that have not yet been merged, oldest first
+	private LinkedList<Replicate> queue;
+	
+	// Submitted ensembles that have not yet been closed
+	private LinkedHashSet<Ensemble> open;
+	
+	// The last solver built by each thread, and the ensemble it is for
+	private ThreadLocal<SolverSlot> solvers;
+	
+	public ReplicateExecutor(int threads) {
+		pool = new ForkJoinPool(threads);
+		window = 2 * threads;
+		queue = new LinkedList<Replicate>();
+		open = new LinkedHashSet<Ensemble>();
+		
+		solvers = new ThreadLocal<SolverSlot>() {
+			@Override
+			protected SolverSlot initialValue() {
+				return new SolverSlot();
+			}
+		};
+	}
+	
+	/**
+	 * Schedules every replicate of an ensemble, or as many as it takes for
+	 * it to settle. Earlier replicates are merged whenever the window is
+	 * full, so this returns once the last replicate of the ensemble has
+	 * been submitted.
+	 */
+	public void submit(Ensemble ensemble) throws IOException {
+		int replicates = ensemble.getParameters().getReplicates();
+		
+		try {
+			open.add(ensemble);
+			
+			for (int i = 0; i < replicates; i++) {
+				if (queue.size() >= window)
+					mergeNext();
+				
+				// The replicates merged so far may have been enough
+				if (ensemble.isSettled())
+					break;
+				
+				Replicate replicate = new Replicate(ensemble, i, i == replicates - 1);
+				replicate.future = pool.submit(replicate);
+				queue.add(replicate);
+			}
+		} catch (IOException ex) {
+			abort();
+			throw ex;
+		} catch (RuntimeException ex) {
+			abort();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Waits for every submitted replicate, merges it, closes the remaining
+	 * ensembles and shuts the pool down.
+	 */
+	public void finish() throws IOException {
+		try {
+			while (!queue.isEmpty())
+				mergeNext();
+		} catch (IOException ex) {
+			abort();
+			throw ex;
+		} catch (RuntimeException ex) {
+			abort();
+			throw ex;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Shuts the pool down after a failure, and closes the ensembles that
+	 * are still open (see Ensemble.abort), so that the replicates merged
+	 * so far are not lost.
+	 */
+	private void abort() {
+		pool.shutdownNow();
+		
+		for (Ensemble ensemble : open)
+			ensemble.abort();
+		
+		open.clear();
+	}
+	
+	/**
+	 * Waits for the oldest replicate and merges it. If it was the last
+	 * replicate of its ensemble, or its ensemble is now settled, the
+	 * ensemble is closed.
+	 */
+	private void mergeNext() throws IOException {
+		Replicate replicate = queue.removeFirst();
+		join(replicate.future);
+		
+		Ensemble ensemble = replicate.ensemble;
+		replicate.merge();
+		ensemble.record(replicate.ftw.getFixationType());
+		
+		if (ensemble.getParameters().getOutput().equalsIgnoreCase("FULL"))
+			new Visualizer(replicate.simPath);
+		
+		if (replicate.last) {
+			ensemble.close();
+			open.remove(ensemble);
+		} else if (ensemble.isSettled()) {
+			discard(ensemble);
+			ensemble.close();
+			open.remove(ensemble);
+		}
+	}
+	
+	/**
+	 * Drops the queued replicates of a settled ensemble, which are at the
+	 * head of the queue. Those that have not started return at once; the
+	 * rest are waited for, so that none is still writing once the
+	 * ensemble is closed, and their directories are deleted.
+	 */
+	private void discard(Ensemble ensemble) {
+		while (!queue.isEmpty() && queue.getFirst().ensemble == ensemble) {
+			Replicate replicate = queue.removeFirst();
+			join(replicate.future);
+			
+			if (replicate.simPath != null)
+				delete(new File(replicate.simPath));
+		}
+	}
+	
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+		
+		file.delete();
+	}
+	
+	/**
+	 * Waits for a replicate, rethrowing whatever it threw.
+	 */
+	private void join(Future<Replicate> future) {
+		try {
+			future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException(cause);
+		}
+	}
+	
+	/**
+	 * Returns this thread's solver for the given ensemble, building a new
+	 * one if the last one was for another ensemble.
+	 */
+	private AbstractRDSolver solverFor(Ensemble ensemble) {
+		SolverSlot slot = solvers.get();
+		
+		if (slot.ensemble != ensemble) {
+			slot.ensemble = ensemble;
+			slot.solver = SolverRegistry.make(ensemble.getSolverName(), ensemble.getParameters(), ensemble.getDistribution());
+		}
+		
+		return slot.solver;
+	}
+	
+	private static class SolverSlot {
+		private Ensemble ensemble;
+		private AbstractRDSolver solver;
+	}
+	
+	/**
+	 * One replicate, with the forks of the writers that it reports to.
+	 */
+	private class Replicate implements Callable<Replicate> {
+		
+		private Ensemble ensemble;
+		private int index;
+		private boolean last;
+		private Future<Replicate> future;
+		
+		private IteratedSimulationWriter isw;
+		private FixationTimeWriter ftw;
+		private RdfWriter rdf;
+		private PhaseWriter pw;
+		
+		private String simPath;
+		
+		// Null until the replicate has run
+		private Metrics metrics = null;
+		
+		public Replicate(Ensemble ensemble, int index, boolean last) {
+			this.ensemble = ensemble;
+			this.index = index;
+			this.last = last;
+			
+			// Forks start out nearly empty, and grow as the replicate runs
+			IteratedSimulationWriter isw = ensemble.getIteratedSimulationWriter();
+			RdfWriter rdf = ensemble.getRdfWriter();
+			
+			this.isw = (isw == null ? null : isw.fork());
+			this.ftw = ensemble.getFixationTimeWriter().fork();
+			this.rdf = (rdf == null ? null : rdf.fork());
+			this.pw = ensemble.getPhaseWriter().fork();
+		}
+		
+		@Override
+		public Replicate call() {
+			if (ensemble.isSettled())
+				return this;
+			
+			Parameters q = ensemble.getParameters().forReplicate(index);
+			AbstractRDSolver solver = solverFor(ensemble);
+			
+			metrics = q.getMetrics();
+			metrics.setSink(ensemble.getMetricsWriter());
+			metrics.begin();
+			
+			Simulator simulator = new Simulator(q, solver, isw, ftw, rdf, pw);
+			simPath = simulator.getSimPath();
+			
+			metrics.end();
+			
+			return this;
+		}
+		
+		public void merge() {
+			if (isw != null)
+				ensemble.getIteratedSimulationWriter().merge(isw);
+			
+			ensemble.getFixationTimeWriter().merge(ftw);
+			
+			if (rdf != null)
+				ensemble.getRdfWriter().merge(rdf);
+			
+			ensemble.getPhaseWriter().merge(pw);
+			
+			if (ensemble.getMetricsWriter() != null)
+				ensemble.getMetricsWriter().merge(index, metrics);
+		}
+	}
+}
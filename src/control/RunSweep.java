@@ -0,0 +1,132 @@
+package control;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import control.parameters.Parameters;
+import control.parameters.ParametersFromArgs;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Runs a grid of parameter sets in one process. The arguments are those
+ * of RunFromArguments, except that any argument other than PATH and
+ * REPLICATE_THREADS may list several values, separated by commas:
+ * 
+ *   ... DIFFUSION=0.5,1.0,2.0 BENEFIT=0.1,0.2 PATH=/data/sweep/
+ * 
+ * runs all six combinations. The last listed argument varies fastest.
+ * Each point writes its output to a directory of its own under PATH,
+ * one level per listed argument (here, /data/sweep/DIFFUSION_0.5/
+ * BENEFIT_0.1/ and so on).
+ * 
+ * Every point is parsed and validated before anything runs. Points
+ * that share a point source distribution only construct it once, and
+ * all replicates of all points run on one pool (see AbstractRunner).
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class RunSweep extends AbstractRunner {
+
+	/**
+	 * @param args
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		run(expand(args));
+	}
+	
+	/**
+	 * Returns the parameters of every point of the grid.
+	 */
+	private static List<Parameters> expand(String[] args) {
+		ArrayList<String> fixed = new ArrayList<String>();
+		ArrayList<String> keys = new ArrayList<String>();
+		ArrayList<String[]> values = new ArrayList<String[]>();
+		String path = null;
+		
+		for (int i = 0; i < args.length; i++) {
+			String[] tuple = args[i].trim().split("=");
+			if (tuple.length != 2)
+				throw new IllegalArgumentException("Unrecognized token " + args[i]);
+			
+			if (tuple[0].equals("PATH")) {
+				path = tuple[1];
+			} else if (tuple[1].indexOf(',') == -1) {
+				fixed.add(args[i].trim());
+			} else if (tuple[0].equals("REPLICATE_THREADS")) {
+				throw new IllegalArgumentException("REPLICATE_THREADS cannot take several values: every point runs on the same pool.");
+			} else {
+				keys.add(tuple[0]);
+				values.add(tuple[1].split(","));
+			}
+		}
+		
+		if (path == null)
+			throw new IllegalArgumentException("A PATH must be specified.");
+		
+		// Point directories go under PATH, which may or may not end in a slash
+		String root = path;
+		while (root.length() > 1 && root.endsWith("/"))
+			root = root.substring(0, root.length() - 1);
+		
+		ArrayList<Parameters> points = new ArrayList<Parameters>();
+		
+		// The index of the current value of each listed argument
+		int[] index = new int[keys.size()];
+		
+		while (true) {
+			String[] point = new String[fixed.size() + keys.size() + 1];
+			StringBuilder pointPath = new StringBuilder(root);
+			
+			for (int i = 0; i < fixed.size(); i++)
+				point[i] = fixed.get(i);
+			
+			for (int k = 0; k < keys.size(); k++) {
+				String value = values.get(k)[index[k]];
+				point[fixed.size() + k] = keys.get(k) + "=" + value;
+				
+				// Paths may not contain '=' (see ParametersFromArgs.tokenize)
+				pointPath.append('/');
+				pointPath.append(keys.get(k));
+				pointPath.append('_');
+				pointPath.append(value);
+			}
+			
+			pointPath.append('/');
+			point[point.length - 1] = "PATH=" + (keys.isEmpty() ? path : pointPath.toString());
+			points.add(new ParametersFromArgs(point));
+			
+			// Advance to the next point, last argument first
+			int k = keys.size() - 1;
+			while (k >= 0 && ++index[k] == values.get(k).length) {
+				index[k] = 0;
+				k--;
+			}
+			
+			if (k < 0)
+				break;
+		}
+		
+		return points;
+	}
+}
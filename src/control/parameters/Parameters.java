@@ -1,6 +1,11 @@
 package control.parameters;
 
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import structures.SplitRandom;
+import control.Metrics;
+import operations.solvers.SolverRegistry;
 
 /**
  * Copyright (c) 2013, David Bruce Borenstein.
@@ -46,7 +51,13 @@ import java.util.Random;
  * @author dbborens@princeton.edu
  *
  */
-public abstract class Parameters {
+public abstract class Parameters implements Cloneable {
+	
+	// Random number streams (see getRandom)
+	public static final int INITIAL_CONDITION = 0;
+	public static final int SAMPLING = 1;
+	public static final int DIVISION = 2;
+	public static final int STREAMS = 3;
 	
 	// Machine epsilon
 	protected double epsilon = calcEpsilon();
@@ -85,6 +96,99 @@ public abstract class Parameters {
 	// calculating the radial distribution function (-1 means don't halt for RDF)
 	protected int haltCount;
 	
+	// Fraction of its peak below which the point source distribution is
+	// treated as zero by solvers that truncate it (see LatticeDistribution).
+	// 0 (the default) keeps the whole kernel, so that output is the same as
+	// without truncation; 1e-6 is recommended for large lattices.
+	protected double kernelTolerance;
+	
+	// Number of worker threads for solvers that can run in parallel.
+	// 1 (the default) means everything runs on the calling thread.
+	protected int parallelism;
+	
+	// How to compute the point source distribution. Permitted options:
+	//  CGS --> iterative solution of the lattice system (default)
+	//  BESSEL --> closed-form continuum solution with periodic images
+	protected String kernelMethod;
+	
+	// Use the exact lattice Green's function near the source (BESSEL only)
+	protected boolean latticeCorrection;
+	
+	// Compare the BESSEL distribution to the CGS solution at startup
+	protected boolean validateKernel;
+	
+	// Preconditioner for the iterative steady state solves. Permitted options:
+	//  DIAGONAL --> Jacobi (default)
+	//  MULTIGRID --> geometric multigrid V-cycle
+	protected String preconditioner;
+	
+	// Directory for cached point source distributions (null to disable),
+	// and the size in megabytes beyond which old entries are evicted
+	protected String kernelCache;
+	protected double kernelCacheSize;
+	
+	// Re-anchor the incremental solver to a full solve every so many
+	// events, or when its drift bound exceeds the tolerance (0 = never)
+	protected int resyncInterval;
+	protected double resyncTolerance;
+	
+	// Bound on the relative change in total propensity during one leap
+	// of the TauLeapingReplacement operator
+	protected double tauEpsilon;
+	
+	// How the cell lattice is stored. Permitted options:
+	//  ARRAYS --> type, biomass and growth rate of every cell (default)
+	//  PACKED --> cell types only, two bits per site (replacement only)
+	protected String lattice;
+	
+	// Which solver computes the catalyst field: the name of one in
+	// operations.solvers.SolverRegistry (default IterativeSmart), or AUTO
+	// to time each of them on the initial production and use the fastest.
+	// Under AUTO, solvers whose solutions differ from the reference by
+	// more than SOLVER_TOLERANCE (relative to its largest value) are
+	// passed over. The choice depends on timings, and the solvers differ
+	// by rounding, so seeded AUTO runs are not bit-reproducible; name the
+	// solver it logs to reproduce one.
+	protected String solver;
+	protected double solverTolerance;
+	
+	// Number of replicates run at the same time (see ReplicateExecutor)
+	protected int replicateThreads;
+	
+	// Stop running replicates once the confidence interval for the cheater
+	// fixation probability is this narrow (0 = always run REPLICATES), at
+	// this confidence level, but not before MIN_REPLICATES have concluded
+	// (see control.FixationEstimate). Even with no fixations at all, the
+	// half-width after n replicates is z^2 / (2 (n + z^2)): about 0.139 at
+	// the defaults (10 replicates, 95%), so any tolerance of 0.14 or more
+	// stops after MIN_REPLICATES without a single fixation having been
+	// seen. Choose a tolerance well below the probability to be resolved.
+	protected double replicateTolerance;
+	protected double replicateConfidence;
+	protected int minReplicates;
+	
+	// How random numbers are drawn. Permitted options:
+	//  SPLIT --> an independent stream for each subsystem (default)
+	//  SHARED --> one java.util.Random for everything, as in older versions
+	protected String randomStreams;
+	
+	// Write a checkpoint of every replicate every so many time steps, or
+	// every so many seconds (0 = never; see io.Checkpoint)
+	protected int checkpointInterval;
+	protected double checkpointSeconds;
+	
+	// Collect timings and counts, and write them to metrics.txt; sample
+	// them every so many seconds (0 = never) while replicates run (see
+	// control.Metrics)
+	protected boolean collectMetrics;
+	protected double metricsInterval;
+	
+	// Metrics of the replicate these parameters are for
+	private Metrics metrics;
+	
+	// Shared worker pool, created the first time it is needed
+	private ForkJoinPool pool;
+	
 	// Output path (does not recognize ~ as home directory)
 	protected String path;
 	
@@ -121,7 +225,7 @@ public abstract class Parameters {
 	 */
 	protected long randomSeed;
 	
-	protected Random random;
+	private Random[] streams;
 	//private HashMap<String, Double> params = new HashMap<String, Double>(11);
 
 	protected int currentReplicate = 0;
@@ -166,11 +270,101 @@ public abstract class Parameters {
 		
 		if (infiniteGamma && (growth != 0D || benefit != 0D))
 			throw new IllegalArgumentException("When using infinite gamma mode, the GROWTH and BENEFIT arguments must be set to 0.");
+		
+		if (!(kernelMethod.equalsIgnoreCase("CGS") || kernelMethod.equalsIgnoreCase("BESSEL")))
+			throw new IllegalArgumentException("Unrecognized kernel method '" + kernelMethod + "'. Acceptable options are CGS and BESSEL.");
+		
+		if (!(preconditioner.equalsIgnoreCase("DIAGONAL") || preconditioner.equalsIgnoreCase("MULTIGRID")))
+			throw new IllegalArgumentException("Unrecognized preconditioner '" + preconditioner + "'. Acceptable options are DIAGONAL and MULTIGRID.");
+		
+		if (kernelCacheSize <= 0D)
+			throw new IllegalArgumentException("KERNEL_CACHE_SIZE must be positive.");
+		
+		if (resyncInterval < 0 || resyncTolerance < 0D)
+			throw new IllegalArgumentException("RESYNC_INTERVAL and RESYNC_TOLERANCE must not be negative.");
+		
+		if (tauEpsilon <= 0D || tauEpsilon >= 1D)
+			throw new IllegalArgumentException("TAU_EPSILON must be between 0 and 1.");
+		
+		if (parallelism < 1)
+			throw new IllegalArgumentException("PARALLELISM must be at least 1.");
+		
+		if (replicateThreads < 1)
+			throw new IllegalArgumentException("REPLICATE_THREADS must be at least 1.");
+		
+		if (replicateTolerance < 0D)
+			throw new IllegalArgumentException("REPLICATE_TOLERANCE must not be negative.");
+		
+		if (replicateConfidence <= 0D || replicateConfidence >= 1D)
+			throw new IllegalArgumentException("REPLICATE_CONFIDENCE must be between 0 and 1.");
+		
+		if (minReplicates < 1)
+			throw new IllegalArgumentException("MIN_REPLICATES must be at least 1.");
+		
+		if (!(lattice.equalsIgnoreCase("ARRAYS") || lattice.equalsIgnoreCase("PACKED")))
+			throw new IllegalArgumentException("Unrecognized lattice '" + lattice + "'. Acceptable options are ARRAYS and PACKED.");
+		
+		if (lattice.equalsIgnoreCase("PACKED") && !(cellOperator.equals("ContinuousReplacement")
+				|| cellOperator.equals("TauLeapingReplacement") || cellOperator.equals("ZeroBaselineReplacement")))
+			throw new IllegalArgumentException("The PACKED lattice does not store biomass. It can only be used with ContinuousReplacement, " +
+					"TauLeapingReplacement and ZeroBaselineReplacement.");
+		
+		if (lattice.equalsIgnoreCase("PACKED") && output.equalsIgnoreCase("FULL"))
+			throw new IllegalArgumentException("The PACKED lattice does not store biomass or growth rates, which OUTPUT=FULL writes.");
+		
+		if (!(solver.equalsIgnoreCase(SolverRegistry.AUTO) || SolverRegistry.contains(solver)))
+			throw new IllegalArgumentException("Unrecognized solver '" + solver + "'. Acceptable options are "
+					+ SolverRegistry.AUTO + ", " + SolverRegistry.names() + ".");
+		
+		if (kernelTolerance < 0D || kernelTolerance >= 1D)
+			throw new IllegalArgumentException("KERNEL_TOLERANCE must be at least 0 and less than 1.");
+		
+		if (solverTolerance < 0D)
+			throw new IllegalArgumentException("SOLVER_TOLERANCE must not be negative.");
+		
+		if (!(randomStreams.equalsIgnoreCase("SPLIT") || randomStreams.equalsIgnoreCase("SHARED")))
+			throw new IllegalArgumentException("Unrecognized random streams '" + randomStreams + "'. Acceptable options are SPLIT and SHARED.");
+		
+		if (checkpointInterval < 0 || checkpointSeconds < 0D)
+			throw new IllegalArgumentException("CHECKPOINT_INTERVAL and CHECKPOINT_SECONDS must not be negative.");
+		
+		if (isCheckpointing() && !randomStreams.equalsIgnoreCase("SPLIT"))
+			throw new IllegalArgumentException("Checkpoints require RANDOM_STREAMS=SPLIT, whose state can be saved.");
+		
+		if (isCheckpointing() && !(output.equalsIgnoreCase("SPARSE") || output.equalsIgnoreCase("MINIMAL")))
+			throw new IllegalArgumentException("Checkpoints require OUTPUT=SPARSE or MINIMAL: the state files of the other modes are written as the run goes.");
+		
+		if (metricsInterval < 0D)
+			throw new IllegalArgumentException("METRICS_INTERVAL must not be negative.");
+		
+		if (metricsInterval > 0D && !collectMetrics)
+			throw new IllegalArgumentException("METRICS_INTERVAL requires METRICS=true.");
+		
+		makeStreams();
+		metrics = new Metrics(collectMetrics, metricsInterval);
 
 		
 		rootPath = path;
 	}
 	
+	/**
+	 * Seeds the random number streams from randomSeed. Each SPLIT stream
+	 * is derived from the seed with a negative key, so that none of them
+	 * is derived like a replicate (see replicateSeed).
+	 */
+	private void makeStreams() {
+		streams = new Random[STREAMS];
+		
+		if (randomStreams.equalsIgnoreCase("SHARED")) {
+			Random shared = new Random(randomSeed);
+			for (int s = 0; s < STREAMS; s++)
+				streams[s] = shared;
+		} else {
+			for (int s = 0; s < STREAMS; s++)
+				streams[s] = new SplitRandom(SplitRandom.child(randomSeed, -1L - s));
+		}
+	}
+	
 	// Returns true if the IC occupies the entire lattice.
 	private boolean icRequiresArgument() {
 		if (ic.equals("WellMixed"))
@@ -195,13 +389,36 @@ public abstract class Parameters {
 	}
 
 	/**
-	 * The random number generator for the entire system. If the same generator
-	 * is always used, then simulation results can be reproduced subsequently.
-	 * 
-	 * @return
+	 * The random number generator for one subsystem: INITIAL_CONDITION
+	 * (cell placement and biomass), SAMPLING (the choice and timing of
+	 * events) or DIVISION (where daughter cells go). Each is seeded from
+	 * the random seed, so simulation results can be reproduced, and
+	 * changing how one subsystem draws numbers leaves the others alone.
+	 * With RANDOM_STREAMS=SHARED, all three are the same generator.
+	 */
+	public Random getRandom(int stream) {
+		return streams[stream];
+	}
+	
+	/**
+	 * The state of every random number stream, for a checkpoint. Only
+	 * SPLIT streams can be saved.
+	 */
+	public long[] getStreamStates() {
+		long[] states = new long[STREAMS];
+		for (int s = 0; s < STREAMS; s++)
+			states[s] = ((SplitRandom) streams[s]).getState();
+		
+		return states;
+	}
+	
+	/**
+	 * Resumes every random number stream from states returned by
+	 * getStreamStates.
 	 */
-	public Random getRandom() {
-		return random;
+	public void setStreamStates(long[] states) {
+		for (int s = 0; s < STREAMS; s++)
+			streams[s].setSeed(states[s]);
 	}
 	
 	public int W() {
@@ -269,6 +486,13 @@ public abstract class Parameters {
 		return sb.toString();
 	}
 	
+	/**
+	 * Index of the replicate these parameters are for (see forReplicate).
+	 */
+	public int getReplicate() {
+		return currentReplicate;
+	}
+	
 	public boolean isStamp() {
 		return stamp;
 	}
@@ -297,27 +521,6 @@ public abstract class Parameters {
 		return maxTimeStep;
 	}
 	
-	public void nextReplicate() {
-		/* Using the iterative solver, the simulation is so fast
-		 * that it may complete in less than 1 ms for some cases!
-		 * 
-		 * As a result, the random seed may not advance without
-		 * looping until the system time reflects the next ms.
-		 * 
-		 * On a system that records sub-millisecond system time
-		 * (research computing?) this will not be a problem.
-		 */
-		
-		long oldRandomSeed = randomSeed;
-		
-		while (randomSeed == oldRandomSeed)
-			randomSeed = System.nanoTime();
-		
-		random = new Random(randomSeed);
-		
-		currentReplicate++;
-	}
-
 	public int getReplicates() {
 		return replicates;
 	}
@@ -342,4 +545,161 @@ public abstract class Parameters {
 	public int getHaltCount() {
 		return haltCount;
 	}
+
+	public double getKernelTolerance() {
+		return kernelTolerance;
+	}
+
+	public String getKernelMethod() {
+		return kernelMethod;
+	}
+
+	public boolean isLatticeCorrection() {
+		return latticeCorrection;
+	}
+
+	public boolean isValidateKernel() {
+		return validateKernel;
+	}
+
+	public String getPreconditioner() {
+		return preconditioner;
+	}
+
+	public String getKernelCache() {
+		return kernelCache;
+	}
+
+	public double getKernelCacheSize() {
+		return kernelCacheSize;
+	}
+
+	public int getResyncInterval() {
+		return resyncInterval;
+	}
+
+	public double getResyncTolerance() {
+		return resyncTolerance;
+	}
+
+	public double getTauEpsilon() {
+		return tauEpsilon;
+	}
+
+	public String getLattice() {
+		return lattice;
+	}
+
+	public String getSolver() {
+		return solver;
+	}
+
+	public double getSolverTolerance() {
+		return solverTolerance;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getReplicateThreads() {
+		return replicateThreads;
+	}
+
+	public String getRandomStreams() {
+		return randomStreams;
+	}
+
+	public double getReplicateTolerance() {
+		return replicateTolerance;
+	}
+
+	public double getReplicateConfidence() {
+		return replicateConfidence;
+	}
+
+	public int getMinReplicates() {
+		return minReplicates;
+	}
+
+	/**
+	 * True if replicates are run until the fixation probability is known
+	 * to within REPLICATE_TOLERANCE, with REPLICATES as the most to run.
+	 */
+	public boolean isAdaptiveReplicates() {
+		return replicateTolerance > 0D;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public double getCheckpointSeconds() {
+		return checkpointSeconds;
+	}
+
+	public boolean isCheckpointing() {
+		return checkpointInterval > 0 || checkpointSeconds > 0D;
+	}
+
+	public boolean isCollectingMetrics() {
+		return collectMetrics;
+	}
+
+	public double getMetricsInterval() {
+		return metricsInterval;
+	}
+
+	/**
+	 * The counters and timings of the replicate these parameters are
+	 * for. Each replicate's copy has its own (see forReplicate).
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * The random seed of the given replicate. The first replicate uses the
+	 * random seed itself, and the others seeds derived from it. Running
+	 * with a replicate's seed and REPLICATES=1 repeats that replicate.
+	 */
+	public long replicateSeed(int replicate) {
+		if (replicate == 0)
+			return randomSeed;
+		
+		return SplitRandom.child(randomSeed, replicate);
+	}
+
+	/**
+	 * A copy of these parameters for one replicate, with its own seed and
+	 * random number streams, so that replicates can run at the same time.
+	 * Everything else, including the worker pool, is shared.
+	 */
+	public Parameters forReplicate(int replicate) {
+		Parameters copy;
+		try {
+			copy = (Parameters) clone();
+		} catch (CloneNotSupportedException ex) {
+			throw new IllegalStateException(ex);
+		}
+		
+		copy.pool = getPool();
+		copy.currentReplicate = replicate;
+		copy.randomSeed = replicateSeed(replicate);
+		copy.makeStreams();
+		copy.metrics = new Metrics(collectMetrics, metricsInterval);
+		
+		return copy;
+	}
+
+	/**
+	 * The worker pool shared by all parallel components. Its worker
+	 * threads are daemons, so it never needs to be shut down.
+	 */
+	public synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(parallelism);
+		
+		return pool;
+	}
 }
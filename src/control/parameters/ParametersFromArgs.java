@@ -20,7 +20,6 @@ package control.parameters;
  */
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Random;
 
 public class ParametersFromArgs extends Parameters {
 
@@ -44,6 +43,29 @@ public class ParametersFromArgs extends Parameters {
 		stringRepresentation = displayForm(r);
 		haltCount = Integer.valueOf(r.get("HALT_COUNT"));		
 		replicates = Integer.valueOf(r.get("REPLICATES"));
+		kernelTolerance = Double.valueOf(optional(r, "KERNEL_TOLERANCE", "0"));
+		parallelism = Integer.valueOf(optional(r, "PARALLELISM", "1"));
+		replicateThreads = Integer.valueOf(optional(r, "REPLICATE_THREADS", "1"));
+		replicateTolerance = Double.valueOf(optional(r, "REPLICATE_TOLERANCE", "0"));
+		replicateConfidence = Double.valueOf(optional(r, "REPLICATE_CONFIDENCE", "0.95"));
+		minReplicates = Integer.valueOf(optional(r, "MIN_REPLICATES", "10"));
+		kernelMethod = optional(r, "KERNEL_METHOD", "CGS");
+		latticeCorrection = Boolean.valueOf(optional(r, "LATTICE_CORRECTION", "true"));
+		validateKernel = Boolean.valueOf(optional(r, "VALIDATE_KERNEL", "false"));
+		preconditioner = optional(r, "PRECONDITIONER", "DIAGONAL");
+		kernelCache = optional(r, "KERNEL_CACHE", null);
+		resyncInterval = Integer.valueOf(optional(r, "RESYNC_INTERVAL", "0"));
+		resyncTolerance = Double.valueOf(optional(r, "RESYNC_TOLERANCE", "0"));
+		tauEpsilon = Double.valueOf(optional(r, "TAU_EPSILON", "0.03"));
+		kernelCacheSize = Double.valueOf(optional(r, "KERNEL_CACHE_SIZE", "256"));
+		lattice = optional(r, "LATTICE", "ARRAYS");
+		randomStreams = optional(r, "RANDOM_STREAMS", "SPLIT");
+		solver = optional(r, "SOLVER", "IterativeSmart");
+		solverTolerance = Double.valueOf(optional(r, "SOLVER_TOLERANCE", "1e-6"));
+		checkpointInterval = Integer.valueOf(optional(r, "CHECKPOINT_INTERVAL", "0"));
+		checkpointSeconds = Double.valueOf(optional(r, "CHECKPOINT_SECONDS", "0"));
+		collectMetrics = Boolean.valueOf(optional(r, "METRICS", "false"));
+		metricsInterval = Double.valueOf(optional(r, "METRICS_INTERVAL", "0"));
 		calc_dt(r);
 		
 		// This gets the rest of the parameters also
@@ -56,18 +78,26 @@ public class ParametersFromArgs extends Parameters {
 	private void assignRandom(HashMap<String, String> r) {
 		if (r.get("RANDOM_SEED").equals("*")) {
 			randomSeed = System.currentTimeMillis();
-			random = new Random(randomSeed);
 			
 			// This is cloodgy, but...
 			String rsStr = ((Long) randomSeed).toString();
 			r.put("RANDOM_SEED", rsStr);
 		} else {
 			randomSeed = Long.valueOf(r.get("RANDOM_SEED"));
-			random = new Random(randomSeed);
-			
 		}
 	}
 	
+	/**
+	 * Returns the value of an argument that may be omitted, or the
+	 * default value if it was not supplied.
+	 */
+	private String optional(HashMap<String, String> r, String key, String defaultValue) {
+		if (r.containsKey(key))
+			return r.get(key);
+		
+		return defaultValue;
+	}
+	
 	private void calc_dt(HashMap<String, String> r) {
 		double d = Double.valueOf(r.get("DIFFUSION"));
 		double max_r = Double.valueOf(r.get("MAX_R"));
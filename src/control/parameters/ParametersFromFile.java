@@ -4,7 +4,6 @@ import io.ParameterReader;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Random;
 
 /**
  * /**
@@ -50,10 +49,90 @@ public class ParametersFromFile extends Parameters {
 		maxTimeStep = r.getMaxTimeStep();
 		replicates = r.getReplicates();
 		dimension = width * width;
-		random = new Random(randomSeed);
 		path = r.getPath();
 		haltCount = r.getHaltCount();
 		
+		if (r.get("KERNEL_TOLERANCE") != null)
+			kernelTolerance = r.get("KERNEL_TOLERANCE");
+		else
+			kernelTolerance = 0D;
+		
+		if (r.get("PARALLELISM") != null)
+			parallelism = r.get("PARALLELISM").intValue();
+		else
+			parallelism = 1;
+		
+		if (r.get("REPLICATE_THREADS") != null)
+			replicateThreads = r.get("REPLICATE_THREADS").intValue();
+		else
+			replicateThreads = 1;
+		
+		if (r.get("REPLICATE_TOLERANCE") != null)
+			replicateTolerance = r.get("REPLICATE_TOLERANCE");
+		else
+			replicateTolerance = 0D;
+		
+		if (r.get("REPLICATE_CONFIDENCE") != null)
+			replicateConfidence = r.get("REPLICATE_CONFIDENCE");
+		else
+			replicateConfidence = 0.95D;
+		
+		if (r.get("MIN_REPLICATES") != null)
+			minReplicates = r.get("MIN_REPLICATES").intValue();
+		else
+			minReplicates = 10;
+		
+		kernelMethod = r.getKernelMethod();
+		latticeCorrection = r.isLatticeCorrection();
+		validateKernel = r.isValidateKernel();
+		preconditioner = r.getPreconditioner();
+		kernelCache = r.getKernelCache();
+		lattice = r.getLattice();
+		randomStreams = r.getRandomStreams();
+		solver = r.getSolver();
+		
+		if (r.get("SOLVER_TOLERANCE") != null)
+			solverTolerance = r.get("SOLVER_TOLERANCE");
+		else
+			solverTolerance = 1E-6;
+		
+		if (r.get("KERNEL_CACHE_SIZE") != null)
+			kernelCacheSize = r.get("KERNEL_CACHE_SIZE");
+		else
+			kernelCacheSize = 256D;
+		
+		if (r.get("RESYNC_INTERVAL") != null)
+			resyncInterval = r.get("RESYNC_INTERVAL").intValue();
+		else
+			resyncInterval = 0;
+		
+		if (r.get("RESYNC_TOLERANCE") != null)
+			resyncTolerance = r.get("RESYNC_TOLERANCE");
+		else
+			resyncTolerance = 0D;
+		
+		if (r.get("TAU_EPSILON") != null)
+			tauEpsilon = r.get("TAU_EPSILON");
+		else
+			tauEpsilon = 0.03D;
+		
+		if (r.get("CHECKPOINT_INTERVAL") != null)
+			checkpointInterval = r.get("CHECKPOINT_INTERVAL").intValue();
+		else
+			checkpointInterval = 0;
+		
+		if (r.get("CHECKPOINT_SECONDS") != null)
+			checkpointSeconds = r.get("CHECKPOINT_SECONDS");
+		else
+			checkpointSeconds = 0D;
+		
+		collectMetrics = r.isMetrics();
+		
+		if (r.get("METRICS_INTERVAL") != null)
+			metricsInterval = r.get("METRICS_INTERVAL");
+		else
+			metricsInterval = 0D;
+		
 		stringRepresentation = r.toString();
 
 		calc_dt(r);
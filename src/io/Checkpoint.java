@@ -0,0 +1,421 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import operations.Simulator;
+import operations.processes.AbstractLifeCycle;
+import operations.solvers.AbstractRDSolver;
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Saves the state of a running replicate, so that a run that is killed
+ * can pick up where it left off rather than start over. A checkpoint
+ * is written every CHECKPOINT_INTERVAL time steps and/or whenever
+ * CHECKPOINT_SECONDS have passed since the last one, between two time
+ * steps. When a replicate concludes, its checkpoint is replaced by one
+ * that only holds what it reported to the writers, so that it isn't
+ * run again. A run that finds checkpoints in its output directory
+ * resumes from them, and deletes them once its files are written (see
+ * clear).
+ *
+ * Each replicate has its own file, PATH/checkpoints/replicate<k>.checkpoint.
+ * It is a header (magic number, version, kind, W, replicate, random
+ * seed, and the parameters that shape the trajectory), the step, the
+ * class of the solver, the random number streams, the life cycle (see AbstractLifeCycle.save),
+ * the solver (see AbstractRDSolver.save) and the forks of the writers,
+ * followed by a CRC32 of all of the above. Anything that can be
+ * recomputed exactly from that, such as the running totals of
+ * LatticeStateTracker and the replacement propensities, is recomputed
+ * instead of written. A resumed replicate therefore produces exactly
+ * the same output as one that was never interrupted.
+ *
+ * A checkpoint is written to a temporary file, which is synced and then
+ * renamed over the old one, so a crash while writing leaves the
+ * previous checkpoint intact. A file that is truncated, corrupt or for
+ * other parameters is discarded. Checkpoints are only a safeguard, so
+ * I/O errors while writing them are reported and otherwise ignored.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class Checkpoint {
+
+	private static final String DIRECTORY = "checkpoints";
+	private static final String PREFIX = "replicate";
+	private static final String SUFFIX = ".checkpoint";
+
+	private static final int MAGIC = 0x434B5054;
+	private static final int VERSION = 3;
+
+	// Kinds of checkpoint
+	private static final byte RUNNING = 0;
+	private static final byte FINISHED = 1;
+
+	// Size of the stream buffers
+	private static final int BUFFER = 1 << 16;
+
+	private Parameters p;
+
+	private File directory;
+	private File file;
+
+	// Time of the last checkpoint, or of construction
+	private long lastSave;
+
+	private boolean finished = false;
+
+	/**
+	 * @param p The parameters of one replicate (see Parameters.forReplicate)
+	 */
+	public Checkpoint(Parameters p) {
+		this.p = p;
+		directory = new File(p.getRootPath(), DIRECTORY);
+		file = new File(directory, PREFIX + p.getReplicate() + SUFFIX);
+		lastSave = System.nanoTime();
+	}
+
+	/**
+	 * True if a checkpoint should be written after the given number of
+	 * time steps.
+	 */
+	public boolean isDue(int step) {
+		if (p.getCheckpointInterval() > 0 && step % p.getCheckpointInterval() == 0)
+			return true;
+
+		return p.getCheckpointSeconds() > 0D
+				&& System.nanoTime() - lastSave >= (long) (p.getCheckpointSeconds() * 1e9);
+	}
+
+	/**
+	 * True if the last call to restore found a replicate that had
+	 * already concluded. Only the forks were restored, and there is
+	 * nothing left to run.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Saves a running replicate after the given number of time steps.
+	 * isw and rdf may be null.
+	 */
+	public void save(int step, AbstractLifeCycle ca, AbstractRDSolver solver, IteratedSimulationWriter isw,
+			FixationTimeWriter ftw, RdfWriter rdf, PhaseWriter pw) {
+
+		write(RUNNING, step, ca, solver, isw, ftw, rdf, pw);
+	}
+
+	/**
+	 * Saves the forks of a replicate that has concluded.
+	 */
+	public void finish(IteratedSimulationWriter isw, FixationTimeWriter ftw, RdfWriter rdf, PhaseWriter pw) {
+		write(FINISHED, 0, null, null, isw, ftw, rdf, pw);
+	}
+
+	/**
+	 * Restores the replicate from its checkpoint, if there is a valid
+	 * one, and returns the number of time steps it had run. Returns zero,
+	 * having changed nothing, if there isn't. The life cycle and solver
+	 * must be freshly constructed (and reset); the life cycle's initial
+	 * condition is replaced.
+	 */
+	public int restore(AbstractLifeCycle ca, AbstractRDSolver solver, IteratedSimulationWriter isw,
+			FixationTimeWriter ftw, RdfWriter rdf, PhaseWriter pw) {
+
+		finished = false;
+
+		if (!file.exists())
+			return 0;
+
+		try {
+			if (!verify()) {
+				System.out.println("Discarding invalid checkpoint " + file.getPath());
+				file.delete();
+				return 0;
+			}
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER));
+
+			try {
+				byte kind = readHeader(in);
+				if (kind < 0) {
+					System.out.println("Discarding checkpoint " + file.getPath() + ", which is for other parameters");
+					in.close();
+					file.delete();
+					return 0;
+				}
+
+				int step = 0;
+
+				if (kind == RUNNING) {
+					step = in.readInt();
+
+					// SOLVER=AUTO may have chosen differently this time
+					if (!in.readUTF().equals(solver.getClass().getSimpleName())) {
+						System.out.println("Discarding checkpoint " + file.getPath() + ", which is for another solver");
+						in.close();
+						file.delete();
+						return 0;
+					}
+
+					long[] states = new long[Parameters.STREAMS];
+					for (int s = 0; s < states.length; s++)
+						states[s] = in.readLong();
+
+					p.setStreamStates(states);
+					ca.restore(in);
+					solver.restore(in);
+				}
+
+				restoreForks(in, isw, ftw, rdf, pw);
+
+				finished = (kind == FINISHED);
+				lastSave = System.nanoTime();
+
+				System.out.println("Resumed replicate " + p.getReplicate() + " from " + file.getPath()
+						+ (finished ? " (concluded)" : " at step " + step));
+
+				return step;
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			// The file was verified, so whatever was restored is now suspect
+			throw new RuntimeException("Could not restore checkpoint " + file.getPath(), ex);
+		}
+	}
+
+	/**
+	 * Deletes the checkpoints of every replicate, and any temporary files
+	 * left by a run that was killed while writing one, once the files of
+	 * the run have been written.
+	 */
+	public static void clear(Parameters p) {
+		File directory = new File(p.getRootPath(), DIRECTORY);
+		File[] entries = directory.listFiles();
+		if (entries == null)
+			return;
+
+		for (File entry : entries) {
+			if (entry.getName().startsWith(PREFIX))
+				entry.delete();
+		}
+
+		directory.delete();
+	}
+
+	private void write(byte kind, int step, AbstractLifeCycle ca, AbstractRDSolver solver,
+			IteratedSimulationWriter isw, FixationTimeWriter ftw, RdfWriter rdf, PhaseWriter pw) {
+
+		File temp = null;
+
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Could not create directory " + directory.getPath());
+
+			temp = File.createTempFile(file.getName(), ".tmp", directory);
+			FileOutputStream fos = new FileOutputStream(temp);
+
+			try {
+				CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, BUFFER), new CRC32());
+				DataOutputStream out = new DataOutputStream(checked);
+
+				writeHeader(out, kind);
+
+				if (kind == RUNNING) {
+					out.writeInt(step);
+					out.writeUTF(solver.getClass().getSimpleName());
+
+					for (long state : p.getStreamStates())
+						out.writeLong(state);
+
+					ca.save(out);
+					solver.save(out);
+				}
+
+				saveForks(out, isw, ftw, rdf, pw);
+
+				out.writeLong(checked.getChecksum().getValue());
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				fos.close();
+			}
+
+			// Replace the old checkpoint in one step
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			lastSave = System.nanoTime();
+		} catch (IOException ex) {
+			System.out.println("Could not write checkpoint " + file.getPath() + ": " + ex.getMessage());
+
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	private void writeHeader(DataOutputStream out, byte kind) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeByte(kind);
+		out.writeInt(p.W());
+		out.writeInt(p.getReplicate());
+		out.writeLong(p.getRandomSeed());
+		out.writeUTF(fingerprint());
+	}
+
+	/**
+	 * Returns the kind of checkpoint, or -1 if it is not for these
+	 * parameters.
+	 */
+	private byte readHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			return -1;
+
+		byte kind = in.readByte();
+
+		if (in.readInt() != p.W() || in.readInt() != p.getReplicate() || in.readLong() != p.getRandomSeed())
+			return -1;
+
+		if (!in.readUTF().equals(fingerprint()))
+			return -1;
+
+		return kind;
+	}
+
+	private void saveForks(DataOutputStream out, IteratedSimulationWriter isw, FixationTimeWriter ftw,
+			RdfWriter rdf, PhaseWriter pw) throws IOException {
+
+		out.writeBoolean(isw != null);
+		if (isw != null)
+			isw.save(out);
+
+		ftw.save(out);
+
+		out.writeBoolean(rdf != null);
+		if (rdf != null)
+			rdf.save(out);
+
+		pw.save(out);
+	}
+
+	private void restoreForks(DataInputStream in, IteratedSimulationWriter isw, FixationTimeWriter ftw,
+			RdfWriter rdf, PhaseWriter pw) throws IOException {
+
+		if (in.readBoolean() != (isw != null))
+			throw new IOException("Checkpoint does not match the writers.");
+
+		if (isw != null)
+			isw.restore(in);
+
+		ftw.restore(in);
+
+		if (in.readBoolean() != (rdf != null))
+			throw new IOException("Checkpoint does not match the writers.");
+
+		if (rdf != null)
+			rdf.restore(in);
+
+		pw.restore(in);
+	}
+
+	/**
+	 * Checks the length and the checksum of the file.
+	 */
+	private boolean verify() throws IOException {
+		long length = file.length();
+		if (length < 8)
+			return false;
+
+		CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+
+		try {
+			byte[] chunk = new byte[BUFFER];
+			long remaining = length - 8;
+
+			while (remaining > 0) {
+				int n = (int) Math.min(chunk.length, remaining);
+				in.readFully(chunk, 0, n);
+				remaining -= n;
+			}
+
+			long expected = checked.getChecksum().getValue();
+			return in.readLong() == expected;
+		} catch (EOFException ex) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The parameters, other than W and the seed, that determine the
+	 * trajectory of a replicate and what it reports. The run length and
+	 * the number of threads are left out, so a run can be resumed with
+	 * more of either.
+	 */
+	private String fingerprint() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(p.getCellOperator());
+		sb.append(':');
+		sb.append(p.getLattice().toUpperCase());
+		sb.append(':');
+		sb.append(p.getIC());
+		sb.append(':');
+		sb.append(p.getIcArgument());
+		sb.append(':');
+		sb.append(p.randomizeCheaters());
+		sb.append(':');
+		sb.append(p.randomizeCooperators());
+		sb.append(':');
+		sb.append(p.isInfiniteGamma());
+		sb.append(':');
+		sb.append(p.getOutput().toUpperCase());
+		sb.append(':');
+		sb.append(p.getHaltCount());
+		sb.append(':');
+		sb.append(p.getResyncInterval());
+		sb.append(':');
+		sb.append(Simulator.distributionKey(p));
+
+		double[] values = {p.getGrowth(), p.getBenefit(), p.getThreshold(), p.getResyncTolerance(), p.getTauEpsilon()};
+		for (double value : values) {
+			sb.append(':');
+			sb.append(Long.toHexString(Double.doubleToLongBits(value)));
+		}
+
+		return sb.toString();
+	}
+}
@@ -1,9 +1,12 @@
 package io;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import structures.cell.AbstractCell;
 
@@ -35,6 +38,10 @@ import control.parameters.Parameters;
  * seed and the number of time steps to each type of
  * fixation.
  * 
+ * A fork (see fork()) keeps its records in memory for one replicate
+ * running on another thread. They reach the files when the fork is
+ * merged back.
+ * 
  * @author dbborens@princeton.edu
  *
  */
@@ -43,6 +50,10 @@ public class FixationTimeWriter {
 	private BufferedWriter pbw;
 	private Parameters p;
 	
+	// Records kept by a fork, or null if this writes to the files
+	private StringWriter cheatBuffer;
+	private StringWriter prodBuffer;
+	
 	public FixationTimeWriter(Parameters p) {
 		this.p = p;
 		try {
@@ -62,6 +73,90 @@ public class FixationTimeWriter {
 		}
 	}
 	
+	private FixationTimeWriter(FixationTimeWriter parent) {
+		p = parent.p;
+		cheatBuffer = new StringWriter();
+		prodBuffer = new StringWriter();
+		cbw = new BufferedWriter(cheatBuffer);
+		pbw = new BufferedWriter(prodBuffer);
+	}
+	
+	/**
+	 * Returns an empty writer that keeps its records in memory, for one
+	 * replicate running on another thread.
+	 */
+	public FixationTimeWriter fork() {
+		return new FixationTimeWriter(this);
+	}
+	
+	/**
+	 * Appends the records of a fork. Merging the forks in replicate
+	 * order gives the same files as pushing to this writer directly.
+	 */
+	public void merge(FixationTimeWriter fork) {
+		try {
+			fork.cbw.flush();
+			fork.pbw.flush();
+			cbw.write(fork.cheatBuffer.toString());
+			pbw.write(fork.prodBuffer.toString());
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * For a fork, the type that went to fixation in its replicate, or
+	 * AbstractCell.OTHER if none has (see FixationEstimate).
+	 */
+	public byte getFixationType() {
+		if (cheatBuffer == null)
+			throw new IllegalStateException("Only a fork keeps the outcome of one replicate.");
+		
+		try {
+			cbw.flush();
+			pbw.flush();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		
+		if (cheatBuffer.getBuffer().length() > 0)
+			return AbstractCell.CHEATER;
+		else if (prodBuffer.getBuffer().length() > 0)
+			return AbstractCell.COOPERATOR;
+		else
+			return AbstractCell.OTHER;
+	}
+	
+	/**
+	 * Writes the records a fork has kept so far, for a checkpoint (see
+	 * Checkpoint).
+	 */
+	public void save(DataOutput out) throws IOException {
+		if (cheatBuffer == null)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		cbw.flush();
+		pbw.flush();
+		out.writeUTF(cheatBuffer.toString());
+		out.writeUTF(prodBuffer.toString());
+	}
+	
+	/**
+	 * Replaces the records of a fork with the ones save wrote.
+	 */
+	public void restore(DataInput in) throws IOException {
+		if (cheatBuffer == null)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		cheatBuffer = new StringWriter();
+		prodBuffer = new StringWriter();
+		cbw = new BufferedWriter(cheatBuffer);
+		pbw = new BufferedWriter(prodBuffer);
+		
+		cbw.write(in.readUTF());
+		pbw.write(in.readUTF());
+	}
+	
 	/**
 	 * Record a fixation event.
 	 * 
@@ -90,7 +185,14 @@ public class FixationTimeWriter {
 		}		
 	}
 	
+	/**
+	 * Closes the files and writes the parameters. Does nothing for a
+	 * fork, whose records are written by merge.
+	 */
 	public void close() {
+		if (cheatBuffer != null)
+			return;
+		
 		try {
 			cbw.close();
 			pbw.close();
@@ -1,10 +1,13 @@
 package io;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 
 import no.uib.cipr.matrix.Vector;
@@ -37,6 +40,12 @@ import control.parameters.Parameters;
  * metrics, and only writes to disk after the last simulation
  * has been completed, greatly reducing I/O dependence.
  * 
+ * A fork (see fork()) collects the metrics of one replicate running
+ * on another thread, in arrays that only grow as far as that replicate
+ * runs. Each replicate adds to every per-step sum at most once, so a
+ * fork holds the very values that replicate would have added here, and
+ * merging the forks in replicate order gives identical sums.
+ * 
  * @author dbborens@princeton.edu
  *
  */
@@ -94,6 +103,9 @@ public class IteratedSimulationWriter {
 	// Timestamp for project
 	private Date date = new Date();
 	
+	// True if this collects one replicate for another writer (see fork)
+	private boolean isFork = false;
+	
 	/**
 	 *  Only initialize data structures at construction time.
 	 *  Files are initialized and written at close.
@@ -139,8 +151,163 @@ public class IteratedSimulationWriter {
 		localMaxCheat = -1;
 	}
 
+	private IteratedSimulationWriter(IteratedSimulationWriter parent) {
+		p = parent.p;
+		isFork = true;
+		
+		int length = Math.min(64, p.maxTimeStep() + 1);
+		cellDeltas = new double[length];
+		popDeltas = new double[length];
+		cheaterGrowthProbs = new double[length];
+		cheaterCount = new int[length];
+		stillRunning = new int[length];
+		cheaterFixations = new int[length];
+		cooperatorFixations = new int[length];
+		frontiers = new int[length];
+		
+		cheaterCounts = new int[p.N() + 1];
+		
+		step = 0;
+		sim = 0;
+		localMaxCheat = -1;
+	}
+	
+	/**
+	 * Returns an empty writer that collects the metrics of one replicate
+	 * running on another thread.
+	 */
+	public IteratedSimulationWriter fork() {
+		return new IteratedSimulationWriter(this);
+	}
+	
+	/**
+	 * Adds the metrics of a fork, whose trial must have concluded.
+	 */
+	public void merge(IteratedSimulationWriter fork) {
+		if (fork.localMaxCheat != -1)
+			throw new IllegalStateException("Merging a replicate that has not concluded.");
+		
+		for (int t = 0; t < fork.stillRunning.length; t++) {
+			cellDeltas[t] += fork.cellDeltas[t];
+			popDeltas[t] += fork.popDeltas[t];
+			cheaterGrowthProbs[t] += fork.cheaterGrowthProbs[t];
+			cheaterCount[t] += fork.cheaterCount[t];
+			stillRunning[t] += fork.stillRunning[t];
+			cheaterFixations[t] += fork.cheaterFixations[t];
+			cooperatorFixations[t] += fork.cooperatorFixations[t];
+			frontiers[t] += fork.frontiers[t];
+		}
+		
+		for (int n = 0; n <= p.N(); n++)
+			cheaterCounts[n] += fork.cheaterCounts[n];
+		
+		sim += fork.sim;
+	}
+	
+	/**
+	 * Writes what a fork has collected so far, for a checkpoint (see
+	 * Checkpoint). Only the nonzero entries of the maximum cheater
+	 * histogram are written.
+	 */
+	public void save(DataOutput out) throws IOException {
+		if (!isFork)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		int length = stillRunning.length;
+		out.writeInt(length);
+		
+		for (int t = 0; t < length; t++) {
+			out.writeDouble(cellDeltas[t]);
+			out.writeDouble(popDeltas[t]);
+			out.writeDouble(cheaterGrowthProbs[t]);
+			out.writeInt(cheaterCount[t]);
+			out.writeInt(stillRunning[t]);
+			out.writeInt(cheaterFixations[t]);
+			out.writeInt(cooperatorFixations[t]);
+			out.writeInt(frontiers[t]);
+		}
+		
+		int nonzero = 0;
+		for (int n = 0; n <= p.N(); n++) {
+			if (cheaterCounts[n] != 0)
+				nonzero++;
+		}
+		
+		out.writeInt(nonzero);
+		for (int n = 0; n <= p.N(); n++) {
+			if (cheaterCounts[n] != 0) {
+				out.writeInt(n);
+				out.writeInt(cheaterCounts[n]);
+			}
+		}
+		
+		out.writeInt(step);
+		out.writeInt(sim);
+		out.writeInt(localMaxCheat);
+	}
+	
+	/**
+	 * Replaces the contents of a fork with what save wrote.
+	 */
+	public void restore(DataInput in) throws IOException {
+		if (!isFork)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		int length = in.readInt();
+		cellDeltas = new double[length];
+		popDeltas = new double[length];
+		cheaterGrowthProbs = new double[length];
+		cheaterCount = new int[length];
+		stillRunning = new int[length];
+		cheaterFixations = new int[length];
+		cooperatorFixations = new int[length];
+		frontiers = new int[length];
+		
+		for (int t = 0; t < length; t++) {
+			cellDeltas[t] = in.readDouble();
+			popDeltas[t] = in.readDouble();
+			cheaterGrowthProbs[t] = in.readDouble();
+			cheaterCount[t] = in.readInt();
+			stillRunning[t] = in.readInt();
+			cheaterFixations[t] = in.readInt();
+			cooperatorFixations[t] = in.readInt();
+			frontiers[t] = in.readInt();
+		}
+		
+		Arrays.fill(cheaterCounts, 0);
+		int nonzero = in.readInt();
+		for (int k = 0; k < nonzero; k++) {
+			int n = in.readInt();
+			cheaterCounts[n] = in.readInt();
+		}
+		
+		step = in.readInt();
+		sim = in.readInt();
+		localMaxCheat = in.readInt();
+	}
+	
+	/**
+	 * Makes room in a fork for the metrics of time step t.
+	 */
+	private void grow(int t) {
+		if (t < stillRunning.length)
+			return;
+		
+		int length = Math.min(Math.max(2 * stillRunning.length, t + 1), p.maxTimeStep() + 1);
+		cellDeltas = Arrays.copyOf(cellDeltas, length);
+		popDeltas = Arrays.copyOf(popDeltas, length);
+		cheaterGrowthProbs = Arrays.copyOf(cheaterGrowthProbs, length);
+		cheaterCount = Arrays.copyOf(cheaterCount, length);
+		stillRunning = Arrays.copyOf(stillRunning, length);
+		cheaterFixations = Arrays.copyOf(cheaterFixations, length);
+		cooperatorFixations = Arrays.copyOf(cooperatorFixations, length);
+		frontiers = Arrays.copyOf(frontiers, length);
+	}
+
 	public void push(Vector template, AbstractLifeCycle ca, int frontier, double cheatGrowProbability) {
 
+		grow(step);
+		
 		int count = ca.getCounts()[AbstractCell.CHEATER];
 		
 		Double[] rates = ca.getFrontierGrowthRate();
@@ -170,6 +337,7 @@ public class IteratedSimulationWriter {
 	}
 
 	public void concludeTrial(byte fixationType) {
+		grow(step);
 		cheaterCounts[localMaxCheat] += 1;
 		
 		if (fixationType == AbstractCell.CHEATER)
@@ -185,7 +353,14 @@ public class IteratedSimulationWriter {
 		
 	}
 
+	/**
+	 * Writes the aggregate files. Does nothing for a fork, whose metrics
+	 * are written by merge.
+	 */
 	public void close() {
+		if (isFork)
+			return;
+		
 		if (localMaxCheat != -1)
 			System.err.println("Shutting down before the end of a simulation. An error may have occurred."); 
 
@@ -0,0 +1,288 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Stores point source distributions on disk, so that runs with the
+ * same lattice and diffusion parameters do not have to solve for
+ * the distribution again.
+ *
+ * Each distribution is kept in its own file in the KERNEL_CACHE
+ * directory, named by a hash of (W, diffusion, decay, production, dt)
+ * and of the kernel method and preconditioner. The preconditioner
+ * changes the solution at the level of the solver's tolerance, so
+ * kernels solved with different ones are kept apart. The file is a
+ * fixed header, which repeats those parameters along with a CRC32 of
+ * the data, followed by the N values of the
+ * distribution. Files are read and written through memory maps.
+ * A file whose header or checksum does not match is discarded.
+ *
+ * Reading a file marks it as recently used. When the directory grows
+ * past KERNEL_CACHE_SIZE megabytes, the least recently used files are
+ * deleted until it fits.
+ *
+ * The cache is only an optimization, so I/O errors are reported and
+ * otherwise ignored.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class KernelCache {
+
+	private static final String SUFFIX = ".kernel";
+
+	private static final int MAGIC = 0x4B524E4C;
+	private static final int VERSION = 2;
+
+	// Magic, version, W, method, four parameters and the checksum, padded so
+	// that the data are aligned.
+	private static final int HEADER_SIZE = 64;
+
+	private Parameters p;
+
+	private File directory;
+	private File file;
+
+	public KernelCache(Parameters p) {
+		this.p = p;
+		directory = new File(p.getKernelCache());
+		file = new File(directory, key() + SUFFIX);
+	}
+
+	/**
+	 * Returns the cached distribution, or null if there isn't a valid one.
+	 */
+	public double[] load() {
+		if (!file.exists())
+			return null;
+
+		try {
+			double[] kernel = read();
+
+			if (kernel == null) {
+				System.out.println("Discarding invalid kernel cache file " + file.getPath());
+				file.delete();
+				return null;
+			}
+
+			file.setLastModified(System.currentTimeMillis());
+			System.out.println("Loaded distribution from " + file.getPath());
+			return kernel;
+		} catch (IOException ex) {
+			System.out.println("Could not read kernel cache file " + file.getPath() + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Saves a distribution, then evicts old entries if the cache is too big.
+	 */
+	public void store(double[] kernel) {
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Could not create directory " + directory.getPath());
+
+			// Write to a temporary file and rename it, so that concurrent
+			// runs never see a partial file.
+			File temp = File.createTempFile(file.getName(), ".tmp", directory);
+			write(temp, kernel);
+
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				if (!file.exists())
+					throw new IOException("Could not rename " + temp.getPath());
+			}
+
+			evict();
+		} catch (IOException ex) {
+			System.out.println("Could not write kernel cache file " + file.getPath() + ": " + ex.getMessage());
+		}
+	}
+
+	private double[] read() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = raf.getChannel();
+
+			if (channel.size() != HEADER_SIZE + 8L * p.N())
+				return null;
+
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != p.W())
+				return null;
+
+			if (buf.getInt() != method().hashCode())
+				return null;
+
+			for (double expected : keyValues()) {
+				if (Double.doubleToLongBits(buf.getDouble()) != Double.doubleToLongBits(expected))
+					return null;
+			}
+
+			long checksum = buf.getLong();
+
+			buf.position(HEADER_SIZE);
+			ByteBuffer data = buf.slice();
+			if (checksum(data) != checksum)
+				return null;
+
+			double[] kernel = new double[p.N()];
+			data.rewind();
+			data.asDoubleBuffer().get(kernel);
+			return kernel;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void write(File target, double[] kernel) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * kernel.length);
+
+			buf.position(HEADER_SIZE);
+			ByteBuffer data = buf.slice();
+			data.asDoubleBuffer().put(kernel);
+			long checksum = checksum(data);
+
+			buf.position(0);
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(p.W());
+			buf.putInt(method().hashCode());
+
+			for (double value : keyValues())
+				buf.putDouble(value);
+
+			buf.putLong(checksum);
+			buf.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the total size is
+	 * within the limit. The current file is never deleted.
+	 */
+	private void evict() {
+		File[] entries = directory.listFiles();
+		if (entries == null)
+			return;
+
+		long limit = (long) (p.getKernelCacheSize() * 1024D * 1024D);
+		long total = 0L;
+		int count = 0;
+		for (File entry : entries) {
+			if (entry.getName().endsWith(SUFFIX)) {
+				entries[count] = entry;
+				total += entry.length();
+				count++;
+			}
+		}
+
+		File[] cached = Arrays.copyOf(entries, count);
+		Arrays.sort(cached, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+
+		for (int i = 0; i < cached.length && total > limit; i++) {
+			if (cached[i].equals(file))
+				continue;
+
+			long length = cached[i].length();
+			if (cached[i].delete()) {
+				total -= length;
+				System.out.println("Evicted kernel cache file " + cached[i].getPath());
+			}
+		}
+	}
+
+	private long checksum(ByteBuffer data) {
+		CRC32 crc = new CRC32();
+		data.rewind();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	/**
+	 * How the distribution was solved for.
+	 */
+	private String method() {
+		return p.getKernelMethod().toUpperCase() + ":" + p.getPreconditioner().toUpperCase();
+	}
+
+	private double[] keyValues() {
+		return new double[] {p.getDiffusion(), p.getDecay(), p.getProduction(), p.dt()};
+	}
+
+	/**
+	 * Hex digest of the parameters that determine the distribution.
+	 */
+	private String key() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(VERSION);
+		sb.append(':');
+		sb.append(p.W());
+		sb.append(':');
+		sb.append(method());
+
+		for (double value : keyValues()) {
+			sb.append(':');
+			sb.append(Long.toHexString(Double.doubleToLongBits(value)));
+		}
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(sb.toString().getBytes("UTF-8"));
+
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest)
+				hex.append(String.format("%02x", b));
+
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import structures.LatencyHistogram;
+import control.Metrics;
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Writes the metrics of an ensemble (see control.Metrics). Each
+ * replicate's metrics are merged once it has been merged itself, in
+ * replicate order, and close() writes them to metrics.txt, followed by
+ * their totals: one line per replicate and histogram, with the count,
+ * total time and percentiles, and one per counter. Times are in
+ * microseconds except for total time, which is in seconds.
+ * 
+ * If METRICS_INTERVAL is set, running replicates also send samples of
+ * their current values, which are written to metrics.samples.txt as
+ * they arrive, so that a long run can be watched.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class MetricsWriter {
+
+	private Parameters p;
+
+	// Every replicate merged so far, added together
+	private Metrics totals;
+
+	// Lines for the replicates merged so far
+	private StringBuilder lines;
+
+	// Opened when the first sample arrives
+	private BufferedWriter samples = null;
+
+	public MetricsWriter(Parameters p) {
+		this.p = p;
+		totals = new Metrics(true, 0D);
+		lines = new StringBuilder();
+	}
+
+	/**
+	 * Adds the metrics of a replicate that has concluded.
+	 */
+	public void merge(int replicate, Metrics metrics) {
+		append(Integer.toString(replicate), metrics);
+		totals.merge(metrics);
+	}
+
+	/**
+	 * Writes the current values of a running replicate. Called from the
+	 * thread running it.
+	 */
+	public synchronized void sample(Metrics metrics, int replicate, int step, double seconds) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(format(seconds));
+		sb.append('\t');
+		sb.append(replicate);
+		sb.append('\t');
+		sb.append(step);
+		sb.append("\tevents_per_s=");
+		sb.append(format(seconds > 0D ? metrics.counter("events").get() / seconds : 0D));
+
+		for (String name : metrics.getHistogramNames()) {
+			LatencyHistogram histogram = metrics.histogram(name);
+			if (histogram.getCount() == 0L)
+				continue;
+
+			sb.append('\t');
+			sb.append(name);
+			sb.append(".p50_us=");
+			sb.append(micros(histogram.getPercentile(0.5D)));
+			sb.append('\t');
+			sb.append(name);
+			sb.append(".p99_us=");
+			sb.append(micros(histogram.getPercentile(0.99D)));
+		}
+
+		sb.append('\n');
+
+		try {
+			if (samples == null) {
+				mkDir();
+				samples = new BufferedWriter(new FileWriter(new File(p.getRootPath() + "/metrics.samples.txt")));
+				samples.write("# seconds\treplicate\tstep\tvalues\n");
+			}
+
+			samples.write(sb.toString());
+			samples.flush();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	public void close() {
+		try {
+			mkDir();
+			BufferedWriter bw = new BufferedWriter(new FileWriter(new File(p.getRootPath() + "/metrics.txt")));
+
+			bw.write("# replicate\tmetric\tcount\ttotal_s\tmean_us\tp50_us\tp90_us\tp99_us\tmax_us\n");
+			bw.write("# replicate\tcounter\tvalue\n");
+			bw.write(lines.toString());
+
+			StringBuilder sb = new StringBuilder();
+			append("all", totals, sb);
+			bw.write(sb.toString());
+
+			bw.close();
+
+			synchronized (this) {
+				if (samples != null)
+					samples.close();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private void append(String replicate, Metrics metrics) {
+		append(replicate, metrics, lines);
+	}
+
+	private void append(String replicate, Metrics metrics, StringBuilder sb) {
+		for (String name : metrics.getHistogramNames()) {
+			LatencyHistogram histogram = metrics.histogram(name);
+			if (histogram.getCount() == 0L)
+				continue;
+
+			sb.append(replicate);
+			sb.append('\t');
+			sb.append(name);
+			sb.append('\t');
+			sb.append(histogram.getCount());
+			sb.append('\t');
+			sb.append(format(histogram.getTotal() / 1E9));
+			sb.append('\t');
+			sb.append(format(histogram.getMean() / 1E3));
+			sb.append('\t');
+			sb.append(micros(histogram.getPercentile(0.5D)));
+			sb.append('\t');
+			sb.append(micros(histogram.getPercentile(0.9D)));
+			sb.append('\t');
+			sb.append(micros(histogram.getPercentile(0.99D)));
+			sb.append('\t');
+			sb.append(micros(histogram.getMax()));
+			sb.append('\n');
+		}
+
+		for (String name : metrics.getCounterNames())
+			counter(sb, replicate, name, Long.toString(metrics.counter(name).get()));
+
+		counter(sb, replicate, "seconds", format(metrics.getSeconds()));
+		counter(sb, replicate, "events_per_s", format(metrics.getEventRate()));
+	}
+
+	private void counter(StringBuilder sb, String replicate, String name, String value) {
+		sb.append(replicate);
+		sb.append('\t');
+		sb.append(name);
+		sb.append('\t');
+		sb.append(value);
+		sb.append('\n');
+	}
+
+	private String micros(long nanos) {
+		return format(nanos / 1E3);
+	}
+
+	private String format(double value) {
+		return String.format("%.3f", value);
+	}
+
+	private void mkDir() {
+		File path = new File(p.getRootPath());
+		if (!path.exists()) {
+			try {
+				path.mkdirs();
+			} catch (Exception ex) {
+				throw new RuntimeException("Could not create directory tree " + p.getRootPath());
+			}
+		}
+	}
+}
@@ -53,6 +53,18 @@ public class ParameterReader {
 	private Integer replicates;
 	private Integer haltCount;
 	
+	// Optional settings. These are left out of the string representation
+	// unless they were specified.
+	private String kernelMethod;
+	private Boolean latticeCorrection;
+	private Boolean validateKernel;
+	private String preconditioner;
+	private String kernelCache;
+	private String lattice;
+	private String randomStreams;
+	private String solver;
+	private Boolean metrics;
+	
 	private HashMap<String, Double> params = new HashMap<String, Double>(11);
 	
 	public ParameterReader(File pFile) throws IOException {
@@ -93,6 +105,51 @@ public class ParameterReader {
 		sb.append("\nREPLICATES=");
 		sb.append(replicates);
 		
+		if (kernelMethod != null) {
+			sb.append("\nKERNEL_METHOD=");
+			sb.append(kernelMethod);
+		}
+		
+		if (latticeCorrection != null) {
+			sb.append("\nLATTICE_CORRECTION=");
+			sb.append(latticeCorrection);
+		}
+		
+		if (validateKernel != null) {
+			sb.append("\nVALIDATE_KERNEL=");
+			sb.append(validateKernel);
+		}
+		
+		if (preconditioner != null) {
+			sb.append("\nPRECONDITIONER=");
+			sb.append(preconditioner);
+		}
+		
+		if (kernelCache != null) {
+			sb.append("\nKERNEL_CACHE=");
+			sb.append(kernelCache);
+		}
+		
+		if (lattice != null) {
+			sb.append("\nLATTICE=");
+			sb.append(lattice);
+		}
+		
+		if (randomStreams != null) {
+			sb.append("\nRANDOM_STREAMS=");
+			sb.append(randomStreams);
+		}
+		
+		if (solver != null) {
+			sb.append("\nSOLVER=");
+			sb.append(solver);
+		}
+		
+		if (metrics != null) {
+			sb.append("\nMETRICS=");
+			sb.append(metrics);
+		}
+		
 		// Note: we record the random seed used, whether or not it was generated
 		// in this run--the params file output should allow us to reproduce this
 		// run exactly
@@ -161,6 +218,33 @@ public class ParameterReader {
 			} else if (tokens[0].equals("HALT_COUNT")) {
 				haltCount = Integer.valueOf(tokens[1]);
 				
+			} else if (tokens[0].equals("KERNEL_METHOD")) {
+				kernelMethod = tokens[1];
+				
+			} else if (tokens[0].equals("LATTICE_CORRECTION")) {
+				latticeCorrection = Boolean.valueOf(tokens[1]);
+				
+			} else if (tokens[0].equals("VALIDATE_KERNEL")) {
+				validateKernel = Boolean.valueOf(tokens[1]);
+				
+			} else if (tokens[0].equals("PRECONDITIONER")) {
+				preconditioner = tokens[1];
+				
+			} else if (tokens[0].equals("KERNEL_CACHE")) {
+				kernelCache = tokens[1];
+				
+			} else if (tokens[0].equals("LATTICE")) {
+				lattice = tokens[1];
+				
+			} else if (tokens[0].equals("RANDOM_STREAMS")) {
+				randomStreams = tokens[1];
+				
+			} else if (tokens[0].equals("SOLVER")) {
+				solver = tokens[1];
+				
+			} else if (tokens[0].equals("METRICS")) {
+				metrics = Boolean.valueOf(tokens[1]);
+				
 			// Assign specified random seed, or a new seed
 			} else if (tokens[0].equals("RANDOM_SEED")) {
 				if (tokens[1].equals("*"))
@@ -245,4 +329,64 @@ public class ParameterReader {
 	public int getHaltCount() {
 		return haltCount;
 	}
+
+	public String getKernelMethod() {
+		if (kernelMethod == null)
+			return "CGS";
+		
+		return kernelMethod;
+	}
+
+	public boolean isLatticeCorrection() {
+		if (latticeCorrection == null)
+			return true;
+		
+		return latticeCorrection;
+	}
+
+	public boolean isValidateKernel() {
+		if (validateKernel == null)
+			return false;
+		
+		return validateKernel;
+	}
+
+	public String getPreconditioner() {
+		if (preconditioner == null)
+			return "DIAGONAL";
+		
+		return preconditioner;
+	}
+
+	public String getKernelCache() {
+		return kernelCache;
+	}
+
+	public String getLattice() {
+		if (lattice == null)
+			return "ARRAYS";
+		
+		return lattice;
+	}
+
+	public String getRandomStreams() {
+		if (randomStreams == null)
+			return "SPLIT";
+		
+		return randomStreams;
+	}
+
+	public String getSolver() {
+		if (solver == null)
+			return "IterativeSmart";
+		
+		return solver;
+	}
+
+	public boolean isMetrics() {
+		if (metrics == null)
+			return false;
+		
+		return metrics;
+	}
 }
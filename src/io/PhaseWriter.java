@@ -1,9 +1,12 @@
 package io;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -36,6 +39,11 @@ import control.parameters.Parameters;
  * in every instance of the simulation. In other words,
  * gives C vs dC/dt.
  * 
+ * A fork (see fork()) records the observations of one replicate
+ * running on another thread, and merge replays them in order. Replaying
+ * rather than adding up partial sums keeps the totals identical to
+ * those of a sequential run, down to the last bit.
+ * 
  * @author dbborens@princeton.edu
  *
  */
@@ -53,6 +61,12 @@ public class PhaseWriter {
 	private HashMap<Double, Double> cPcg;
 	private HashMap<Double, Double> cInstances;
 	
+	// Observations recorded by a fork, or null if this keeps the totals
+	private int[] forkCheaters;
+	private int[] forkFrontiers;
+	private double[] forkPcg;
+	private int forkSize;
+	
 	public PhaseWriter(Parameters p) {
 		this.p = p;
 		sumPcg = new double[p.N()+1];
@@ -64,7 +78,70 @@ public class PhaseWriter {
 		
 	}
 	
+	private PhaseWriter(PhaseWriter parent) {
+		p = parent.p;
+		forkCheaters = new int[16];
+		forkFrontiers = new int[16];
+		forkPcg = new double[16];
+		forkSize = 0;
+	}
+	
+	/**
+	 * Returns an empty writer that records the observations of one
+	 * replicate running on another thread.
+	 */
+	public PhaseWriter fork() {
+		return new PhaseWriter(this);
+	}
+	
+	/**
+	 * Adds the observations of a fork. Merging the forks in replicate
+	 * order gives the same totals as pushing to this writer directly.
+	 */
+	public void merge(PhaseWriter fork) {
+		for (int k = 0; k < fork.forkSize; k++)
+			push(fork.forkCheaters[k], fork.forkFrontiers[k], fork.forkPcg[k]);
+	}
+	
+	/**
+	 * Writes the observations a fork has recorded so far, for a
+	 * checkpoint (see Checkpoint).
+	 */
+	public void save(DataOutput out) throws IOException {
+		if (forkCheaters == null)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		out.writeInt(forkSize);
+		for (int k = 0; k < forkSize; k++) {
+			out.writeInt(forkCheaters[k]);
+			out.writeInt(forkFrontiers[k]);
+			out.writeDouble(forkPcg[k]);
+		}
+	}
+	
+	/**
+	 * Replaces the observations of a fork with the ones save wrote.
+	 */
+	public void restore(DataInput in) throws IOException {
+		if (forkCheaters == null)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		forkSize = 0;
+		
+		int n = in.readInt();
+		for (int k = 0; k < n; k++) {
+			int cheaterCount = in.readInt();
+			int frontierCount = in.readInt();
+			record(cheaterCount, frontierCount, in.readDouble());
+		}
+	}
+	
 	public void push(int cheaterCount, int frontierCount, double pcg) {
+		if (forkCheaters != null) {
+			record(cheaterCount, frontierCount, pcg);
+			return;
+		}
+		
 		instances[cheaterCount]++;		
 		sumPcg[cheaterCount] += pcg; 
 		
@@ -96,7 +173,27 @@ public class PhaseWriter {
 		cInstances.put(curvature, cInstances.get(curvature) + 1);
 	}
 	
+	private void record(int cheaterCount, int frontierCount, double pcg) {
+		if (forkSize == forkPcg.length) {
+			forkCheaters = Arrays.copyOf(forkCheaters, 2 * forkSize);
+			forkFrontiers = Arrays.copyOf(forkFrontiers, 2 * forkSize);
+			forkPcg = Arrays.copyOf(forkPcg, 2 * forkSize);
+		}
+		
+		forkCheaters[forkSize] = cheaterCount;
+		forkFrontiers[forkSize] = frontierCount;
+		forkPcg[forkSize] = pcg;
+		forkSize++;
+	}
+	
+	/**
+	 * Writes the phase and curvature files. Does nothing for a fork,
+	 * whose observations are written by merge.
+	 */
 	public void close() {
+		if (forkCheaters != null)
+			return;
+		
 		makePhaseFile();
 		makeCurvatureFile();
 	}
@@ -1,6 +1,8 @@
 package io;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -35,6 +37,11 @@ import control.parameters.Parameters;
  * 
  * Calculates and records radial distribution function.
  * 
+ * A fork (see fork()) collects the contribution of one replicate
+ * running on another thread. A replicate contributes to each total
+ * only once, so merging the forks in replicate order gives the same
+ * totals as pushing to this writer directly.
+ * 
  * @author dbborens@princeton.edu
  *
  */
@@ -57,6 +64,9 @@ public class RdfWriter {
 	// I'm sure there's a nice geometric way to do this.
 	private HashMap<Integer, Double> areaMap;
 	
+	// True if this collects one replicate for another writer (see fork)
+	private boolean isFork = false;
+	
 	public RdfWriter(Parameters p) {
 		this.p = p;
 		maxRadius = calcMaxRadius();
@@ -64,6 +74,73 @@ public class RdfWriter {
 		areaMap = calcAnnulusAreas();
 	}
 	
+	private RdfWriter(RdfWriter parent) {
+		p = parent.p;
+		maxRadius = parent.maxRadius;
+		totals = new HashMap<Integer, Double>();
+		areaMap = parent.areaMap;
+		isFork = true;
+	}
+	
+	/**
+	 * Returns an empty writer that collects the contribution of one
+	 * replicate running on another thread. The annulus areas are shared.
+	 */
+	public RdfWriter fork() {
+		return new RdfWriter(this);
+	}
+	
+	public void merge(RdfWriter fork) {
+		Iterator<Integer> i = fork.totals.keySet().iterator();
+		
+		while (i.hasNext()) {
+			Integer sqDisp = i.next();
+			
+			if (!totals.containsKey(sqDisp))
+				totals.put(sqDisp, 0D);
+			
+			totals.put(sqDisp, totals.get(sqDisp) + fork.totals.get(sqDisp));
+		}
+		
+		simulations += fork.simulations;
+	}
+	
+	/**
+	 * Writes the contribution a fork has collected, for a checkpoint (see
+	 * Checkpoint).
+	 */
+	public void save(DataOutput out) throws IOException {
+		if (!isFork)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		out.writeInt(simulations);
+		out.writeInt(totals.size());
+		
+		Iterator<Integer> i = totals.keySet().iterator();
+		while (i.hasNext()) {
+			Integer sqDisp = i.next();
+			out.writeInt(sqDisp);
+			out.writeDouble(totals.get(sqDisp));
+		}
+	}
+	
+	/**
+	 * Replaces the contribution of a fork with the one save wrote.
+	 */
+	public void restore(DataInput in) throws IOException {
+		if (!isFork)
+			throw new IllegalStateException("Only a fork can be checkpointed.");
+		
+		simulations = in.readInt();
+		totals.clear();
+		
+		int n = in.readInt();
+		for (int k = 0; k < n; k++) {
+			int sqDisp = in.readInt();
+			totals.put(sqDisp, in.readDouble());
+		}
+	}
+	
 	private int calcMaxRadius() {		
 		// radius=0 corresponds to a single point.
 		return (p.W() - 1) / 2;
@@ -72,7 +149,8 @@ public class RdfWriter {
 	public void push(AbstractLifeCycle ca, int particles) {
 		HashMap<Integer, Double> densities = new HashMap<Integer, Double>();
 		
-		if (particles < p.getHaltCount())
+		// Counts are kept as running totals, so this doesn't scan the lattice
+		if (ca.getCounts()[AbstractCell.CHEATER] < p.getHaltCount())
 			throw new IllegalStateException("RDF calculator was called at insufficient density.");
 		
 		// Reference (ideal) density
@@ -227,7 +305,14 @@ public class RdfWriter {
 		return(x < 0 ? (x % w + w) % w : x % w);
 	}
 	
+	/**
+	 * Writes the radial distribution function. Does nothing for a fork,
+	 * whose contribution is written by merge.
+	 */
 	public void close() {
+		if (isFork)
+			return;
+		
 		SortedSet<Integer> displacements = new TreeSet<Integer>(totals.keySet()); 
 
 		HashMap<Integer, Double> rdf = new HashMap<Integer, Double>();
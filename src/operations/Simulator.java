@@ -1,17 +1,21 @@
 package operations;
 
 import control.EquilibriumException;
+import control.Metrics;
 import control.RdfHaltException;
 import control.parameters.Parameters;
 
 import io.BufferedStateWriter;
+import io.Checkpoint;
 import io.FixationTimeWriter;
 import io.IteratedSimulationWriter;
 import io.PhaseWriter;
 import io.RdfWriter;
+import structures.LatencyHistogram;
 import structures.cell.AbstractCell;
 import structures.cell.ic.*;
 import structures.distributions.AbstractPointDistribution;
+import structures.distributions.BesselDistribution;
 import structures.distributions.ZeroOriginDistribution;
 import no.uib.cipr.matrix.*;
 import operations.processes.*;
@@ -42,6 +46,13 @@ import operations.solvers.*;
  * repeatedly performing cell divisions and updating the
  * catalyst distribution until either equilibrium is reached
  * or the maximum number of cycles have been performed.
+ * 
+ * If CHECKPOINT_INTERVAL or CHECKPOINT_SECONDS is set, the state is
+ * saved between cycles, and a replicate that was interrupted resumes
+ * from where it was last saved (see io.Checkpoint).
+ * 
+ * Each step's solve and turnover are timed, and sampled between steps
+ * if METRICS_INTERVAL is set (see control.Metrics).
  *
  */
 public class Simulator {
@@ -50,29 +61,120 @@ public class Simulator {
 	private String simPath;
 	private double sourceConcentration;
 	
+	// See control.Metrics
+	private Metrics metrics;
+	private LatencyHistogram solveTime;
+	private LatencyHistogram turnoverTime;
+	private Metrics.Counter events;
+	
 	public Simulator(Parameters p, IteratedSimulationWriter isw, FixationTimeWriter ftw,
 			RdfWriter rdf, PhaseWriter pw) {
 		
-		this(p, new ZeroOriginDistribution(p), isw, ftw, rdf, pw);
+		this(p, makeDistribution(p), isw, ftw, rdf, pw);
+	}
+	
+	/**
+	 * Constructs the point source distribution specified by KERNEL_METHOD.
+	 */
+	public static AbstractPointDistribution makeDistribution(Parameters p) {
+		if (p.getKernelMethod().equalsIgnoreCase("CGS"))
+			return new ZeroOriginDistribution(p);
+		else if (p.getKernelMethod().equalsIgnoreCase("BESSEL"))
+			return new BesselDistribution(p);
+		else
+			throw new IllegalArgumentException("Unrecognized kernel method " + p.getKernelMethod());
+	}
+	
+	/**
+	 * Identifies the distribution that makeDistribution would construct:
+	 * parameter sets with the same key get the same distribution, down to
+	 * the last bit, and can share one. This covers every parameter that
+	 * the distributions read.
+	 */
+	public static String distributionKey(Parameters p) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(p.getKernelMethod().toUpperCase());
+		sb.append(':');
+		sb.append(p.W());
+		sb.append(':');
+		sb.append(p.getPreconditioner().toUpperCase());
+		sb.append(':');
+		sb.append(p.isLatticeCorrection());
+		
+		double[] values = {p.dt(), p.getDiffusion(), p.getDecay(), p.getProduction(), p.getKernelTolerance()};
+		for (double value : values) {
+			sb.append(':');
+			sb.append(Long.toHexString(Double.doubleToLongBits(value)));
+		}
+		
+		return sb.toString();
 	}
 	
 	public Simulator(Parameters p, AbstractPointDistribution dist, IteratedSimulationWriter isw,
 			FixationTimeWriter ftw, RdfWriter rdf, PhaseWriter pw) {
 		
+		this(p, makeSolver(p, dist), isw, ftw, rdf, pw);
+	}
+	
+	/**
+	 * Constructs the solver specified by SOLVER for the given
+	 * distribution. The solver can be shared by several replicates (see
+	 * AbstractRDSolver.reset).
+	 */
+	public static AbstractRDSolver makeSolver(Parameters p, AbstractPointDistribution dist) {
+		return SolverRegistry.make(resolveSolver(p, dist), p, dist);
+	}
+	
+	/**
+	 * Returns the name of the solver to use. With SOLVER=AUTO, this is
+	 * the fastest on the production that the first replicate starts from
+	 * (see SolverRegistry.select), which takes a few solves with each
+	 * solver; the choice can differ from one run to the next.
+	 */
+	public static String resolveSolver(Parameters p, AbstractPointDistribution dist) {
+		if (!p.getSolver().equalsIgnoreCase(SolverRegistry.AUTO))
+			return p.getSolver();
+		
+		// The first replicate's own streams are untouched by this copy
+		Parameters q = p.forReplicate(0);
+		AbstractLifeCycle ca = makeLifeCycle(q, makeInitialCondition(q), dist.get(0, 0));
+		
+		return SolverRegistry.select(p, dist, ca.getProduction());
+	}
+	
+	/**
+	 * Runs one replicate with a solver left over from an earlier one,
+	 * which is reset first.
+	 */
+	public Simulator(Parameters p, AbstractRDSolver solver, IteratedSimulationWriter isw,
+			FixationTimeWriter ftw, RdfWriter rdf, PhaseWriter pw) {
+		
 		InitialCondition ic = makeInitialCondition(p);
 		
+		this.solver = solver;
+		solver.reset();
 		
-		//solver = new MatrixSolver(p, dist);
-		//solver = new PositiveSuperpositionSolver(p, dist);
-		//solver = new NegativeSuperpositionSolver(p, dist);
-		//solver = new SmartSuperpositionSolver(p, dist);
-		solver = new IterativeSmartSolver(p, dist);
+		metrics = p.getMetrics();
+		solveTime = metrics.histogram("solve");
+		turnoverTime = metrics.histogram("turnover");
+		events = metrics.counter("events");
 		
 		sourceConcentration = solver.getSourceConcentration();
 		
 		
 		//System.exit(0);
-		AbstractLifeCycle ca = makeLifeCycle(p, ic);
+		AbstractLifeCycle ca = makeLifeCycle(p, ic, sourceConcentration);
+
+		// Pick up where an interrupted run left off, if it saved a checkpoint
+		Checkpoint checkpoint = null;
+		int start = 0;
+		if (p.isCheckpointing()) {
+			checkpoint = new Checkpoint(p);
+			start = checkpoint.restore(ca, solver, isw, ftw, rdf, pw);
+			
+			if (checkpoint.isFinished())
+				return;
+		}
 
 		BufferedStateWriter bsw = null;
 
@@ -85,14 +187,9 @@ public class Simulator {
 				bsw = new BufferedStateWriter(p);
 				simPath = bsw.getSimPath();
 			}
-			// Push the initial condition to the state writer
-			Vector template = new DenseVector(p.N());
-			
-			for (int i = 0; i < p.maxTimeStep(); i++) {
-				//long start = System.nanoTime();
+			for (int i = start; i < p.maxTimeStep(); i++) {
 				try {
-					Vector c = iterate(p, ca, isw, bsw, pw, template);
-					template = c.copy();
+					iterate(p, ca, isw, bsw, pw);
 				} catch (EquilibriumException e) {
 
 					if (!(p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL")))
@@ -102,6 +199,7 @@ public class Simulator {
 						ftw.push(e.getFixationType(), p.getRandomSeed(), i, e.getGillespieTime());
 					
 					conclude(p, isw, bsw, e.getFixationType());
+					finish(checkpoint, isw, ftw, rdf, pw);
 					return;
 				} catch (RdfHaltException e) {
 					if (!(p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL")))
@@ -110,39 +208,51 @@ public class Simulator {
 					rdf.push(ca, e.getParticles());
 					
 					conclude(p, isw, bsw, AbstractCell.OTHER);
+					finish(checkpoint, isw, ftw, rdf, pw);
 					return;
 				}
 				
-				//long finish = System.nanoTime();
-				//long microseconds = (finish - start) / 1000;
+				if (checkpoint != null && checkpoint.isDue(i + 1))
+					checkpoint.save(i + 1, ca, solver, isw, ftw, rdf, pw);
 				
-				//if (i % 10 == 0)
-				//	System.out.println(microseconds);
+				if (metrics.isSampleDue())
+					metrics.sample(p.getReplicate(), i + 1);
 			}
 			
 
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			System.out.println("Something went horribly wrong! Attempting to shut down gracefully...");
-			if (!(p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL")))
+			if (bsw != null)
 				bsw.close();
-			if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
-				isw.close();
-			
-			rdf.close();
-			
-			ftw.close();
-			pw.close();
 			
+			// The other writers are forks, which have nothing to close: the
+			// ensemble's writers are closed by whoever ran this replicate
 			throw new RuntimeException(ex);
 		}
 		
 		conclude(p, isw, bsw, AbstractCell.OTHER);
+		finish(checkpoint, isw, ftw, rdf, pw);
+	}
+	
+	/**
+	 * Replaces the checkpoint of a replicate that has concluded with one
+	 * that only holds what it reported, so that it isn't run again.
+	 */
+	private void finish(Checkpoint checkpoint, IteratedSimulationWriter isw, FixationTimeWriter ftw,
+			RdfWriter rdf, PhaseWriter pw) {
+		
+		if (checkpoint != null)
+			checkpoint.finish(isw, ftw, rdf, pw);
 	}
 
 	private void conclude(Parameters p, IteratedSimulationWriter isw,
 			BufferedStateWriter bsw, byte fixationType) {
 		
+		boolean resyncing = p.getResyncInterval() > 0 || p.getResyncTolerance() > 0D;
+		if (resyncing && solver instanceof IterativeSmartSolver && !p.getOutput().equalsIgnoreCase("MINIMAL"))
+			System.out.println(((IterativeSmartSolver) solver).getDriftReport());
+		
 		if (!(p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL")))
 			bsw.close();
 		
@@ -150,7 +260,7 @@ public class Simulator {
 			isw.concludeTrial(fixationType);
 	}
 
-	private AbstractLifeCycle makeLifeCycle(Parameters p, InitialCondition ic) {
+	private static AbstractLifeCycle makeLifeCycle(Parameters p, InitialCondition ic, double sourceConcentration) {
 		if (p.getCellOperator().equals("ThresholdReplacement"))
 			return  new ThresholdReplacement(p, ic);
 		else if (p.getCellOperator().equals("ThresholdDivision"))
@@ -159,13 +269,15 @@ public class Simulator {
 			return new ContinuousReplacement(p, ic);
 		else if (p.getCellOperator().equals("ContinuousDivision"))
 			return new ContinuousDivision(p, ic);
+		else if (p.getCellOperator().equals("TauLeapingReplacement"))
+			return new TauLeapingReplacement(p, ic);
 		else if (p.getCellOperator().equals("ZeroBaselineReplacement"))
 			return new ZeroBaselineReplacement(p, ic, sourceConcentration);
 		else
 			throw new IllegalArgumentException("Unrecognized cell operator " + p.getCellOperator());
 	}
 
-	private InitialCondition makeInitialCondition(Parameters p) {
+	private static InitialCondition makeInitialCondition(Parameters p) {
 		if (p.getIC().equals("ProducerCheater")) {
 			// One cheater in a 5x5 block of cooperators, with the rest
 			// of the space empty
@@ -213,14 +325,19 @@ public class Simulator {
 	}
 
 
-	private Vector iterate(Parameters p, AbstractLifeCycle ca, IteratedSimulationWriter isw, 
-			BufferedStateWriter bsw, PhaseWriter pw, Vector template) throws EquilibriumException, RdfHaltException {
+	private void iterate(Parameters p, AbstractLifeCycle ca, IteratedSimulationWriter isw, 
+			BufferedStateWriter bsw, PhaseWriter pw) throws EquilibriumException, RdfHaltException {
 
-		Vector c = solver.solve(ca.getProduction());
+		// The solver only needs the sites that changed in the last turnover
+		long start = solveTime.start();
+		Vector c = solver.solve(ca);
+		solveTime.stop(start);
 		
-		ca.turnover(c, bsw, isw, pw);
+		events.increment();
 		
-		return c;
+		start = turnoverTime.start();
+		ca.turnover(c, bsw, isw, pw);
+		turnoverTime.stop(start);
 	}
 
 
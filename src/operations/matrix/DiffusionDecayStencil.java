@@ -0,0 +1,177 @@
+package operations.matrix;
+
+import control.parameters.Parameters;
+import no.uib.cipr.matrix.*;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * The steady state diffusion-decay operator (1 + decay) I - D, where D
+ * is the periodic 5-point operator built by Diffusion. Nothing is
+ * stored: each product is computed directly from the stencil
+ *
+ *   (decay + 4r) u(x, y) - r (u(x-1, y) + u(x+1, y) + u(x, y-1) + u(x, y+1))
+ *
+ * so construction and storage are O(1) and each product is O(N).
+ * The operator is symmetric, so transposed products are the same as
+ * ordinary ones.
+ *
+ * Products are fast for DenseVectors. Other vectors, and any operation
+ * not overridden here, fall back to AbstractMatrix's implementations
+ * in terms of get(), which visit all N^2 entries.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class DiffusionDecayStencil extends AbstractMatrix {
+
+	private int w;
+
+	// Diagonal and off-diagonal values
+	private double center;
+	private double neighbor;
+
+	public DiffusionDecayStencil(Parameters p) {
+		this(p.W(), p.getDiffusion(), p.getDecay());
+	}
+
+	/**
+	 * @param w System width
+	 * @param r Diffusion constant, scaled to some specified dt.
+	 * @param decay Decay constant, scaled to some specified dt.
+	 */
+	public DiffusionDecayStencil(int w, double r, double decay) {
+		super(w * w, w * w);
+		this.w = w;
+
+		// Same arithmetic as decay + I - Diffusion, so that the
+		// values match the assembled matrix exactly.
+		center = (decay + 1D) - (1D - 4D * r);
+		neighbor = -r;
+	}
+
+	@Override
+	public double get(int row, int column) {
+		check(row, column);
+
+		int x = row % w;
+		int y = row / w;
+
+		double value = 0D;
+
+		if (column == row)
+			value += center;
+
+		// On very small lattices, several neighbors can be the same site.
+		if (column == y * w + left(x))
+			value += neighbor;
+
+		if (column == y * w + right(x))
+			value += neighbor;
+
+		if (column == up(y) * w + x)
+			value += neighbor;
+
+		if (column == down(y) * w + x)
+			value += neighbor;
+
+		return value;
+	}
+
+	@Override
+	public Vector mult(Vector x, Vector y) {
+		if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
+			return super.mult(x, y);
+
+		checkMultAdd(x, y);
+		apply(1D, ((DenseVector) x).getData(), ((DenseVector) y).getData(), false);
+		return y;
+	}
+
+	@Override
+	public Vector multAdd(double alpha, Vector x, Vector y) {
+		if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
+			return super.multAdd(alpha, x, y);
+
+		checkMultAdd(x, y);
+		apply(alpha, ((DenseVector) x).getData(), ((DenseVector) y).getData(), true);
+		return y;
+	}
+
+	@Override
+	public Vector transMultAdd(double alpha, Vector x, Vector y) {
+		return multAdd(alpha, x, y);
+	}
+
+	@Override
+	public Matrix copy() {
+		DiffusionDecayStencil copy = new DiffusionDecayStencil(w, 0D, 0D);
+		copy.center = center;
+		copy.neighbor = neighbor;
+		return copy;
+	}
+
+	/**
+	 * yd = alpha * A * xd, or yd += alpha * A * xd if accumulate is set.
+	 * Only the first and last columns need the periodic lookups.
+	 */
+	private void apply(double alpha, double[] xd, double[] yd, boolean accumulate) {
+		for (int y = 0; y < w; y++) {
+			int row = y * w;
+			int above = up(y) * w;
+			int below = down(y) * w;
+
+			for (int x = 0; x < w; x++) {
+				int i = row + x;
+				double sum;
+
+				if (x > 0 && x < w - 1)
+					sum = xd[i - 1] + xd[i + 1];
+				else
+					sum = xd[row + left(x)] + xd[row + right(x)];
+
+				sum += xd[above + x] + xd[below + x];
+
+				double value = alpha * (center * xd[i] + neighbor * sum);
+
+				if (accumulate)
+					yd[i] += value;
+				else
+					yd[i] = value;
+			}
+		}
+	}
+
+	private int left(int x) {
+		return x == 0 ? w - 1 : x - 1;
+	}
+
+	private int right(int x) {
+		return x == w - 1 ? 0 : x + 1;
+	}
+
+	private int up(int y) {
+		return y == 0 ? w - 1 : y - 1;
+	}
+
+	private int down(int y) {
+		return y == w - 1 ? 0 : y + 1;
+	}
+}
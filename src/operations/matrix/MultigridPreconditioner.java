@@ -0,0 +1,338 @@
+package operations.matrix;
+
+import java.util.Arrays;
+
+import structures.FourierTransform;
+import control.parameters.Parameters;
+import no.uib.cipr.matrix.DenseVector;
+import no.uib.cipr.matrix.Matrix;
+import no.uib.cipr.matrix.Vector;
+import no.uib.cipr.matrix.sparse.Preconditioner;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Geometric multigrid preconditioner for the diffusion-decay operator
+ * on the periodic W x W lattice (see DiffusionDecayStencil). Each
+ * application is one V-cycle, starting from zero:
+ *
+ *  - red-black Gauss-Seidel smoothing before and after each correction
+ *  - full weighting restriction and bilinear prolongation, both periodic
+ *  - coarse operators by rediscretization (diffusion / 4 per level)
+ *
+ * The lattice is halved while its width is even and at least
+ * 2 * MIN_WIDTH. The coarsest level is solved exactly in Fourier space,
+ * where the periodic operator is diagonal, so widths with a large odd
+ * factor still work (they just have fewer levels).
+ *
+ * The coefficients are read from the matrix passed to setMatrix(),
+ * which must have the structure of DiffusionDecayStencil (with W of
+ * at least 3, so that the four neighbors are distinct). The
+ * smoothing order is reversed after the correction so that the cycle
+ * is symmetric. Instances keep scratch space, so they are not thread
+ * safe.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class MultigridPreconditioner implements Preconditioner {
+
+	// Smallest width that will be coarsened further
+	private static final int MIN_WIDTH = 4;
+
+	// Gauss-Seidel sweeps before and after each coarse correction
+	private static final int SWEEPS = 2;
+
+	private int levels;
+
+	// Per-level width and stencil coefficients
+	private int[] widths;
+	private double[] centers;
+	private double[] neighbors;
+
+	// Per-level solution, right hand side and residual
+	private double[][] u;
+	private double[][] f;
+	private double[][] res;
+
+	// Exact solve on the coarsest level
+	private FourierTransform fft;
+	private double[] inverseEigenvalues;
+	private double[] im;
+
+	public MultigridPreconditioner(Parameters p) {
+		this(p.W());
+	}
+
+	public MultigridPreconditioner(int w) {
+		levels = 1;
+		for (int m = w; m % 2 == 0 && m / 2 >= MIN_WIDTH; m /= 2)
+			levels++;
+
+		widths = new int[levels];
+		centers = new double[levels];
+		neighbors = new double[levels];
+		u = new double[levels][];
+		f = new double[levels][];
+		res = new double[levels][];
+
+		int m = w;
+		for (int l = 0; l < levels; l++) {
+			widths[l] = m;
+			u[l] = new double[m * m];
+			f[l] = new double[m * m];
+			res[l] = new double[m * m];
+			m /= 2;
+		}
+
+		int coarsest = widths[levels - 1];
+		fft = new FourierTransform(coarsest);
+		inverseEigenvalues = new double[coarsest * coarsest];
+		im = new double[coarsest * coarsest];
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	@Override
+	public void setMatrix(Matrix A) {
+		int n = widths[0] * widths[0];
+		if (A.numRows() != n)
+			throw new IllegalArgumentException("Matrix size differs from preconditioner size");
+
+		// A = decay - diffusion * (5-point Laplacian)
+		double center = A.get(0, 0);
+		double neighbor = A.get(0, 1);
+		double diffusion = -neighbor;
+		double decay = center - 4D * diffusion;
+
+		for (int l = 0; l < levels; l++) {
+			centers[l] = decay + 4D * diffusion;
+			neighbors[l] = -diffusion;
+			diffusion /= 4D;
+		}
+
+		calcEigenvalues();
+	}
+
+	@Override
+	public Vector apply(Vector b, Vector x) {
+		double[] bd = b instanceof DenseVector ? ((DenseVector) b).getData() : toArray(b);
+		System.arraycopy(bd, 0, f[0], 0, bd.length);
+
+		cycle(0);
+
+		if (x instanceof DenseVector)
+			System.arraycopy(u[0], 0, ((DenseVector) x).getData(), 0, u[0].length);
+		else
+			for (int i = 0; i < u[0].length; i++)
+				x.set(i, u[0][i]);
+
+		return x;
+	}
+
+	@Override
+	public Vector transApply(Vector b, Vector x) {
+		// The operator and the cycle are both symmetric
+		return apply(b, x);
+	}
+
+	/**
+	 * One V-cycle for level l, from a zero initial guess.
+	 */
+	private void cycle(int l) {
+		if (l == levels - 1) {
+			solveExactly(l);
+			return;
+		}
+
+		Arrays.fill(u[l], 0D);
+
+		for (int k = 0; k < SWEEPS; k++) {
+			smooth(l, 1);
+			smooth(l, 0);
+		}
+
+		residual(l);
+		restrict(l);
+		cycle(l + 1);
+		prolong(l);
+
+		// End on the black sites. A red sweep leaves the residual at the
+		// origin at zero, which breaks down CGS for a point source there.
+		for (int k = 0; k < SWEEPS; k++) {
+			smooth(l, 0);
+			smooth(l, 1);
+		}
+	}
+
+	/**
+	 * Gauss-Seidel update of every site with (x + y) % 2 == color.
+	 */
+	private void smooth(int l, int color) {
+		int m = widths[l];
+		double[] ul = u[l];
+		double[] fl = f[l];
+		double neighbor = neighbors[l];
+		double center = centers[l];
+
+		for (int y = 0; y < m; y++) {
+			int row = y * m;
+			int above = (y == 0 ? m - 1 : y - 1) * m;
+			int below = (y == m - 1 ? 0 : y + 1) * m;
+
+			for (int x = (y + color) % 2; x < m; x += 2) {
+				int left = x == 0 ? m - 1 : x - 1;
+				int right = x == m - 1 ? 0 : x + 1;
+				double sum = ul[row + left] + ul[row + right] + ul[above + x] + ul[below + x];
+				ul[row + x] = (fl[row + x] - neighbor * sum) / center;
+			}
+		}
+	}
+
+	private void residual(int l) {
+		int m = widths[l];
+		double[] ul = u[l];
+		double[] fl = f[l];
+		double[] rl = res[l];
+		double neighbor = neighbors[l];
+		double center = centers[l];
+
+		for (int y = 0; y < m; y++) {
+			int row = y * m;
+			int above = (y == 0 ? m - 1 : y - 1) * m;
+			int below = (y == m - 1 ? 0 : y + 1) * m;
+
+			for (int x = 0; x < m; x++) {
+				int left = x == 0 ? m - 1 : x - 1;
+				int right = x == m - 1 ? 0 : x + 1;
+				double sum = ul[row + left] + ul[row + right] + ul[above + x] + ul[below + x];
+				rl[row + x] = fl[row + x] - center * ul[row + x] - neighbor * sum;
+			}
+		}
+	}
+
+	/**
+	 * Full weighting of the level l residual onto the level l + 1
+	 * right hand side. Coarse site (X, Y) sits on fine site (2X, 2Y).
+	 */
+	private void restrict(int l) {
+		int m = widths[l];
+		int mc = widths[l + 1];
+		double[] rl = res[l];
+		double[] fc = f[l + 1];
+
+		for (int yc = 0; yc < mc; yc++) {
+			int y = 2 * yc;
+			int row = y * m;
+			int above = (y == 0 ? m - 1 : y - 1) * m;
+			int below = (y + 1) * m;
+
+			for (int xc = 0; xc < mc; xc++) {
+				int x = 2 * xc;
+				int left = x == 0 ? m - 1 : x - 1;
+				int right = x + 1;
+
+				double value = 4D * rl[row + x]
+						+ 2D * (rl[row + left] + rl[row + right] + rl[above + x] + rl[below + x])
+						+ rl[above + left] + rl[above + right] + rl[below + left] + rl[below + right];
+
+				fc[yc * mc + xc] = value / 16D;
+			}
+		}
+	}
+
+	/**
+	 * Bilinear interpolation of the level l + 1 correction, added to
+	 * the level l solution.
+	 */
+	private void prolong(int l) {
+		int m = widths[l];
+		int mc = widths[l + 1];
+		double[] ul = u[l];
+		double[] uc = u[l + 1];
+
+		for (int yc = 0; yc < mc; yc++) {
+			int ycNext = yc == mc - 1 ? 0 : yc + 1;
+			int y = 2 * yc;
+
+			for (int xc = 0; xc < mc; xc++) {
+				int xcNext = xc == mc - 1 ? 0 : xc + 1;
+				int x = 2 * xc;
+
+				double a = uc[yc * mc + xc];
+				double b = uc[yc * mc + xcNext];
+				double c = uc[ycNext * mc + xc];
+				double d = uc[ycNext * mc + xcNext];
+
+				ul[y * m + x] += a;
+				ul[y * m + x + 1] += 0.5D * (a + b);
+				ul[(y + 1) * m + x] += 0.5D * (a + c);
+				ul[(y + 1) * m + x + 1] += 0.25D * (a + b + c + d);
+			}
+		}
+	}
+
+	/**
+	 * The periodic stencil is diagonal in Fourier space, with eigenvalue
+	 * center + 2 * neighbor * (cos(2 pi kx / m) + cos(2 pi ky / m)).
+	 */
+	private void calcEigenvalues() {
+		int l = levels - 1;
+		int m = widths[l];
+
+		for (int ky = 0; ky < m; ky++) {
+			for (int kx = 0; kx < m; kx++) {
+				double lambda = centers[l] + 2D * neighbors[l]
+						* (Math.cos(2D * Math.PI * kx / m) + Math.cos(2D * Math.PI * ky / m));
+
+				// Without decay, the constant mode is singular; drop it.
+				if (Math.abs(lambda) < 1e-14 * centers[l])
+					inverseEigenvalues[ky * m + kx] = 0D;
+				else
+					inverseEigenvalues[ky * m + kx] = 1D / lambda;
+			}
+		}
+	}
+
+	private void solveExactly(int l) {
+		double[] ul = u[l];
+		System.arraycopy(f[l], 0, ul, 0, ul.length);
+		Arrays.fill(im, 0D);
+
+		fft.forward2D(ul, im);
+
+		for (int i = 0; i < ul.length; i++) {
+			ul[i] *= inverseEigenvalues[i];
+			im[i] *= inverseEigenvalues[i];
+		}
+
+		fft.inverse2D(ul, im);
+	}
+
+	private double[] toArray(Vector b) {
+		double[] bd = new double[b.size()];
+		for (int i = 0; i < bd.length; i++)
+			bd[i] = b.get(i);
+
+		return bd;
+	}
+}
@@ -4,8 +4,12 @@ import io.BufferedStateWriter;
 import io.IteratedSimulationWriter;
 import io.PhaseWriter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import operations.processes.helpers.LatticeStateTracker;
 import operations.processes.helpers.LifeCycleHelper;
 
 import no.uib.cipr.matrix.BandMatrix;
@@ -13,9 +17,14 @@ import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.Matrix;
 import no.uib.cipr.matrix.Vector;
 
+import structures.LatencyHistogram;
+import structures.SiteChangeList;
 import structures.cell.AbstractCell;
+import structures.cell.CellLattice;
 import structures.cell.DeadCell;
 import structures.cell.EmptyCell;
+import structures.cell.PackedCellLattice;
+import structures.cell.TypeLattice;
 import structures.cell.ic.InitialCondition;
 import control.EquilibriumException;
 import control.RdfHaltException;
@@ -46,13 +55,29 @@ import control.parameters.Parameters;
  */
 public abstract class AbstractLifeCycle {
 	
-	protected AbstractCell[][] lattice;
+	// The lattice, and the same lattice as a CellLattice if it stores
+	// biomass. With LATTICE=PACKED it doesn't, and cells is null;
+	// parameter validation only allows that for replacement processes,
+	// which never read biomass, and never with OUTPUT=FULL.
+	protected TypeLattice lattice;
+	protected CellLattice cells = null;
 	protected Parameters p;
 	protected LifeCycleHelper manager;
 	
+	// Time spent reporting to the writers (see control.Metrics)
+	protected LatencyHistogram pushTime;
+	
 	public AbstractLifeCycle(Parameters p, InitialCondition ic) {
 		this.p = p;
-		lattice = ic.getConfiguration();
+		pushTime = p.getMetrics().histogram("writer.push");
+		
+		if (p.getLattice().equalsIgnoreCase("PACKED")) {
+			lattice = new PackedCellLattice(p, ic);
+		} else {
+			cells = new CellLattice(p, ic);
+			lattice = cells;
+		}
+		
 		manager = new LifeCycleHelper(p, lattice);
 	}
 	
@@ -65,21 +90,33 @@ public abstract class AbstractLifeCycle {
 	 */
 	public abstract void turnover(Vector c, BufferedStateWriter bsw, IteratedSimulationWriter isw, PhaseWriter pw) throws EquilibriumException, RdfHaltException;
 	
-	protected void buildLattice(int w, int h) {
-		lattice = new AbstractCell[w][h];
+	/**
+	 * Writes the state of the life cycle between two turnovers, for a
+	 * checkpoint (see io.Checkpoint). Subclasses that keep state of
+	 * their own write it after this.
+	 */
+	public void save(DataOutput out) throws IOException {
+		manager.save(out);
 	}
 	
+	/**
+	 * Restores the state written by save, replacing the initial
+	 * condition.
+	 */
+	public void restore(DataInput in) throws IOException {
+		manager.restore(in);
+	}
 	
 	/**
 	 * Shuffle an array according to the Fisher-Yates
 	 * method (repeated swapping).
 	 */
-	protected void shuffle(ArrayList<AbstractCell> v) {
+	protected void shuffle(ArrayList<Integer> v) {
 		int n = v.size();
 		
 		for (int i = n-1; i > 0; i--) {
-			int j = p.getRandom().nextInt(i);
-			AbstractCell swap = v.get(i); 
+			int j = p.getRandom(Parameters.SAMPLING).nextInt(i);
+			Integer swap = v.get(i); 
 			v.set(i, v.get(j));
 			v.set(j, swap);
 		}
@@ -91,8 +128,8 @@ public abstract class AbstractLifeCycle {
 		for (int y = 0; y < p.W(); y++) {
 			for (int x = 0; x < p.W(); x++) {
 				int i = y * p.W() + x;
-				double derivative = lattice[x][y].getOldDerivative();
-				//if (derivative == 0 && lattice[x][y].getType() != Cell.EMPTY)
+				double derivative = lattice.getDerivative(i);
+				//if (derivative == 0 && lattice.getType(i) != Cell.EMPTY)
 				//	throw new IllegalStateException();
 				
 				double derivativeSeconds = derivative / p.dt();
@@ -111,7 +148,7 @@ public abstract class AbstractLifeCycle {
 				// See algorithm write-up for coordinate system
 				int i = y * p.W() + x;
 				
-				double biomass = lattice[x][y].getBiomass();
+				double biomass = cells.getBiomass(i);
 				v.set(i, biomass);
 			}
 		}
@@ -120,21 +157,22 @@ public abstract class AbstractLifeCycle {
 	}
 	
 	/**
-	 * Creates a duplicate cell with duplicate coordinates.
+	 * Creates a duplicate cell with duplicate coordinates. The lattice
+	 * doesn't keep cell objects, so this is a copy of the cell's state
+	 * (see CellLattice.getCell).
 	 * 
 	 * @return
 	 */
 	public AbstractCell getDuplicateCellAt(int x, int y) {
-		AbstractCell cell = lattice[x][y].duplicate(x, y);
-		return cell;
+		return cells.getCell(x, y);
 	}
 
 	public byte getTypeAt(int x, int y) {
-		return lattice[x][y].getType();
+		return lattice.getType(lattice.index(x, y));
 	}
 	
 	protected void setBiomass(int x, int y, double biomass) {
-		lattice[x][y].setBiomass(biomass);
+		cells.setBiomass(cells.index(x, y), biomass);
 	}
 	
 	/**
@@ -150,7 +188,7 @@ public abstract class AbstractLifeCycle {
 				// See algorithm write-up for coordinate system
 				int i = y * p.W() + x;
 				
-				double produced = lattice[x][y].getProduction();
+				double produced = lattice.getProduction(i);
 				v.set(i, produced);
 			}
 		}
@@ -158,6 +196,32 @@ public abstract class AbstractLifeCycle {
 		return v;
 	}
 	
+	/**
+	 * Returns the enzyme production at lattice index i = y * W + x.
+	 */
+	public double getProductionAt(int i) {
+		return lattice.getProduction(i);
+	}
+	
+	/**
+	 * Returns the set of sites whose enzyme production has changed since
+	 * it was last cleared. Solvers that update incrementally can use this
+	 * instead of comparing the whole production vector.
+	 */
+	public SiteChangeList getProductionChanges() {
+		return manager.getProductionChanges();
+	}
+	
+	/**
+	 * Returns the set of sites whose catalyst concentration the solver
+	 * has changed since it was last cleared. Solvers add to it; life
+	 * cycles that keep per-site state derived from the catalyst can use
+	 * it to update only those sites.
+	 */
+	public SiteChangeList getCatalystChanges() {
+		return manager.getCatalystChanges();
+	}
+	
 	/**
 	 * Returns a matrix representing steady-state nutrient uptake
 	 * (
@@ -171,7 +235,7 @@ public abstract class AbstractLifeCycle {
 				// See algorithm write-up for coordinate system
 				int i = y * p.W() + x;
 				
-				if (lattice[x][y].getType() != AbstractCell.EMPTY)
+				if (lattice.getType(i) != AbstractCell.EMPTY)
 					a.set(i, i, p.getBenefit());
 			}
 		}
@@ -179,19 +243,20 @@ public abstract class AbstractLifeCycle {
 	}
 
 	/**
-	 * Returns an array of how many of each cell type there are. This is an
-	 * O(n) operation. The index of the array corresponds to the cell type.
+	 * Returns an array of how many of each cell type there are. The counts
+	 * are kept as running totals (see LatticeStateTracker), so this is an
+	 * O(1) operation. The index of the array corresponds to the cell type.
 	 */
 	public int[] getCounts() {
-		int[] counts = new int[4];
-		for (int x = 0; x < p.W(); x++) {
-			for (int y = 0; y < p.W(); y++) {
-				int i = lattice[x][y].getType();
-				counts[i]++;
-			}
-		}
-		
-		return counts;
+		return manager.getTracker().getCounts();
+	}
+	
+	/**
+	 * Returns the tracker that keeps running totals of the cell counts,
+	 * competitor counts and frontier growth for this lattice.
+	 */
+	public LatticeStateTracker getTracker() {
+		return manager.getTracker();
 	}
 	
 	/**
@@ -199,63 +264,25 @@ public abstract class AbstractLifeCycle {
 	 * Positive indicates a net growth rate advantage for cheaters, and negative
 	 * indicates a net growth rate advantage for cheaters.
 	 * 
+	 * Each cell's growth rate is weighted by its probability of replacing a
+	 * competitor: a cell whose four neighbors are all competitors gets full
+	 * weighting, and one with no competitors gets none. The sums are read from
+	 * the LatticeStateTracker rather than by scanning the lattice.
+	 * 
 	 * @return a 2D double array. The first element is the absolute probability of
 	 * each type attacking the other, and the second is the mean per-cell probability
 	 * difference. In neutral drift, the first should just reflect the difference in
 	 * cell count at the frontier, while the second should be zero. 
 	 */
 	public Double[] getFrontierGrowthRate() {
-		double coopGrowth = 0D;
-		double cheatGrowth = 0D;
+		LatticeStateTracker tracker = manager.getTracker();
 		
-		// Number of frontier individuals
-		double numCheaters = 0D;
-		double numCooperators = 0D;
+		double coopGrowth = tracker.getWeightedGrowth(AbstractCell.COOPERATOR);
+		double cheatGrowth = tracker.getWeightedGrowth(AbstractCell.CHEATER);
 		
-		for (int x = 0; x < p.W(); x++) {
-			for (int y = 0; y < p.W(); y++) {
-				double coef = 0D;
-				
-				byte selfType = manager.get(x, y).getType();
-				
-				if (selfType != AbstractCell.CHEATER && selfType != AbstractCell.COOPERATOR)
-					continue;
-				
-				// Determine weighting based on probability of replacing a competitor.
-				// If the cell is certain to replace a competitor, it gets full weighting;
-				// if it can't replace a competitor, it does not receive any weighting.
-				if (selfType != manager.get(x + 1, y).getType())
-					coef += 0.25D;
-
-				if (selfType != manager.get(x - 1, y).getType())
-					coef += 0.25D;
-
-				if (selfType != manager.get(x, y + 1).getType())
-					coef += 0.25D;
-
-				if (selfType != manager.get(x, y - 1).getType())
-					coef += 0.25D;
- 
-				
-				double growth = manager.get(x, y).getOldDerivative();
-				
-				double weightedGrowth = growth * coef;
-				
-				if (weightedGrowth < p.epsilon()) 
-				// Assign it to the right category
-				if (selfType == AbstractCell.CHEATER && weightedGrowth > p.epsilon()) {
-					cheatGrowth += growth * coef;
-				} else if (selfType == AbstractCell.COOPERATOR && weightedGrowth > p.epsilon()) {
-					coopGrowth += growth * coef;
-				// We said "continue" above, so if we ever get here, there's a typo or bug
-				}
-				if (selfType == AbstractCell.CHEATER && coef > 0D)
-					numCheaters += 1D;
-				
-				else if (selfType == AbstractCell.COOPERATOR && coef > 0D)
-					numCooperators += 1D;
-			}
-		}
+		// Number of frontier individuals
+		double numCheaters = tracker.getFrontierCells(AbstractCell.CHEATER);
+		double numCooperators = tracker.getFrontierCells(AbstractCell.COOPERATOR);
 		
 		Double globalDelta = coopGrowth - cheatGrowth;
 		
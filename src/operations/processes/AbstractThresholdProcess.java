@@ -4,10 +4,16 @@ import io.BufferedStateWriter;
 import io.IteratedSimulationWriter;
 import io.PhaseWriter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import no.uib.cipr.matrix.Vector;
 
+import structures.EventQueue;
+import structures.LatencyHistogram;
+import structures.SiteChangeList;
 import structures.cell.AbstractCell;
 import structures.cell.ic.InitialCondition;
 import control.EquilibriumException;
@@ -38,87 +44,176 @@ import control.parameters.Parameters;
  */
 public abstract class AbstractThresholdProcess extends AbstractLifeCycle {
 
+	// Time of the most recent division or death
+	protected double now = 0D;
+	
+	// Next division or death of every cell, given the current catalyst
+	private EventQueue schedule;
+	
+	// Sites to reschedule at the start of the next turnover
+	private SiteChangeList dirty;
+	
+	private boolean scheduled = false;
+	
+	// Cells that are due at the current event
+	private ArrayList<Integer> toDivide;
+	private ArrayList<Integer> toDie;
+	
+	// Time spent rescheduling (see control.Metrics)
+	private LatencyHistogram scheduleTime;
+	
 	public AbstractThresholdProcess(Parameters p, InitialCondition ic) {
 		super(p, ic);
+		
+		schedule = new EventQueue(p.N());
+		dirty = new SiteChangeList(p.N());
+		
+		// As a naive guess, pre-allocate enough memory for up to W cells
+		// to divide at the same time. 
+		toDivide = new ArrayList<Integer>(p.W());
+		toDie = new ArrayList<Integer>(p.W());
+		scheduleTime = p.getMetrics().histogram("schedule");
 	}
 
-	public abstract void process(ArrayList<AbstractCell> cells) throws EquilibriumException;
+	/**
+	 * Divides or replicates the cells at the given lattice indices
+	 * (y * W + x).
+	 */
+	public abstract void process(ArrayList<Integer> sites) throws EquilibriumException;
 
 	/**
 	 * Finds cells that will divide or die the soonest and updates
 	 * the system.
 	 * 
-	 * @return 
+	 * Each cell's biomass changes linearly at a rate that depends only on
+	 * its type and its catalyst, so the time at which it will reach the
+	 * division threshold (or starve) is known in advance. These times are
+	 * kept in an EventQueue, and only the cells whose catalyst or
+	 * occupant changed since the last turnover are rescheduled (the "next
+	 * reaction method" of Gibson and Bruck). Likewise, a cell's biomass
+	 * is only brought up to date when it is rescheduled or due (see
+	 * CellLattice.advance), rather than every cell being metabolised
+	 * every step.
+	 * 
+	 * The state is written once the cells that are due have reached the
+	 * threshold (or zero biomass), and before they divide or die, so that
+	 * it agrees with the catalyst.
 	 */
 	public void turnover(Vector c, BufferedStateWriter bsw, IteratedSimulationWriter isw, PhaseWriter pw) throws EquilibriumException {
-
-		throw new UnsupportedOperationException("Visualizations are not currently implemented correctly in the Threshold Process. " + 
-				"Since the same loop both updates cell properties and kills cells, one cannot call the state writer in between updating " + 
-				"properties and killing/creating cells. However, doing it at the end results in the cell state lagging behind the field " + 
-				"states. Consider setting biomass to zero for cells that are marked to die, designating them for death in some way, writing" +
-				"the state and THEN destroying them, before creating new cells.");
+		long start = scheduleTime.start();
+		reschedule(c);
+		scheduleTime.stop(start);
 		
-		/**
-		// Find time interval
-		double interval = calcMinInterval(c);
+		if (schedule.isEmpty())
+			throw new EquilibriumException(AbstractCell.OTHER, now);
 		
-		// As a naive guess, pre-allocate enough memory for up to W cells
-		// to divide at the same time. 
-		ArrayList<AbstractCell> toDivide = new ArrayList<AbstractCell>(p.W());
-		
-		// Project out biomass of all cells over that interval
-		for (int y = 0; y < p.H(); y++) {
-			for (int x = 0; x < p.W(); x++) {
-				int i = y * p.W() + x;
-				
-				// A side effect of the 'metabolise' method is to store the rate
-				// of change in the 'derivative' field. This will be transferred
-				// to any child cell, should the cell divide.
-				int outcome = lattice[x][y].metabolise(c.get(i), interval);
-				
-				// Designate dividing cells for division.
-				if (outcome == 1)
-					toDivide.add(lattice[x][y]);
-				
-				// Remove dying cells.
-				else if (outcome == -1)
-					manager.kill(x, y);
-			}
+		// A cell that starts out past the threshold is due immediately
+		now = Math.max(now, schedule.peekTime());
+		
+		// Collect every cell that is due. Cells that started out identical
+		// can come due a rounding error apart, so they are taken together.
+		while (!schedule.isEmpty() && schedule.peekTime() <= now + p.epsilon()) {
+			int i = schedule.poll();
+			cells.advance(i, now);
+			
+			// Designate dividing cells for division.
+			if (lattice.getDerivative(i) > 0)
+				toDivide.add(i);
+			else
+				toDie.add(i);
+			
+			// Whatever happens to it, the cell (or what replaces it) needs
+			// a new event. A parent's biomass is halved in place, which
+			// is not reported as a lattice change.
+			dirty.add(i);
 		}
 		
+		start = pushTime.start();
+		
+		if (!(p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL"))) {
+			// The writer reads every cell's biomass
+			for (int i = 0; i < p.N(); i++)
+				cells.advance(i, now);
+			
+			bsw.push(c, this, now);
+		}
+		
+		if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
+			isw.push(c, this, 0, 0D);
+		
+		pushTime.stop(start);
+		
+		// Remove dying cells.
+		for (int k = 0; k < toDie.size(); k++) {
+			int i = toDie.get(k);
+			manager.kill(i % p.W(), i / p.W());
+		}
 		
 		// Perform cell division process on dividing cells in random order.
 		process(toDivide);
 		
-		bsw.push(c, this, 0D);
-		**/
+		toDivide.clear();
+		toDie.clear();
 	}
 	
 	/**
-	 * Find the cell closest to death or division, given its current biomass
-	 * and its local steady-state digested substrate concentration.
-
-	 * @return
+	 * Also writes the clock, the schedule and the cells that were due at
+	 * the last event.
 	 */
-	protected double calcMinInterval(Vector c) throws EquilibriumException {
-		// Find the cell closest to death or division
-		double minInterval = Double.POSITIVE_INFINITY;
-		
-		for (int y = 0; y < p.W(); y++) {
-			for (int x = 0; x < p.W(); x++) {
-				int i = y * p.W() + x;
-				
-				double interval = lattice[x][y].criticalTime(c.get(i));
-				
-				if (interval < minInterval) {
-					minInterval = interval;
-				}
-			}
+	@Override
+	public void save(DataOutput out) throws IOException {
+		super.save(out);
+		out.writeDouble(now);
+		out.writeBoolean(scheduled);
+		schedule.save(out);
+		dirty.save(out);
+	}
+	
+	@Override
+	public void restore(DataInput in) throws IOException {
+		super.restore(in);
+		now = in.readDouble();
+		scheduled = in.readBoolean();
+		schedule.restore(in);
+		dirty.restore(in);
+	}
+	
+	/**
+	 * Recomputes the growth rate and next event of every cell whose
+	 * catalyst or occupant has changed, along with the cells that were
+	 * due at the last event. Biomass is first brought up to the present
+	 * at the old growth rate. On the first call, every cell is scheduled.
+	 */
+	private void reschedule(Vector c) {
+		SiteChangeList changed = manager.getLatticeChanges();
+		SiteChangeList catalyst = manager.getCatalystChanges();
+		
+		if (!scheduled) {
+			dirty.addAll();
+			scheduled = true;
 		}
 		
-		if (minInterval == Double.POSITIVE_INFINITY)
-			throw new EquilibriumException(AbstractCell.OTHER, -1);
+		for (int k = 0; k < changed.size(); k++)
+			dirty.add(changed.get(k));
+		
+		for (int k = 0; k < catalyst.size(); k++)
+			dirty.add(catalyst.get(k));
+		
+		changed.clear();
+		catalyst.clear();
+		
+		for (int k = 0; k < dirty.size(); k++) {
+			int i = dirty.get(k);
+			double concentration = c.get(i);
+			
+			cells.advance(i, now);
+			
+			// Also sets the derivative field, which advance() uses
+			manager.getChangeRate(i % p.W(), i / p.W(), concentration, true);
+			
+			schedule.set(i, now + cells.criticalTime(i, concentration));
+		}
 		
-		return minInterval;
+		dirty.clear();
 	}
 }
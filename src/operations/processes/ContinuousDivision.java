@@ -6,6 +6,7 @@ import io.PhaseWriter;
 import operations.processes.helpers.DivisionHelper;
 import no.uib.cipr.matrix.Vector;
 import structures.EmptyPDFException;
+import structures.LatencyHistogram;
 import structures.WeightedUniformPDF;
 import structures.cell.AbstractCell;
 import structures.cell.ic.InitialCondition;
@@ -37,22 +38,28 @@ import control.parameters.Parameters;
 public class ContinuousDivision extends AbstractContinuousProcess {
 
 	DivisionHelper helper;
+	
+	// Time spent building the distribution of divisions and drawing from it
+	private LatencyHistogram pdfBuildTime;
+	private LatencyHistogram pdfSampleTime;
+	
 	public ContinuousDivision(Parameters p, InitialCondition ic) {
 		super(p, ic);
 		helper = new DivisionHelper(p, manager, lattice);
+		pdfBuildTime = p.getMetrics().histogram("pdf.build");
+		pdfSampleTime = p.getMetrics().histogram("pdf.sample");
 	}
 
 	public void process(Integer target) throws EquilibriumException {
 		int x = target % p.W();
 		int y = target / p.W();
 		
-		AbstractCell cell = manager.get(x, y);
-
-		helper.process(cell);
+		helper.process(x, y);
 	}
 
 	@Override
 	public void turnover(Vector c, BufferedStateWriter bsw, IteratedSimulationWriter isw, PhaseWriter pw) throws EquilibriumException {
+		long start = pdfBuildTime.start();
 		WeightedUniformPDF pdf = new WeightedUniformPDF(p);
 
 		for (int x = 0; x < p.W(); x++) {
@@ -65,10 +72,10 @@ public class ContinuousDivision extends AbstractContinuousProcess {
 				double catalyst = c.get(i);
 				
 				// Get growth rate (also set derivative field for display)
-				double growthRate = manager.get(x, y).getChangeRate(catalyst, true);
+				double growthRate = manager.getChangeRate(x, y, catalyst, true);
 				
 				// Get cell type
-				byte type = manager.get(x, y).getType();
+				byte type = manager.getType(x, y);
 				
 				// Sanity check
 				if ((type == AbstractCell.DEAD || type == AbstractCell.EMPTY) && (growthRate != 0)) {
@@ -81,21 +88,31 @@ public class ContinuousDivision extends AbstractContinuousProcess {
 			}
 		}
 		
+		long building = pdfBuildTime.elapsed(start);
+		
+		start = pushTime.start();
+		
 		if (!p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL"))			
 			bsw.push(c, this, 0D);
 		
 		if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
 			isw.push(c,  this, 0, 0D);
 		
+		pushTime.stop(start);
+		
 		// Finalize distribution
+		start = pdfBuildTime.start();
 		try {
 			pdf.makeReady();
 		} catch (EmptyPDFException ex) {
 			throw new EquilibriumException(AbstractCell.OTHER, -1);
 		}
+		pdfBuildTime.record(building + pdfBuildTime.elapsed(start));
 		
 		// Choose a target
+		start = pdfSampleTime.start();
 		Integer target = pdf.sample();
+		pdfSampleTime.stop(start);
 
 		process(target);
 	}
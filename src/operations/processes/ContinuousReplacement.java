@@ -4,13 +4,19 @@ import io.BufferedStateWriter;
 import io.IteratedSimulationWriter;
 import io.PhaseWriter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import no.uib.cipr.matrix.Vector;
 
+import operations.processes.helpers.LatticeStateTracker;
 import operations.processes.helpers.ReplacementHelper;
 
 
-import structures.EmptyPDFException;
-import structures.WeightedUniformPDF;
+import structures.LatencyHistogram;
+import structures.PropensityTree;
+import structures.SiteChangeList;
 import structures.cell.AbstractCell;
 import structures.cell.ic.InitialCondition;
 import control.EquilibriumException;
@@ -41,92 +47,81 @@ import control.parameters.Parameters;
  * selected is the growth rate * the proportion of neighbors that are
  * competitors. (So internal cells are never selected.)
  * 
+ * The propensities are kept in a PropensityTree between events, and
+ * only the sites affected by the last event are recomputed, so
+ * sampling and updating cost O(log N) per affected site instead of
+ * rebuilding the distribution over the whole lattice. Cell counts,
+ * competitor counts and the frontier length are read from the
+ * LatticeStateTracker.
+ * 
+ * This only pays off when few catalyst values change per event, which
+ * depends on KERNEL_TOLERANCE. At the default (0, no truncation) the
+ * kernel support spans the whole lattice, so every event changes the
+ * catalyst everywhere and every propensity is recomputed. The tree and
+ * the tracker's growth sums are then rebuilt in one O(N) pass each,
+ * which is still O(N) per event, but cheaper than updating them site by
+ * site. The default keeps the output of an untruncated kernel. On large
+ * lattices, KERNEL_TOLERANCE=1e-6 limits each event to the sites within
+ * the support radius of the changed producers. The tree then does the
+ * O(log N) work per affected site that it is meant for.
+ * 
  * @author dbborens@princeton.edu
  *
  */
 public class ContinuousReplacement extends AbstractContinuousProcess {
 
-	private ReplacementHelper helper;
+	// Categories in the propensity tree
+	private static final int COOPERATORS = 0;
+	private static final int CHEATERS = 1;
+	
+	protected ReplacementHelper helper;
+	
+	protected double gillespie = 0;
+	
+	// Replacement propensity of every cell, kept up to date between events
+	protected PropensityTree propensities = null;
+	
+	// Cell counts and competitor counts, kept up to date by the manager
+	protected LatticeStateTracker tracker;
+	
+	// Sites to recompute in the next refresh
+	private SiteChangeList dirty;
 	
-	private double gillespie = 0;
+	// Time spent updating the propensities and drawing from them
+	protected LatencyHistogram pdfBuildTime;
+	protected LatencyHistogram pdfSampleTime;
 	
 	public ContinuousReplacement(Parameters p, InitialCondition ic) {
 		super(p, ic);
 		helper = new ReplacementHelper(p, manager);
+		dirty = new SiteChangeList(p.N());
+		tracker = manager.getTracker();
+		pdfBuildTime = p.getMetrics().histogram("pdf.build");
+		pdfSampleTime = p.getMetrics().histogram("pdf.sample");
 	}
 	
 	private void process(Integer target) throws EquilibriumException {
 		int x = target % p.W();
 		int y = target / p.W();		
 	
-		AbstractCell cell = manager.get(x, y);
-
-		helper.process(cell, true);
+		helper.process(x, y, true);
 	}
 
 	@Override
 	public void turnover(Vector c, BufferedStateWriter bsw, IteratedSimulationWriter isw, PhaseWriter pw) throws EquilibriumException, RdfHaltException {
 		//System.out.println("STARTING TIME STEP");
-		int numCheats = 0;
-		int numCoops = 0;
-		
-		double coopWeight = 0;
-		double cheatWeight = 0;
-		
-		int frontier = 0;
-		
-		WeightedUniformPDF pdf = new WeightedUniformPDF(p);
-		
-		// TODO: This block is too verbose
-		for (int x = 0; x < p.W(); x++) {
-			for (int y = 0; y < p.W(); y++) {
-				
-				if (manager.get(x, y).getType() == AbstractCell.COOPERATOR)
-					numCoops++;
-				else if (manager.get(x, y).getType() == AbstractCell.CHEATER)
-					numCheats++;
-				else
-					throw new IllegalStateException("A cell that is neither a cheater nor a cooperator was found in a birth-death process.");
-				
-				// Get index
-				int i = y * p.W() + x;
-				
-				// Get catalyst
-				double catalyst = c.get(i);
-				
-				// Get growth rate (also set derivative field for display)
-				double growthRate = calcChangeRate(x, y, catalyst);
-							
-				// Count up competing neighbors for every cell
-				int competitors = countCompetitors(x, y);
-				
-				if (growthRate < 0D) {
-					System.err.println("Negative growth rate (" + growthRate + ") in continuous replacement process. (RANDOM_SEED=" + p.getRandomSeed() + "). Cell has " + competitors + " competitors. Is a cooperator? " + (manager.get(x, y).getType() == AbstractCell.COOPERATOR));
-					growthRate = 0D;
-				}
-				
-				// Keep track of cooperator and cheater total weights
-				if (manager.get(x, y).getType() == AbstractCell.COOPERATOR) {
-					//System.out.println("   Cooperator: g=" + growthRate + " with " + competitors + " neighbors. (Weight=" + (growthRate * competitors) + ")");
-						coopWeight += growthRate * competitors;
-				} else if (manager.get(x, y).getType() == AbstractCell.CHEATER) {
-					cheatWeight += growthRate * competitors;
-					//System.out.println("   Cheater: g=" + growthRate + " with " + competitors + " neighbors. (Weight=" + (growthRate * competitors) + ")");
-				} else
-					throw new IllegalStateException("A cell that is neither a cheater nor a cooperator was found in a birth-death process.");
-				
-				// If it has at least one competitor, add it to the distribution.
-				// The weighting is PROPORTIONAL TO THE NUMBER OF COMPETITORS, because we will force
-				// the cell to replace a competitor.
-				if (competitors > 0 && growthRate > p.epsilon()) {
-					pdf.add(i, growthRate * competitors);	
-				}
-				
-				if (competitors > 0) {
-					frontier += competitors;
-				}
-			}
-		}
+		long start = pdfBuildTime.start();
+		refresh(c);
+		pdfBuildTime.stop(start);
+		
+		double coopWeight = propensities.total(COOPERATORS);
+		double cheatWeight = propensities.total(CHEATERS);
+		
+		int numCoops = tracker.getCount(AbstractCell.COOPERATOR);
+		int numCheats = tracker.getCount(AbstractCell.CHEATER);
+		int frontier = tracker.getFrontier();
+		
+		start = pushTime.start();
 		
 		if (!(p.getOutput().equalsIgnoreCase("SPARSE") || p.getOutput().equalsIgnoreCase("MINIMAL")))
 			bsw.push(c, this, gillespie);
@@ -141,21 +136,12 @@ public class ContinuousReplacement extends AbstractContinuousProcess {
 		if (!p.getOutput().equalsIgnoreCase("MINIMAL"))
 			isw.push(c,  this, frontier, cheatGrowProbability);
 		
+		pushTime.stop(start);
+		
 		if (p.getHaltCount() != -1 && numCheats == p.getHaltCount())
 			throw new RdfHaltException(numCheats);
 		
-		// The Doob-Gillespie waiting time is an exponentially distributed random number 
-		double ttlWeight = coopWeight + cheatWeight;
-		if (ttlWeight > p.epsilon()) {
-			double time = manager.expRandom(ttlWeight);
-			
-			gillespie += time;
-		}
-		
-		// Finalize distribution
-		try {
-			pdf.makeReady();
-		} catch (EmptyPDFException ex) {
+		if (propensities.isEmpty()) {
 			if (numCheats == p.N())				
 				throw new EquilibriumException(AbstractCell.CHEATER, gillespie);
 			else if (numCoops == p.N())
@@ -164,45 +150,148 @@ public class ContinuousReplacement extends AbstractContinuousProcess {
 				throw new IllegalStateException("Equilibrium was reached with neither cooperators nor cheaters reaching fixation!");
 		}
 		
+		fire(c, coopWeight + cheatWeight);
+	}
+	
+	/**
+	 * Advances the Gillespie time and performs one replacement, chosen
+	 * with probability proportional to its propensity.
+	 * 
+	 * @param c The catalyst concentrations the propensities were computed from
+	 * @param ttlWeight The total propensity
+	 */
+	protected void fire(Vector c, double ttlWeight) throws EquilibriumException {
+		// The Doob-Gillespie waiting time is an exponentially distributed random number 
+		if (ttlWeight > p.epsilon()) {
+			double time = manager.expRandom(ttlWeight);
+			
+			gillespie += time;
+		}
+		
 		// Choose a target from the weighted distribution
-		Integer target = pdf.sample();
+		long start = pdfSampleTime.start();
+		int slot = propensities.sample(p.getRandom(Parameters.SAMPLING).nextDouble());
+		pdfSampleTime.stop(start);
+		int x = slot / p.W();
+		int y = slot % p.W();
 
-		process(target);
+		process(y * p.W() + x);
 	}
-
-	protected double calcChangeRate(int x, int y, double catalyst) {
-		return manager.get(x, y).getChangeRate(catalyst, true);
+	
+	/**
+	 * Brings the propensities and population counts up to date. Only
+	 * the sites whose catalyst changed, the sites that received a new
+	 * cell, and the neighbors of those (whose competitor counts may have
+	 * changed) are recomputed. On the first call, every site is. When
+	 * every site has to be recomputed, the tree, and the tracker's growth
+	 * sums, are rebuilt in one pass rather than updated site by site.
+	 */
+	private void refresh(Vector c) {
+		SiteChangeList lattice = manager.getLatticeChanges();
+		SiteChangeList catalyst = manager.getCatalystChanges();
+		
+		tracker.setCatalyst(c);
+		
+		if (propensities == null) {
+			propensities = new PropensityTree(p.N(), 2);
+			dirty.addAll();
+		}
+		
+		for (int k = 0; k < catalyst.size(); k++)
+			dirty.add(catalyst.get(k));
+		
+		for (int k = 0; k < lattice.size(); k++) {
+			int i = lattice.get(k);
+			int x = i % p.W();
+			int y = i / p.W();
+			
+			dirty.add(i);
+			dirty.add(y * p.W() + manager.wrap(x + 1));
+			dirty.add(y * p.W() + manager.wrap(x - 1));
+			dirty.add(manager.wrap(y + 1) * p.W() + x);
+			dirty.add(manager.wrap(y - 1) * p.W() + x);
+		}
+		
+		catalyst.clear();
+		lattice.clear();
+		
+		boolean bulk = (dirty.size() == p.N());
+		
+		// Every growth rate changes too, so the tracker's sums are rebuilt
+		if (bulk)
+			tracker.defer();
+		
+		for (int k = 0; k < dirty.size(); k++) {
+			int i = dirty.get(k);
+			update(i % p.W(), i / p.W(), c, bulk);
+		}
+		
+		if (bulk) {
+			propensities.rebuild();
+			tracker.rebuild();
+		}
+		
+		dirty.clear();
 	}
-
-	private int countCompetitors(int x, int y) {
+	
+	private void update(int x, int y, Vector c, boolean bulk) {
+		// Get index
+		int i = y * p.W() + x;
+		
+		byte type = manager.getType(x, y);
+		if (type != AbstractCell.COOPERATOR && type != AbstractCell.CHEATER)
+			throw new IllegalStateException("A cell that is neither a cheater nor a cooperator was found in a birth-death process.");
+		
+		// Get catalyst
+		double catalyst = c.get(i);
+		
+		// Get growth rate (also set derivative field for display)
+		double growthRate = calcChangeRate(x, y, catalyst);
+		
+		// Competing neighbors are counted as the lattice changes
+		int count = tracker.getCompetitors(i);
+		
+		if (growthRate < 0D) {
+			System.err.println("Negative growth rate (" + growthRate + ") in continuous replacement process. (RANDOM_SEED=" + p.getRandomSeed() + "). Cell has " + count + " competitors. Is a cooperator? " + (type == AbstractCell.COOPERATOR));
+			growthRate = 0D;
+		}
 		
-		byte selfType = manager.get(x, y).getType();
-		int count = 0;
+		// The weighting is PROPORTIONAL TO THE NUMBER OF COMPETITORS, because we will force
+		// the cell to replace a competitor. Cells without competitors can't be chosen.
+		double weight = 0D;
+		if (count > 0 && growthRate > p.epsilon())
+			weight = growthRate * count;
 		
-		AbstractCell target = manager.get(x + 1, y);
-		if (target.getType() != selfType) {
-			count++;
-		}		
+		// Slots are ordered by column, then row, as the lattice used to be scanned
+		int slot = x * p.W() + y;
+		int category = (type == AbstractCell.COOPERATOR ? COOPERATORS : CHEATERS);
 		
-		target = manager.get(x - 1, y);
-		if (target.getType() != selfType) {
-			count++;
-		}		
+		// In bulk, the sums are rebuilt once every site has been put
+		if (bulk)
+			propensities.put(slot, weight, category);
+		else
+			propensities.set(slot, weight, category);
+	}
 
-		target = manager.get(x, y + 1);
-		if (target.getType() != selfType) {
-			count++;
-		}		
-		
-		target = manager.get(x, y - 1);
-		if (target.getType() != selfType) {
-			count++;
-		}		
+	/**
+	 * Also writes the Gillespie time. The propensities are not written:
+	 * the first refresh after a restore recomputes every site, which
+	 * also reports every growth rate to the tracker again.
+	 */
+	@Override
+	public void save(DataOutput out) throws IOException {
+		super.save(out);
+		out.writeDouble(gillespie);
+	}
+	
+	@Override
+	public void restore(DataInput in) throws IOException {
+		super.restore(in);
+		gillespie = in.readDouble();
+		propensities = null;
+	}
 
-		// The self shouldn't be of a non-self type
-		if (count == 5)
-			throw new IllegalStateException("Consistency violation: no self type recognized");
-		
-		return count;
+	protected double calcChangeRate(int x, int y, double catalyst) {
+		return manager.getChangeRate(x, y, catalyst, true);
 	}
 }
@@ -0,0 +1,159 @@
+package operations.processes;
+
+import no.uib.cipr.matrix.Vector;
+import structures.SiteChangeList;
+import structures.cell.AbstractCell;
+import structures.cell.ic.InitialCondition;
+import control.EquilibriumException;
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * An approximate version of ContinuousReplacement that performs a batch
+ * of replacements per time step ("tau leaping"), so the catalyst is only
+ * solved for once per batch.
+ *
+ * Over a leap of length tau, the propensities are held fixed, so the
+ * replacements arrive as a Poisson process with rate a0, where a0 is
+ * the total propensity. Each replacement is drawn from the propensity
+ * distribution as in the exact process. A replacement whose cell or
+ * competing neighbors have already changed during the leap would be
+ * drawn from stale propensities, so it rejects the rest of the leap:
+ * the leap ends at the last replacement performed, and the remaining
+ * time is covered by the next leap, with updated propensities. Since
+ * the arrivals are memoryless, this does not bias the Gillespie time.
+ *
+ * One replacement changes the total propensity in two ways. Locally,
+ * by at most 8 g, where g is the largest possible growth rate: the new
+ * cell's propensity is at most 4 g, and each of its four neighbors
+ * gains or loses at most one competitor. And if a producer is replaced
+ * by a non-producer, or vice versa, the catalyst changes across the
+ * whole kernel support. The kernel sums to PRODUCTION / DECAY, so the
+ * growth rates change by at most BENEFIT * PRODUCTION / DECAY in total,
+ * and each cell has at most four competitors. The leap is chosen so
+ * that the expected change in total propensity is TAU_EPSILON * a0,
+ * i.e., tau = TAU_EPSILON / (8 g + 4 BENEFIT * PRODUCTION / DECAY).
+ * When that would amount to fewer than MIN_LEAP replacements, a single
+ * exact replacement is performed instead.
+ *
+ * The Gillespie time advances by the time covered by each leap, so
+ * fixation times are in the same units as those of the exact process.
+ * Each time step is one leap, however, so MAX_TIME_STEP and the
+ * step-indexed output count leaps rather than replacements.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class TauLeapingReplacement extends ContinuousReplacement {
+
+	// Smallest expected number of replacements worth leaping for
+	private static final double MIN_LEAP = 2D;
+
+	// Sites that received a new cell during the current leap
+	private SiteChangeList replaced;
+
+	// Largest change in total propensity, per replacement, due to the
+	// change in catalyst
+	private double catalystBound;
+
+	public TauLeapingReplacement(Parameters p, InitialCondition ic) {
+		super(p, ic);
+		replaced = new SiteChangeList(p.N());
+
+		double benefit = p.isInfiniteGamma() ? 1D : p.getBenefit();
+		double kernelMass = p.getProduction() > 0D ? p.getProduction() / p.getDecay() : 0D;
+		catalystBound = 4D * benefit * kernelMass;
+	}
+
+	@Override
+	protected void fire(Vector c, double ttlWeight) throws EquilibriumException {
+		double g = maxGrowthRate(c);
+		double tau = p.getTauEpsilon() / (8D * g + catalystBound);
+		double expected = ttlWeight * tau;
+
+		if (!(g > 0D) || expected < MIN_LEAP) {
+			super.fire(c, ttlWeight);
+			return;
+		}
+
+		double end = gillespie + tau;
+		double time = gillespie;
+
+		while (true) {
+			time += manager.expRandom(ttlWeight);
+
+			if (time > end) {
+				gillespie = end;
+				break;
+			}
+
+			// Slots are ordered by column, then row (see ContinuousReplacement)
+			long start = pdfSampleTime.start();
+			int slot = propensities.sample(p.getRandom(Parameters.SAMPLING).nextDouble());
+			pdfSampleTime.stop(start);
+			int x = slot / p.W();
+			int y = slot % p.W();
+
+			// End the leap at the last replacement performed
+			if (conflicts(x, y))
+				break;
+
+			replaced.add(helper.process(x, y, true));
+			gillespie = time;
+
+			// Stop at the halt count; the next step will report it
+			if (p.getHaltCount() != -1 && tracker.getCount(AbstractCell.CHEATER) == p.getHaltCount())
+				break;
+		}
+
+		replaced.clear();
+	}
+
+	/**
+	 * True if the cell at (x, y) or any of its neighbors has been
+	 * replaced during this leap.
+	 */
+	private boolean conflicts(int x, int y) {
+		int w = p.W();
+
+		return replaced.contains(y * w + x)
+				|| replaced.contains(y * w + manager.wrap(x + 1))
+				|| replaced.contains(y * w + manager.wrap(x - 1))
+				|| replaced.contains(manager.wrap(y + 1) * w + x)
+				|| replaced.contains(manager.wrap(y - 1) * w + x);
+	}
+
+	/**
+	 * An upper bound on the growth rate of any cell, given the catalyst.
+	 * Cooperators pay for production, so the cheater growth rate at the
+	 * highest concentration is the largest possible.
+	 */
+	private double maxGrowthRate(Vector c) {
+		double max = 0D;
+		for (int i = 0; i < p.N(); i++)
+			max = Math.max(max, c.get(i));
+
+		if (p.isInfiniteGamma())
+			return max;
+		else
+			return p.getGrowth() + p.getBenefit() * max;
+	}
+}
@@ -57,19 +57,21 @@ public class ThresholdDivision extends AbstractThresholdProcess {
 
 	/**
 	 * Go through a list of dividing cells and divide them, shoving other
-	 * cells in the process.
-	 * @param dividingCells
+	 * cells in the process. Sites are as of the start of the pass, so a
+	 * cell that an earlier division shoved is divided at its original site.
+	 * @param sites
 	 */
-	public void process(ArrayList<AbstractCell> cells) throws EquilibriumException {
+	public void process(ArrayList<Integer> sites) throws EquilibriumException {
 		// Randomize the processing order of the cells to avoid systematic bias
-		shuffle(cells);
+		shuffle(sites);
 
 		// If one of the cells can't divide, the system is full; don't keep trying
 		
 		// Go through the shuffled list of cells and move them.
-		for (int i = 0; i < cells.size(); i++) {
-
-			helper.process(cells.get(i));
+		for (int i = 0; i < sites.size(); i++) {
+			int site = sites.get(i);
+			
+			helper.process(site % p.W(), site / p.W());
 
 		}
 	
@@ -80,12 +82,12 @@ public class ThresholdDivision extends AbstractThresholdProcess {
 	 * Shuffle an array according to the Fisher-Yates
 	 * method (repeated swapping).
 	 */
-	protected void shuffle(ArrayList<AbstractCell> v) {
+	protected void shuffle(ArrayList<Integer> v) {
 		int n = v.size();
 		
 		for (int i = n-1; i > 0; i--) {
-			int j = p.getRandom().nextInt(i);
-			AbstractCell swap = v.get(i); 
+			int j = p.getRandom(Parameters.SAMPLING).nextInt(i);
+			Integer swap = v.get(i); 
 			v.set(i, v.get(j));
 			v.set(j, swap);
 		}
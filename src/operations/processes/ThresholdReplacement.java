@@ -5,7 +5,7 @@ import java.util.ArrayList;
 import operations.processes.helpers.ReplacementHelper;
 
 
-import structures.cell.AbstractCell;
+import structures.SiteChangeList;
 import structures.cell.ic.InitialCondition;
 import control.EquilibriumException;
 import control.parameters.Parameters;
@@ -37,24 +37,29 @@ public class ThresholdReplacement extends AbstractThresholdProcess {
 
 	private ReplacementHelper helper;
 	
+	// Sites overwritten so far in the current pass
+	private SiteChangeList overwritten;
+	
 	public ThresholdReplacement(Parameters p, InitialCondition ic) {
 		super(p, ic);
 		helper = new ReplacementHelper(p, manager);
+		overwritten = new SiteChangeList(p.N());
 	}
 	
 	@Override
-	public void process(ArrayList<AbstractCell> cells) throws EquilibriumException {
-		shuffle(cells);
+	public void process(ArrayList<Integer> sites) throws EquilibriumException {
+		shuffle(sites);
 
-		for (int i = 0; i < cells.size(); i++) {
-			AbstractCell cell = cells.get(i);
+		for (int i = 0; i < sites.size(); i++) {
+			int site = sites.get(i);
 
-			// If the cell is not where it used to be, it got overwritten: skip			
-			if (lattice[cell.x()][cell.y()] != cell)
+			// If the cell got overwritten, it is no longer there: skip
+			if (overwritten.contains(site))
 				continue;
 			
-			helper.process(cell, false);
+			overwritten.add(helper.process(site % p.W(), site / p.W(), false));
 		}
 		
+		overwritten.clear();
 	}
 }
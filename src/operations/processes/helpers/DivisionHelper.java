@@ -1,11 +1,11 @@
 package operations.processes.helpers;
 
-import java.util.HashMap;
-import java.util.HashSet;
-
 import control.EquilibriumException;
 import control.parameters.Parameters;
+import structures.DistanceTransform;
+import structures.SiteChangeList;
 import structures.cell.AbstractCell;
+import structures.cell.TypeLattice;
 
 /**
  *
@@ -35,72 +35,69 @@ public class DivisionHelper {
 	// Since arrays are objects, and Java objects are pass by reference,
 	// access to the original lattice reference will allow this object's
 	// internal methods to update the lattice appropriately
-	private AbstractCell[][] lattice;
+	private TypeLattice lattice;
 	private Parameters p;
 	private LifeCycleHelper manager;
 	
-	public DivisionHelper(Parameters p, LifeCycleHelper manager, AbstractCell[][] lattice) {
+	// Distance from every site to the nearest empty site
+	private DistanceTransform emptySites;
+	
+	// Candidate placement sites, and the offset (dx, dy) from the dividing
+	// cell to each. No ring of the diamond has more than 4 W sites.
+	private SiteChangeList candidates;
+	private int[] offsetX;
+	private int[] offsetY;
+	
+	// Sites along the shoving path, starting at the dividing cell
+	private int[] pathX;
+	private int[] pathY;
+	
+	public DivisionHelper(Parameters p, LifeCycleHelper manager, TypeLattice lattice) {
 		this.p = p;
 		this.lattice = lattice;
 		this.manager = manager;
+		
+		emptySites = manager.getEmptySites();
+		
+		candidates = new SiteChangeList(p.N());
+		offsetX = new int[4 * p.W() + 4];
+		offsetY = new int[4 * p.W() + 4];
+		
+		// No site is more than W steps from any other
+		pathX = new int[p.W() + 1];
+		pathY = new int[p.W() + 1];
 	}
 
-	public void process(AbstractCell cell) throws EquilibriumException {
-		// DEBUG CODE: move this to a regression test after problem solved
-		/*HashMap<AbstractCell, Integer> oldCoords = new HashMap<AbstractCell, Integer>();
-		for (int x = 0; x < p.W(); x++) {
-			for (int y = 0; y < p.H(); y++) {
-				int cell_x = lattice[x][y].x();
-				int cell_y = lattice[x][y].y();
-				if (x != cell_x || y != cell_y)
-					throw new RuntimeException("Misplaced cell: (" + x + ", " + y + ")");
-				oldCoords.put(lattice[x][y], cell_y * p.W() + cell_x);
-			}
-		}*/
-		// END DEBUG
-		
-		Integer test = cell.y() * p.W() + cell.x();
-		HashMap<Integer, Offset> candidates = findCandidates(test);
+	/**
+	 * Divides the cell at (x0, y0), shoving its neighbors out of the way.
+	 */
+	public void process(int x0, int y0) throws EquilibriumException {
+		int distance = emptySites.distance(lattice.index(x0, y0));
 		
-		// If this cell can't divide, signal to stop the simulation
-		if (candidates.isEmpty()) {
-			for (int x = 0; x < p.W(); x++)
-				for (int y = 0; y < p.W(); y++)
-					if (lattice[x][y].getType() == AbstractCell.EMPTY) {
-						System.out.println("Location unable to divide: " + x + " " + y);
-					}
+		// If there are no empty sites, no cell can divide: signal to stop
+		// the simulation
+		if (distance == DistanceTransform.UNREACHABLE)
 			throw new EquilibriumException(AbstractCell.OTHER, -1);
-		}
+		
+		findCandidates(x0, y0, distance);
 		
 		// Choose a candidate as the placement site
-		Object[] candidatesArr = candidates.values().toArray();
-		int index = p.getRandom().nextInt(candidates.size());
-		Offset offset = (Offset) candidatesArr[index];
+		int index = p.getRandom(Parameters.DIVISION).nextInt(candidates.size());
+		int dx = offsetX[index];
+		int dy = offsetY[index];
+		candidates.clear();
 
 		// Shove toward that coordinate
-		int x0 = cell.x();
-		int y0 = cell.y();
-
-		// BEGIN DEBUG
-		//checkLocations();
-		// END DEBUG
-		
-		shove(x0, y0, offset.dx, offset.dy);
+		int parent = shove(x0, y0, dx, dy);
 		
-		// At this point, a reference to the dividing cell exists at both
-		// the old location and the new one!
+		// At this point, the dividing cell exists at both the old location
+		// and the first site along the shoving path!
 		
 		// Divide the cell into two cells, each of which has half of the original
-		// biomass. At the end of this step, lattice[x0][y0] should point to the
-		// "new" cell, and lattice[t.x][t.y] should point to the "original" cell.
-		// (They are identical at this point, so this is just for troubleshooting.)
-		manager.fission(cell, x0, y0);
-		
-		// BEGIN DEBUG
-		//checkLocations();
-		//doAssertions(oldCoords);
-		// END DEBUG
-		
+		// biomass. The "original" cell is the one that was shoved, and the "new"
+		// cell goes in the origin. (They are identical, so this is just for
+		// troubleshooting.)
+		manager.fission(parent % p.W(), parent / p.W(), x0, y0);
 	}
 	
 	
@@ -110,38 +107,47 @@ public class DivisionHelper {
 	 * it chooses whether to go horizontally or vertically with a
 	 * probability weighted by the number of moves remaining in that
 	 * direction.
+	 * 
+	 * The whole path is chosen first. The cells along it are then moved
+	 * starting from the target end, so that each one moves into a site
+	 * that has just been vacated.
+	 * 
+	 * Returns the lattice index (y * W + x) of the site that the cell at
+	 * (x0, y0) was shoved to.
 	 */
-	private void shove(int x0, int y0, int dx, int dy) {
-			
-		// Base case: we've reached the target
-		if (dx == 0 && dy == 0)
-			return;
-		
-		// Choose whether to go horizontally or vertically, weighted
-		// by the number of steps remaining in each direction
-		int d = Math.abs(dx) + Math.abs(dy);
+	private int shove(int x0, int y0, int dx, int dy) {
+		int length = Math.abs(dx) + Math.abs(dy);
 		
-		int n = p.getRandom().nextInt(d);
+		pathX[0] = x0;
+		pathY[0] = y0;
 		
-		// Take a step in the chosen direction.
-		int xNext = x0;
-		int yNext = y0;
-		int dxNext = dx;
-		int dyNext = dy;
-		if (n < Math.abs(dx)) {
-			xNext += sign(dx);
-			dxNext -= sign(dx);
-		} else {
-			yNext += sign(dy);
-			dyNext -= sign(dy);
-		}		
-		shove(xNext, yNext, dxNext, dyNext);
+		for (int k = 1; k <= length; k++) {
+			// Choose whether to go horizontally or vertically, weighted
+			// by the number of steps remaining in each direction
+			int d = Math.abs(dx) + Math.abs(dy);
+			
+			int n = p.getRandom(Parameters.DIVISION).nextInt(d);
+			
+			// Take a step in the chosen direction.
+			pathX[k] = pathX[k - 1];
+			pathY[k] = pathY[k - 1];
+			if (n < Math.abs(dx)) {
+				pathX[k] += sign(dx);
+				dx -= sign(dx);
+			} else {
+				pathY[k] += sign(dy);
+				dy -= sign(dy);
+			}
+		}
 		
-		manager.set(xNext, yNext, manager.get(x0, y0));
+		for (int k = length; k > 0; k--)
+			manager.move(pathX[k - 1], pathY[k - 1], pathX[k], pathY[k]);
 		
 		// NOTE: This implies the "parent" cell ends up getting shoved
 		// and the "child" cell occupies the origin. (This does not matter
 		// because they're identical; but it affects tracking/debugging.)
+		int k = Math.min(length, 1);
+		return manager.wrap(pathY[k]) * p.W() + manager.wrap(pathX[k]);
 	}
 	
 	/**
@@ -153,22 +159,25 @@ public class DivisionHelper {
 	 * If it is all of these things, add it as a candidate.
 	 * 
 	 */
-	private void test(int x, int y, int dx, int dy, HashMap<Integer, Offset> candidates) {
+	private void test(int x, int y, int dx, int dy) {
 		
 		int wrapped_x = manager.wrap(x, p.W());
 		int wrapped_y = manager.wrap(y, p.W());
 		
-		Integer canonical = wrapped_y * p.W() + wrapped_x;
-		Offset offset = new Offset(dx, dy);
-		if(manager.get(x, y).getType() == AbstractCell.EMPTY && ! candidates.containsKey(canonical))
-			candidates.put(canonical, offset);
+		int canonical = wrapped_y * p.W() + wrapped_x;
+		if(manager.getType(x, y) == AbstractCell.EMPTY && ! candidates.contains(canonical)) {
+			offsetX[candidates.size()] = dx;
+			offsetY[candidates.size()] = dy;
+			candidates.add(canonical);
+		}
 	}
 	
 
 	
 	/**
-	 * Find legal sites for cell division. In this instance, we procede
-	 * out in a diamond (equal Manhattan distance) from the original cell:
+	 * Find legal sites for cell division. These are the empty sites at
+	 * the smallest Manhattan distance from the original cell, which
+	 * lie on a diamond around it:
 	 * 
 	 * distance=1:
 	 * 
@@ -185,43 +194,25 @@ public class DivisionHelper {
 	 *           x
 	 *         
 	 * And so on, where "x" represents a possible candidate and
-	 * O represents the original cell.
+	 * O represents the original cell. The distance is looked up in
+	 * the empty site index, so only that one diamond is searched.
+	 * Candidates are kept in the order the diamond is scanned.
 	 * 
 	 */
-	private HashMap<Integer, Offset> findCandidates(int c) {
-		int n = 1;
-		
-		int x = c % p.W();
-		int y = c / p.W();
-		
+	private void findCandidates(int x, int y, int n) {
 		// We don't want to store the same candidate twice, or we'll bias
-		// the outcome, so we hash the legal candidates by canonical coordinate.
+		// the outcome, so we keep one entry per canonical coordinate.
 		// But we want to preserve the wrap direction, so we preserve the periodic
 		// coordinate (where x + n w = x and y + n h = y), which is used as the
 		// final candidate location.
-		HashMap<Integer, Offset> candidates = new HashMap<Integer, Offset>(8);
-		
-		while (candidates.isEmpty()) {
-			//System.out.println(c + "\t" + n);
-			for (int dx = 0; dx <= n; dx++) {
-				int dy = n - dx;
-				
-				//System.out.println(n + "\t" + dx + "\t" + dy);
-				boolean maxed_x = Math.abs((dx * 2 + (p.W() % 2))) > p.W();
-				boolean maxed_y = Math.abs((dy * 2 + (p.W() % 2))) > p.W();
-				
-				if (maxed_x && maxed_y)
-					return candidates;
-				
-				test(x + dx, y + dy, dx, dy, candidates);
-				test(x - dx, y + dy, dx * -1, dy, candidates);
-				test(x + dx, y - dy, dx, dy * -1, candidates);
-				test(x - dx, y - dy, dx * -1, dy * -1, candidates);					
-			}
-			n++;
+		for (int dx = 0; dx <= n; dx++) {
+			int dy = n - dx;
+			
+			test(x + dx, y + dy, dx, dy);
+			test(x - dx, y + dy, dx * -1, dy);
+			test(x + dx, y - dy, dx, dy * -1);
+			test(x - dx, y - dy, dx * -1, dy * -1);
 		}
-		// Return the nearest legal candidates
-		return candidates;
 	}
 	
 	private int cmp(int p, int q) {
@@ -240,72 +231,4 @@ public class DivisionHelper {
 	private int sign(int i) {
 		return cmp(i, 0);
 	}
-	
-	/**
-	 * A series of assertions for debugging the shoving process.
-	 */
-	private void doAssertions(HashMap<AbstractCell, Integer> oldCoords) {
-		
-		HashSet<AbstractCell> remaining = new HashSet<AbstractCell>();
-		
-		int liveCellsOld = 0;
-		int deadCellsOld = 0;
-		
-		int liveCellsNow = 0;
-		int deadCellsNow = 0;
-		
-		// Every cell is where it thinks it is
-		for (int x = 0; x < p.W(); x++) {
-			for (int y = 0; y < p.W(); y++) {
-				int cell_x = lattice[x][y].x();
-				int cell_y = lattice[x][y].y();
-				int cell_idx = cell_y * p.W() + cell_x;
-				
-				if (x != cell_x || y != cell_y)
-					throw new RuntimeException("Misplaced cell: (" + x + ", " + y + ") !=" + (cell_x) + ", " + (cell_y));
-
-				if (lattice[x][y].getType() == AbstractCell.EMPTY)
-					deadCellsNow++;
-				else
-					liveCellsNow++;
-				
-				// No cell exists more than once
-				if (remaining.contains(cell_idx))
-					throw new RuntimeException("A cell appears twice!");
-				
-				if (oldCoords.containsKey(lattice[x][y])) {
-					Integer oldCoord = oldCoords.get(lattice[x][y]);
-					int old_x = oldCoord % p.W();
-					int old_y = oldCoord / p.W();
-					// No cell has moved more than 1 cell in the x direction in the course of a cell division (including wrapping around).
-					if ((Math.abs(old_x - x) > 1) && (Math.abs(old_x - x) != p.W() - 1))
-						throw new RuntimeException("A cell was shoved more than 1 square in the x direction. Old: " + oldCoord + "; new: " + (cell_x) + ", " + (cell_y));
-					
-					// No cell has moved more than 1 cell in the y direction in the course of a cell division.
-					if (Math.abs(old_y - y) > 1 && (Math.abs(old_y - y) != p.W() - 1))
-						throw new RuntimeException("A cell was shoved more than 1 square in the y direction. Old: " + oldCoord + "; new: " + (cell_x) + ", " + (cell_y));
-				}
-				remaining.add(lattice[x][y]);
-			}
-		}
-	}	
-
-	private void checkLocations() {
-		for (int x = 0; x < p.W(); x++) {
-			for (int y = 0; y < p.W(); y++) {
-				if (x != lattice[x][y].x() || y != lattice[x][y].y())
-					throw new RuntimeException("Misplaced cell: (" + x + ", " + y + ") != (" + lattice[x][y].x() + ", " +lattice[x][y].y() + ")");
-			}
-		}
-	}
-	
-	private class Offset {
-		public int dx;
-		public int dy;
-		
-		public Offset(int dx, int dy) {
-			this.dx = dx;
-			this.dy = dy;
-		}
-	}
 }
@@ -0,0 +1,403 @@
+package operations.processes.helpers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import no.uib.cipr.matrix.Vector;
+import structures.PropensityTree;
+import structures.cell.AbstractCell;
+import structures.cell.TypeLattice;
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Keeps summary statistics of the lattice as running totals, so that
+ * they don't have to be recomputed by scanning the lattice:
+ *
+ *  - the number of cells of each type
+ *  - the number of competitors (neighbors of a different type) of
+ *    every site
+ *  - the frontier length, i.e., the total number of competitors of all
+ *    cooperators and cheaters
+ *  - the number of cooperators and cheaters with at least one competitor
+ *  - the growth rate of every cell, weighted by the fraction of its
+ *    neighbors that are competitors, summed by type
+ *
+ * The initial counts are taken from the lattice (see TypeLattice.count
+ * and countCompetitors). After that, LifeCycleHelper reports every
+ * assignment to the lattice, which costs O(1) for the counts, and every
+ * growth rate it stores for display. Cell types are always read from the
+ * lattice. Growth rates are kept here, except on the PACKED lattice:
+ * there, a cell's growth rate depends only on its type and the catalyst,
+ * so it is computed from the most recent catalyst instead (see
+ * setCatalyst), which saves eight bytes per site.
+ * The weighted growth sums are kept in a PropensityTree, which costs
+ * O(log N) per changed site but cannot drift. When most growth rates
+ * are about to change, the sums can be deferred, and then rebuilt in
+ * one O(N) pass.
+ *
+ * Sites are indexed as i = y * W + x.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class LatticeStateTracker {
+
+	// Categories in the growth tree
+	private static final int COOPERATORS = 0;
+	private static final int CHEATERS = 1;
+
+	// Number of cell types with non-negative type codes (see AbstractCell)
+	private static final int TYPES = 4;
+
+	private Parameters p;
+
+	private TypeLattice lattice;
+
+	private byte[] competitors;
+
+	// Growth rate of every cell; null on the PACKED lattice
+	private double[] growth = null;
+
+	// The catalyst that growth rates are computed from, when they aren't
+	// kept; null until the first call to setCatalyst
+	private Vector catalyst = null;
+
+	private int[] counts;
+	private int[] frontierCells;
+	private int frontier;
+
+	private PropensityTree weightedGrowth;
+
+	// True while the weighted growth is only recorded, not summed
+	private boolean deferred = false;
+
+	// Scratch space for the sites affected by an assignment
+	private int[] affected = new int[5];
+
+	public LatticeStateTracker(Parameters p, TypeLattice lattice) {
+		this.p = p;
+		this.lattice = lattice;
+
+		competitors = new byte[p.N()];
+
+		if (!p.getLattice().equalsIgnoreCase("PACKED")) {
+			growth = new double[p.N()];
+
+			for (int i = 0; i < p.N(); i++)
+				growth[i] = lattice.getDerivative(i);
+		}
+
+		load(lattice);
+	}
+
+	/**
+	 * Writes the growth rates, if they are kept, for a checkpoint (see
+	 * io.Checkpoint). Everything else is taken from the lattice.
+	 */
+	public void save(DataOutput out) throws IOException {
+		if (growth == null)
+			return;
+
+		for (int i = 0; i < p.N(); i++)
+			out.writeDouble(growth[i]);
+	}
+
+	/**
+	 * Recounts everything from a lattice that has been restored from a
+	 * checkpoint, with the growth rates written by save. The totals come
+	 * out the same as the ones that were kept up to date: the counts are
+	 * exact, and the weighted growth sums depend only on the current
+	 * rates (see PropensityTree). On the PACKED lattice, no catalyst is
+	 * known until setCatalyst is called, so every growth rate has to be
+	 * reported again before the weighted growth totals are read.
+	 */
+	public void restore(DataInput in, TypeLattice lattice) throws IOException {
+		this.lattice = lattice;
+		catalyst = null;
+
+		if (growth != null) {
+			for (int i = 0; i < p.N(); i++)
+				growth[i] = in.readDouble();
+		}
+
+		load(lattice);
+	}
+
+	private void load(TypeLattice lattice) {
+		counts = new int[TYPES];
+		frontierCells = new int[TYPES];
+		frontier = 0;
+		weightedGrowth = new PropensityTree(p.N(), 2);
+
+		for (int t = 0; t < TYPES; t++)
+			counts[t] = lattice.count((byte) t);
+
+		lattice.countCompetitors(competitors);
+
+		for (int i = 0; i < p.N(); i++)
+			credit(i, lattice.getType(i));
+	}
+
+	/**
+	 * Records that the cell at site i, which was of the given type, has
+	 * been replaced in the lattice by one with the given growth rate. Only
+	 * the site and its four neighbors are revisited.
+	 */
+	public void set(int i, byte before, double rate) {
+		int n = neighborhood(i);
+
+		for (int k = 0; k < n; k++) {
+			int j = affected[k];
+			withdraw(j, j == i ? before : lattice.getType(j));
+		}
+
+		tally(before, -1);
+		tally(lattice.getType(i), 1);
+
+		if (growth != null)
+			growth[i] = rate;
+
+		for (int k = 0; k < n; k++)
+			deposit(affected[k]);
+	}
+
+	/**
+	 * Until rebuild() is called, records the weighted growth of each site
+	 * without summing it, for when most growth rates are about to change.
+	 * The weighted growth totals must not be read in the meantime.
+	 */
+	public void defer() {
+		deferred = true;
+	}
+
+	/**
+	 * Sums the weighted growth recorded since defer(), in one pass. The
+	 * sums depend only on the weights, so they come out the same as if
+	 * they had been kept up to date.
+	 */
+	public void rebuild() {
+		weightedGrowth.rebuild();
+		deferred = false;
+	}
+
+	/**
+	 * Records a new growth rate for the cell at site i.
+	 */
+	public void setGrowth(int i, double rate) {
+		if (growth != null) {
+			if (growth[i] == rate)
+				return;
+
+			growth[i] = rate;
+		}
+
+		weigh(i, lattice.getType(i), rate);
+	}
+
+	/**
+	 * The catalyst that growth rates are computed from on the PACKED
+	 * lattice. The vector is read, not copied, whenever a site's
+	 * competitors change.
+	 */
+	public void setCatalyst(Vector c) {
+		catalyst = c;
+	}
+
+	public byte getType(int i) {
+		return lattice.getType(i);
+	}
+
+	/**
+	 * Number of neighbors of site i whose type differs from its own.
+	 */
+	public int getCompetitors(int i) {
+		return competitors[i];
+	}
+
+	public int getCount(byte type) {
+		return counts[type];
+	}
+
+	/**
+	 * Returns a copy of the number of cells of each type, indexed by type.
+	 */
+	public int[] getCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * Total number of competitors of all cooperators and cheaters.
+	 */
+	public int getFrontier() {
+		return frontier;
+	}
+
+	/**
+	 * Number of cells of the given type with at least one competitor.
+	 */
+	public int getFrontierCells(byte type) {
+		return frontierCells[type];
+	}
+
+	/**
+	 * Sum over cooperators or cheaters of growth rate * (competitors / 4),
+	 * counting only cells for which that product is positive.
+	 */
+	public double getWeightedGrowth(byte type) {
+		if (type == AbstractCell.COOPERATOR)
+			return weightedGrowth.total(COOPERATORS);
+		else if (type == AbstractCell.CHEATER)
+			return weightedGrowth.total(CHEATERS);
+		else
+			throw new IllegalArgumentException("Weighted growth is only tracked for cooperators and cheaters.");
+	}
+
+	/**
+	 * Removes the contribution of site i, of the given type, to the
+	 * frontier totals.
+	 */
+	private void withdraw(int i, byte type) {
+		if (!competes(type))
+			return;
+
+		frontier -= competitors[i];
+
+		if (competitors[i] > 0)
+			frontierCells[type]--;
+	}
+
+	/**
+	 * Recounts the competitors of site i and adds its contribution to the
+	 * frontier totals.
+	 */
+	private void deposit(int i) {
+		int w = p.W();
+		int x = i % w;
+		int y = i / w;
+		byte self = lattice.getType(i);
+
+		byte count = 0;
+
+		if (lattice.getType(y * w + wrap(x + 1)) != self)
+			count++;
+
+		if (lattice.getType(y * w + wrap(x - 1)) != self)
+			count++;
+
+		if (lattice.getType(wrap(y + 1) * w + x) != self)
+			count++;
+
+		if (lattice.getType(wrap(y - 1) * w + x) != self)
+			count++;
+
+		competitors[i] = count;
+
+		credit(i, self);
+	}
+
+	/**
+	 * Adds the contribution of site i to the frontier totals, given its
+	 * competitor count.
+	 */
+	private void credit(int i, byte self) {
+		if (competes(self)) {
+			frontier += competitors[i];
+
+			if (competitors[i] > 0)
+				frontierCells[self]++;
+		}
+
+		weigh(i, self, growth(i, self));
+	}
+
+	/**
+	 * The growth rate of the cell at site i, which is of the given type.
+	 */
+	private double growth(int i, byte type) {
+		if (growth != null)
+			return growth[i];
+		else if (catalyst == null || !competes(type))
+			return 0D;
+		else
+			return lattice.getChangeRate(i, catalyst.get(i), false);
+	}
+
+	private void weigh(int i, byte type, double rate) {
+		double weighted = 0D;
+		if (competes(type))
+			weighted = rate * (competitors[i] * 0.25D);
+
+		if (weighted <= p.epsilon())
+			weighted = 0D;
+
+		int category = (type == AbstractCell.CHEATER ? CHEATERS : COOPERATORS);
+
+		if (deferred)
+			weightedGrowth.put(i, weighted, category);
+		else
+			weightedGrowth.set(i, weighted, category);
+	}
+
+	/**
+	 * Collects site i and its distinct neighbors into the scratch array.
+	 * (On very small lattices, several neighbors can be the same site.)
+	 */
+	private int neighborhood(int i) {
+		int w = p.W();
+		int x = i % w;
+		int y = i / w;
+
+		int n = 0;
+		n = collect(i, n);
+		n = collect(y * w + wrap(x + 1), n);
+		n = collect(y * w + wrap(x - 1), n);
+		n = collect(wrap(y + 1) * w + x, n);
+		n = collect(wrap(y - 1) * w + x, n);
+
+		return n;
+	}
+
+	private int collect(int j, int n) {
+		for (int k = 0; k < n; k++) {
+			if (affected[k] == j)
+				return n;
+		}
+
+		affected[n] = j;
+		return n + 1;
+	}
+
+	private void tally(byte type, int delta) {
+		if (type >= 0 && type < TYPES)
+			counts[type] += delta;
+	}
+
+	private boolean competes(byte type) {
+		return type == AbstractCell.COOPERATOR || type == AbstractCell.CHEATER;
+	}
+
+	private int wrap(int x) {
+		int w = p.W();
+		return (x < 0 ? (x % w + w) % w : x % w);
+	}
+}
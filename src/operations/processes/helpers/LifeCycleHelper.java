@@ -1,8 +1,13 @@
 package operations.processes.helpers;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import structures.DistanceTransform;
+import structures.SiteChangeList;
 import structures.cell.AbstractCell;
-import structures.cell.DeadCell;
-import structures.cell.EmptyCell;
+import structures.cell.TypeLattice;
 import control.parameters.Parameters;
 
 /**
@@ -34,29 +39,118 @@ public class LifeCycleHelper {
 	protected final boolean VACATE_ON_DEATH = false;
 	
 	private Parameters p;
-	private AbstractCell[][] lattice;
+	private TypeLattice lattice;
+	
+	// Sites whose enzyme production has changed since the last time
+	// the list was cleared
+	private SiteChangeList productionChanges;
+	
+	// Sites that have been assigned a new cell, and sites whose catalyst
+	// concentration has been changed by the solver, since the lists were
+	// last cleared
+	private SiteChangeList latticeChanges;
+	private SiteChangeList catalystChanges;
+	
+	// Running totals of cell counts, competitors and frontier growth
+	private LatticeStateTracker tracker;
+	
+	// Distance from every site to the nearest empty site; null until
+	// getEmptySites is called
+	private DistanceTransform emptySites = null;
 	
-	public LifeCycleHelper(Parameters p, AbstractCell[][] lattice) {
+	public LifeCycleHelper(Parameters p, TypeLattice lattice) {
 		this.p = p;
 		this.lattice = lattice;
+		productionChanges = new SiteChangeList(p.N());
+		latticeChanges = new SiteChangeList(p.N());
+		catalystChanges = new SiteChangeList(p.N());
+		tracker = new LatticeStateTracker(p, lattice);
+	}
+	
+	public SiteChangeList getProductionChanges() {
+		return productionChanges;
+	}
+	
+	public SiteChangeList getLatticeChanges() {
+		return latticeChanges;
+	}
+	
+	public SiteChangeList getCatalystChanges() {
+		return catalystChanges;
+	}
+	
+	public LatticeStateTracker getTracker() {
+		return tracker;
+	}
+	
+	/**
+	 * Returns the distance from every site to the nearest empty site,
+	 * which is kept up to date as cells are placed and killed. It is
+	 * built the first time it is requested.
+	 */
+	public DistanceTransform getEmptySites() {
+		if (emptySites == null) {
+			boolean[] empty = new boolean[p.N()];
+			for (int i = 0; i < p.N(); i++)
+				empty[i] = (lattice.getType(i) == AbstractCell.EMPTY);
+			
+			emptySites = new DistanceTransform(p.W(), empty);
+		}
+		
+		return emptySites;
+	}
+	
+	public TypeLattice getLattice() {
+		return lattice;
+	}
+	
+	/**
+	 * Writes the lattice, the pending changes and the growth rates, for
+	 * a checkpoint (see io.Checkpoint).
+	 */
+	public void save(DataOutput out) throws IOException {
+		lattice.save(out);
+		productionChanges.save(out);
+		latticeChanges.save(out);
+		catalystChanges.save(out);
+		tracker.save(out);
+	}
+	
+	/**
+	 * Restores the state written by save. The running totals are
+	 * recounted from the restored lattice, and the distances to empty
+	 * sites, if they have been requested, are brought up to date with
+	 * it.
+	 */
+	public void restore(DataInput in) throws IOException {
+		lattice.restore(in);
+		productionChanges.restore(in);
+		latticeChanges.restore(in);
+		catalystChanges.restore(in);
+		tracker.restore(in, lattice);
+		
+		if (emptySites != null) {
+			for (int i = 0; i < p.N(); i++)
+				emptySites.set(i, lattice.getType(i) == AbstractCell.EMPTY);
+		}
 	}
 	
 	/**
 	 * The shoving algorithm moves the parent cell in the direction
 	 * shoved. It is therefore displaced. Put the child in the origin.
 	 * 
-	 * @param origin
-	 * @param target
+	 * The parent is at (xp, yp); the child is placed at (x, y).
 	 */
-	public void fission(AbstractCell cell, int x, int y) {
-		// Divide biomass in half
-		cell.halveBiomass();
+	public void fission(int xp, int yp, int x, int y) {
+		int parent = lattice.index(wrap(xp), wrap(yp));
+		int child = lattice.index(wrap(x), wrap(y));
+		byte type = lattice.getType(child);
+		double before = lattice.getProduction(child);
 		
-		// Create a duplicate cell object
-		AbstractCell child = cell.duplicate(x, y);
+		// Divide biomass in half and copy the parent into the child's site
+		lattice.divide(parent, child);
 		
-		// Place child in the origin
-		set(x, y, child);
+		recordChange(child, type, before);
 	}
 		
 	/**
@@ -71,52 +165,73 @@ public class LifeCycleHelper {
 	}
 	
 	/**
-	 * Assign a cell to a new coordinate, honoring class requirements
-	 * and boundary conditions. Note that, if the cell was previously
-	 * assigned to another position, it now exists in BOTH positions
-	 * in the lattice, which is an illegal state. An assignment must
-	 * be made to the old position for the state to be legal.
+	 * Copy the cell at (xs, ys) to (x, y), honoring boundary conditions.
+	 * Note that the cell now exists in BOTH positions in the lattice,
+	 * which is an illegal state. An assignment must be made to the old
+	 * position for the state to be legal.
 	 */
-	public void set(int x, int y, AbstractCell cell) {
-		x = wrap(x, p.W());
-		y = wrap(y, p.W());
-		cell.setCoordinate(x, y);
-		lattice[x][y] = cell;
+	public void move(int xs, int ys, int x, int y) {
+		int from = lattice.index(wrap(xs), wrap(ys));
+		int to = lattice.index(wrap(x), wrap(y));
+		byte type = lattice.getType(to);
+		double before = lattice.getProduction(to);
+		
+		lattice.copy(from, to);
+		
+		recordChange(to, type, before);
 	}
 	
 	/**
-	 * Retrieve a cell from a coordinate, honoring periodic boundary
+	 * Retrieve a cell type from a coordinate, honoring periodic boundary
 	 * conditions.
 	 */
-	public AbstractCell get(int x, int y) {
-		return lattice[wrap(x, p.W())][wrap(y, p.W())];
+	public byte getType(int x, int y) {
+		return lattice.getType(lattice.index(wrap(x), wrap(y)));
 	}
 	
+	/**
+	 * Growth rate of the cell at (x, y) given catalyst concentration c. If
+	 * setDerivative is true, it is also stored for display and reported
+	 * to the tracker.
+	 */
+	public double getChangeRate(int x, int y, double c, boolean setDerivative) {
+		int i = lattice.index(wrap(x), wrap(y));
+		double rate = lattice.getChangeRate(i, c, setDerivative);
+		
+		if (setDerivative)
+			tracker.setGrowth(i, rate);
+		
+		return rate;
+	}
 	
 	/**
 	 * "Kill" the cell at (x, y) by overwriting it with a dead/empty cell.
 	 */
 	public void kill(int x, int y) {
-		AbstractCell cell;
-		
 		System.out.println("Cell (" + x + ", " + y + ") has died.");
 		
-		if (VACATE_ON_DEATH)
-			cell = new EmptyCell(p, x, y);
-		else
-			cell = new DeadCell(p, x, y);
+		int i = lattice.index(x, y);
+		byte type = lattice.getType(i);
+		double before = lattice.getProduction(i);
 		
-		assign(x, y, cell);
+		lattice.kill(i, VACATE_ON_DEATH);
+		
+		recordChange(i, type, before);
 	}
 	
 	/**
-	 * Assigns a cell to a lattice position. Returns the old cell.
+	 * Reports an assignment to site i, which held a cell of the given
+	 * type and production before.
 	 */
-	protected AbstractCell assign(int x, int y, AbstractCell cell) {
-		AbstractCell old = lattice[x][y];
-		lattice[x][y] = cell;
+	private void recordChange(int i, byte type, double before) {
+		latticeChanges.add(i);
+		tracker.set(i, type, lattice.getDerivative(i));
+		
+		if (emptySites != null)
+			emptySites.set(i, lattice.getType(i) == AbstractCell.EMPTY);
 		
-		return old;
+		if (before != lattice.getProduction(i))
+			productionChanges.add(i);
 	}
 	
 	
@@ -137,7 +252,7 @@ public class LifeCycleHelper {
 	 */
 	public double expRandom(double lambda) {
 		// Get a random number between 0 (inc) and 1 (exc)
-		double u = p.getRandom().nextDouble();
+		double u = p.getRandom(Parameters.SAMPLING).nextDouble();
 		
 		// Inverse of exponential CDF
 		return Math.log(1 - u) / (-1 * lambda);
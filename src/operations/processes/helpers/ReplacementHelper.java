@@ -2,7 +2,6 @@ package operations.processes.helpers;
 
 import java.util.ArrayList;
 
-import structures.cell.AbstractCell;
 import control.EquilibriumException;
 import control.parameters.Parameters;
 
@@ -42,54 +41,51 @@ public class ReplacementHelper {
 		this.manager = manager;
 	}
 	
-	public void process (AbstractCell cell, boolean requireCompetitor) throws EquilibriumException {
+	/**
+	 * Replaces a neighbor of the cell at (x, y) with a copy of it.
+	 * Returns the lattice index (y * W + x) of the replaced site.
+	 */
+	public int process (int x, int y, boolean requireCompetitor) throws EquilibriumException {
 		Tuple target;
 		if (requireCompetitor)
-			target = chooseCompetitorNeighbor(cell);
+			target = chooseCompetitorNeighbor(x, y);
 		else
-			target = chooseTorusNeighbor(cell);
+			target = chooseTorusNeighbor(x, y);
 
-		fission(cell, target);	
+		fission(x, y, target);
+		
+		return manager.wrap(target.y) * p.W() + manager.wrap(target.x);
 	}
 	
 	
-	private Tuple chooseCompetitorNeighbor(AbstractCell cell) {
-		int x = cell.x();
-		int y = cell.y();
+	private Tuple chooseCompetitorNeighbor(int x, int y) {
 		ArrayList<Tuple> targets = new ArrayList<Tuple>(4);
 		
-		byte selfType = manager.get(x, y).getType();
+		byte selfType = manager.getType(x, y);
 		
-		AbstractCell target = manager.get(x + 1, y);
-		if (target.getType() != selfType) {
+		if (manager.getType(x + 1, y) != selfType) {
 			targets.add(new Tuple(x + 1, y));
 		}		
 		
-		target = manager.get(x - 1, y);
-		if (target.getType() != selfType) {
+		if (manager.getType(x - 1, y) != selfType) {
 			targets.add(new Tuple(x - 1, y));
 		}		
 
-		target = manager.get(x, y + 1);
-		if (target.getType() != selfType) {
+		if (manager.getType(x, y + 1) != selfType) {
 			targets.add(new Tuple(x, y + 1));
 		}		
 		
-		target = manager.get(x, y - 1);
-		if (target.getType() != selfType) {
+		if (manager.getType(x, y - 1) != selfType) {
 			targets.add(new Tuple(x, y - 1));
 		}		
 		
-		int i = p.getRandom().nextInt(targets.size());
+		int i = p.getRandom(Parameters.SAMPLING).nextInt(targets.size());
 		
 		return targets.get(i);
 	}
 
 
-	private Tuple chooseTorusNeighbor(AbstractCell cell) {
-		int x = cell.x();
-		int y = cell.y();
-		
+	private Tuple chooseTorusNeighbor(int x, int y) {
 		Tuple[] targets = new Tuple[4];
 		
 		// Right (or wrap around)
@@ -104,7 +100,7 @@ public class ReplacementHelper {
 		// Down (or wrap around)
 		targets[3] = new Tuple(x, manager.wrap(y-1, p.W()));
 		
-		int i = p.getRandom().nextInt(4);
+		int i = p.getRandom(Parameters.SAMPLING).nextInt(4);
 		
 		//System.out.println("  Dividing cell: (" + x + ", " + y + "). Target: (" + targets[i].x + ", " + targets[i].y + ").");
 
@@ -121,7 +117,7 @@ public class ReplacementHelper {
 		}
 	}
 
-	private void fission(AbstractCell cell, Tuple t) {
-		manager.fission(cell, t.x, t.y);
+	private void fission(int x, int y, Tuple t) {
+		manager.fission(x, y, t.x, t.y);
 	}
 }
@@ -1,5 +1,10 @@
 package operations.solvers;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import operations.processes.AbstractLifeCycle;
 import structures.distributions.AbstractPointDistribution;
 import no.uib.cipr.matrix.Vector;
 import control.parameters.Parameters;
@@ -44,6 +49,43 @@ public abstract class AbstractRDSolver {
 	}
 	
 	public abstract Vector solve (Vector source);
+	
+	/**
+	 * Solves for the production of the given life cycle. Solvers that
+	 * can update incrementally may use only the sites listed in
+	 * ca.getProductionChanges(); by default, this is a full solve.
+	 * Either way, the list of changes is cleared, and every site whose
+	 * catalyst may have changed is added to ca.getCatalystChanges().
+	 */
+	public Vector solve(AbstractLifeCycle ca) {
+		Vector solution = solve(ca.getProduction());
+		ca.getProductionChanges().clear();
+		ca.getCatalystChanges().addAll();
+		return solution;
+	}
+
+	/**
+	 * Prepares the solver for a new replicate. A solver is built once
+	 * per run and shared by every replicate, so that the work that only
+	 * depends on the distribution is done once; any state carried over
+	 * from the previous replicate must be dropped here. By default,
+	 * there is none.
+	 */
+	public void reset() {
+	}
+
+	/**
+	 * Writes whatever the solver carries from one solve to the next, for
+	 * a checkpoint (see io.Checkpoint). By default, there is nothing.
+	 */
+	public void save(DataOutput out) throws IOException {
+	}
+
+	/**
+	 * Restores the state written by save, after reset.
+	 */
+	public void restore(DataInput in) throws IOException {
+	}
 
 	/**
 	 * Returns the value of the distribution at C(0, 0).
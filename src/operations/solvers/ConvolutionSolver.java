@@ -0,0 +1,118 @@
+package operations.solvers;
+
+import structures.FourierTransform;
+import structures.distributions.AbstractPointDistribution;
+import control.parameters.Parameters;
+import no.uib.cipr.matrix.DenseVector;
+import no.uib.cipr.matrix.Vector;
+import no.uib.cipr.matrix.sparse.SparseVector;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Computes the catalyst field as the circular convolution of the
+ * producer field with the point source distribution. Since the
+ * lattice is periodic, this is the superposition computed by the
+ * positive and negative superposition solvers, but the convolution
+ * is evaluated with a 2D FFT in O(N log N) time rather than O(N * m)
+ * time, where m is the number of producers (or defectors).
+ *
+ * The two are equal up to rounding (relative differences of about
+ * 1e-14), not bit for bit, so seeded runs that use this solver do not
+ * reproduce the output of the superposition solvers exactly.
+ *
+ * The spectrum of the distribution is computed once, when the
+ * solver is constructed.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class ConvolutionSolver extends AbstractRDSolver {
+
+	private FourierTransform fft;
+
+	// Transform of the point source distribution
+	private double[] kernelRe;
+	private double[] kernelIm;
+
+	public ConvolutionSolver(Parameters p, AbstractPointDistribution dist) {
+		super(p, dist);
+
+		fft = new FourierTransform(p.W());
+
+		calcKernel();
+	}
+
+	/**
+	 * The kernel at offset (dx, dy) is the concentration a producer
+	 * at the origin contributes to (dx, dy). Offsets are taken mod W,
+	 * so the convolution wraps around the periodic boundaries.
+	 */
+	private void calcKernel() {
+		kernelRe = new double[p.N()];
+		kernelIm = new double[p.N()];
+
+		for (int y = 0; y < p.W(); y++) {
+			for (int x = 0; x < p.W(); x++) {
+				kernelRe[y * p.W() + x] = dist.get(x, y);
+			}
+		}
+
+		fft.forward2D(kernelRe, kernelIm);
+	}
+
+	@Override
+	public Vector solve(Vector source) {
+		if (p.getProduction() < p.epsilon())
+			return new SparseVector(p.N());
+
+		// The distribution already includes the production rate, so
+		// the source field is just the fraction of full production
+		// at each site (1 for producers, 0 otherwise). The working
+		// space belongs to this call, since a background resync may
+		// be solving on the same instance.
+		double[] re = new double[p.N()];
+		double[] im = new double[p.N()];
+
+		for (int i = 0; i < p.N(); i++) {
+			re[i] = source.get(i) / p.getProduction();
+			im[i] = 0D;
+		}
+
+		fft.forward2D(re, im);
+
+		// Convolution is multiplication in frequency space
+		for (int i = 0; i < p.N(); i++) {
+			double a = re[i];
+			double b = im[i];
+			re[i] = a * kernelRe[i] - b * kernelIm[i];
+			im[i] = a * kernelIm[i] + b * kernelRe[i];
+		}
+
+		fft.inverse2D(re, im);
+
+		return new DenseVector(re, false);
+	}
+
+	@Override
+	public double getSourceConcentration() {
+		return dist.get(0, 0);
+	}
+}
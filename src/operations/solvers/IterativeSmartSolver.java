@@ -2,7 +2,17 @@ package operations.solvers;
 
 import control.parameters.Parameters;
 import structures.distributions.AbstractPointDistribution;
+import operations.processes.AbstractLifeCycle;
+import structures.SiteChangeList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+
 import no.uib.cipr.matrix.DenseVector;
+import no.uib.cipr.matrix.Matrices;
 import no.uib.cipr.matrix.Vector;
 
 
@@ -32,45 +42,349 @@ import no.uib.cipr.matrix.Vector;
  * cells per time step, leading to O(n) time complexity as best, worst
  * and average performance for continuous processes. 
  * 
+ * Each changed cell only updates the sites within the support radius
+ * of the distribution (see AbstractPointDistribution), so if the decay
+ * length is short compared to the lattice, the cost of the update is
+ * O(r^2) rather than O(n).
+ * 
  * If more than one cell is allowed to change per time step, this complexity
  * gets worse. In the worst case, when all cell behaviors have flipped, it has
  * O(n^2) time complexity.
- * 
+ *
+ * Since every update adds to or subtracts from the previous solution,
+ * rounding error (and, if the kernel is truncated, truncation error)
+ * accumulates. The solver keeps a bound on this drift, and can
+ * re-anchor itself to a full solve every RESYNC_INTERVAL events or
+ * whenever the bound exceeds RESYNC_TOLERANCE. A resync snapshots the
+ * production, computes the full solution on the shared worker pool, and
+ * merges it a fixed number of events later (half the interval, or one
+ * event if only the tolerance is set) by replaying the sites that have
+ * changed in the meantime. Merging at a fixed event count keeps the
+ * result independent of thread timing. Both settings default to zero,
+ * which disables resyncing.
+ *
  * @author dbborens@princeton.edu
  *
  */
 public class IterativeSmartSolver extends SmartSuperpositionSolver {
 
-	private Vector prevSource = null;
+	// Production at every site as of the last solve
+	private double[] prevSource = null;
 	private Vector prevSolution = null;
-	
+
+	// Sites whose catalyst has changed, as reported to the life cycle
+	private SiteChangeList catalystChanges = null;
+
+	// Upper bound on the error added to the solution by one update
+	private double updateError;
+
+	// Bound on the drift since the solution was last anchored to a full solve
+	private double driftEstimate = 0D;
+	private int eventsSinceResync = 0;
+
+	// Resync in progress: the full solve, the state it was started from,
+	// and the sites that have changed since
+	private ForkJoinTask<Vector> pending = null;
+	private double[] snapshotSource;
+	private double[] snapshotSolution;
+	private SiteChangeList sinceSnapshot;
+	private int eventsSincePending;
+	private int lag;
+
+	// Drift metrics
+	private int resyncCount = 0;
+	private double lastResyncError = 0D;
+	private double maxResyncError = 0D;
+	private long resyncNanos = 0L;
+	private long backgroundNanos;
+
+	// The first full solve of the most recent replicate, and its source
+	private double[] initialSource = null;
+	private Vector initialSolution = null;
+
 	public IterativeSmartSolver(Parameters p, AbstractPointDistribution dist) {
 		super(p, dist);
+
+		double kernelMass = 0D;
+		for (double c : dist.getKernel())
+			kernelMass += Math.abs(c);
+
+		// Each visited site is off by at most one rounding of a value no
+		// larger than the kernel mass, plus whatever was truncated.
+		updateError = dist.getTruncationError() + p.epsilon() * kernelMass;
+
+		sinceSnapshot = new SiteChangeList(p.N());
+		lag = p.getResyncInterval() > 0 ? Math.max(1, p.getResyncInterval() / 2) : 1;
 	}
 
 	@Override
 	public Vector solve(Vector source) {
 		Vector solution;
 		
-		/*try {
-			throw new RuntimeException();
-		} catch (RuntimeException ex) {
-			ex.printStackTrace();
-		}*/
 		// Without a template, just use the SmartSuperpositionSolver
 		if (prevSolution == null) {
-			solution = super.solve(source);
+			solution = initialSolve(source);
 		} else {
 			solution = iterativeSolve(source);
 		}
 		
 		prevSolution = solution;
 		
-		prevSource = source;
+		prevSource = Matrices.getArray(source);
 		
 		return solution;
 	}
 
+	/**
+	 * Applies only the sites that the life cycle reports as changed,
+	 * rather than comparing the whole production vector. The previous
+	 * solution is updated in place and returned, so the result is only
+	 * valid until the next call to the solver.
+	 */
+	@Override
+	public Vector solve(AbstractLifeCycle ca) {
+		SiteChangeList changes = ca.getProductionChanges();
+		catalystChanges = ca.getCatalystChanges();
+		
+		// Without a template, do a full solve
+		if (prevSolution == null) {
+			Vector solution = solve(ca.getProduction());
+			changes.clear();
+			catalystChanges.addAll();
+			return solution;
+		}
+		
+		if (p.getProduction() < p.epsilon()) {
+			changes.clear();
+			return prevSolution;
+		}
+		
+		// Visit the changed sites in the same order as a full scan would,
+		// so that the floating point result is the same.
+		changes.sort();
+		
+		for (int k = 0; k < changes.size(); k++) {
+			int i = changes.get(k);
+			double current = ca.getProductionAt(i);
+			
+			apply(i, current - prevSource[i], prevSolution);
+			prevSource[i] = current;
+
+			if (pending != null)
+				sinceSnapshot.add(i);
+		}
+
+		changes.clear();
+
+		checkResync();
+
+		return prevSolution;
+	}
+
+	/**
+	 * Called once per event. Merges a pending resync once it is due, or
+	 * starts a new one if the interval has elapsed or the drift bound is
+	 * too large.
+	 */
+	private void checkResync() {
+		eventsSinceResync++;
+
+		if (pending != null) {
+			eventsSincePending++;
+			if (eventsSincePending >= lag)
+				finishResync();
+
+			return;
+		}
+
+		boolean due = (p.getResyncInterval() > 0 && eventsSinceResync >= p.getResyncInterval())
+				|| (p.getResyncTolerance() > 0D && driftEstimate > p.getResyncTolerance());
+
+		if (due)
+			startResync();
+	}
+
+	private void startResync() {
+		snapshotSource = prevSource.clone();
+		snapshotSolution = Matrices.getArray(prevSolution);
+		eventsSinceResync = 0;
+		eventsSincePending = 0;
+
+		submitResync();
+	}
+
+	/**
+	 * Starts the full solve of the snapshot on the worker pool.
+	 */
+	private void submitResync() {
+		final Vector source = new DenseVector(snapshotSource, false);
+
+		pending = p.getPool().submit(new Callable<Vector>() {
+			@Override
+			public Vector call() {
+				long start = System.nanoTime();
+				Vector solution = fullSolve(source);
+				backgroundNanos = System.nanoTime() - start;
+				return solution;
+			}
+		});
+	}
+
+	/**
+	 * Replaces the solution with the full solve, brought up to date by
+	 * replaying the sites that changed since the snapshot.
+	 */
+	private void finishResync() {
+		long start = System.nanoTime();
+		Vector exact = pending.join();
+		pending = null;
+
+		double error = 0D;
+		for (int j = 0; j < p.N(); j++) {
+			double c = exact.get(j);
+			error = Math.max(error, Math.abs(c - snapshotSolution[j]));
+			prevSolution.set(j, c);
+		}
+		catalystChanges.addAll();
+
+		// The replay below accounts for the updates since the snapshot
+		driftEstimate = 0D;
+
+		sinceSnapshot.sort();
+		for (int k = 0; k < sinceSnapshot.size(); k++) {
+			int i = sinceSnapshot.get(k);
+			apply(i, prevSource[i] - snapshotSource[i], prevSolution);
+		}
+		sinceSnapshot.clear();
+
+		snapshotSource = null;
+		snapshotSolution = null;
+
+		resyncCount++;
+		lastResyncError = error;
+		maxResyncError = Math.max(maxResyncError, error);
+		resyncNanos += backgroundNanos + (System.nanoTime() - start);
+	}
+
+	/**
+	 * Forgets the solution and drift of the previous replicate. The
+	 * first full solve is kept: replicates usually start from the same
+	 * production, in which case it is copied rather than solved again.
+	 *
+	 * A resync still running in the background is waited for, and
+	 * its result discarded, so that it cannot outlive the replicate
+	 * that started it.
+	 */
+	@Override
+	public void reset() {
+		if (pending != null)
+			pending.join();
+
+		prevSource = null;
+		prevSolution = null;
+		catalystChanges = null;
+
+		driftEstimate = 0D;
+		eventsSinceResync = 0;
+
+		pending = null;
+		snapshotSource = null;
+		snapshotSolution = null;
+		sinceSnapshot.clear();
+		eventsSincePending = 0;
+
+		resyncCount = 0;
+		lastResyncError = 0D;
+		maxResyncError = 0D;
+		resyncNanos = 0L;
+		backgroundNanos = 0L;
+	}
+
+	/**
+	 * Writes the previous source and solution, the drift bound and any
+	 * resync in progress. A resync in progress is written as its
+	 * snapshot, and solved again on restore; since it is merged at a
+	 * fixed event count, the result is the same.
+	 */
+	@Override
+	public void save(DataOutput out) throws IOException {
+		out.writeBoolean(prevSolution != null);
+		if (prevSolution != null) {
+			writeArray(out, prevSource);
+			writeArray(out, Matrices.getArray(prevSolution));
+		}
+
+		out.writeDouble(driftEstimate);
+		out.writeInt(eventsSinceResync);
+
+		out.writeBoolean(pending != null);
+		if (pending != null) {
+			writeArray(out, snapshotSource);
+			writeArray(out, snapshotSolution);
+			sinceSnapshot.save(out);
+			out.writeInt(eventsSincePending);
+		}
+
+		out.writeInt(resyncCount);
+		out.writeDouble(lastResyncError);
+		out.writeDouble(maxResyncError);
+		out.writeLong(resyncNanos);
+	}
+
+	@Override
+	public void restore(DataInput in) throws IOException {
+		if (in.readBoolean()) {
+			prevSource = readArray(in);
+			prevSolution = new DenseVector(readArray(in), false);
+		}
+
+		driftEstimate = in.readDouble();
+		eventsSinceResync = in.readInt();
+
+		if (in.readBoolean()) {
+			snapshotSource = readArray(in);
+			snapshotSolution = readArray(in);
+			sinceSnapshot.restore(in);
+			eventsSincePending = in.readInt();
+			submitResync();
+		}
+
+		resyncCount = in.readInt();
+		lastResyncError = in.readDouble();
+		maxResyncError = in.readDouble();
+		resyncNanos = in.readLong();
+	}
+
+	private void writeArray(DataOutput out, double[] values) throws IOException {
+		for (double value : values)
+			out.writeDouble(value);
+	}
+
+	private double[] readArray(DataInput in) throws IOException {
+		double[] values = new double[p.N()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = in.readDouble();
+
+		return values;
+	}
+
+	private Vector initialSolve(Vector source) {
+		double[] production = Matrices.getArray(source);
+
+		if (initialSolution != null && Arrays.equals(production, initialSource))
+			return initialSolution.copy();
+
+		Vector solution = super.solve(source);
+		initialSource = production;
+		initialSolution = solution.copy();
+
+		return solution;
+	}
+
+	private Vector fullSolve(Vector source) {
+		return super.solve(source);
+	}
+	
 	private Vector iterativeSolve(Vector source) {
 		if (p.getProduction() < p.epsilon())
 			return trivialSolution();
@@ -78,54 +392,139 @@ public class IterativeSmartSolver extends SmartSuperpositionSolver {
 		// Start with the old values.
 		Vector solution = prevSolution.copy();
 
-		//double check = 0D;
 		for (int i = 0; i < p.N(); i++) {
-			double delta = source.get(i) - prevSource.get(i);
-			//check += delta;
+			double delta = source.get(i) - prevSource[i];
+			apply(i, delta, solution);
+		}
+		
+		return solution;
+	}
+	
+	private void apply(int i, double delta, Vector solution) {
+		// If this cell became a cooperator, add its effect.
+		// If there is no change, ignore it.
+		if (p.epsilonEquals(delta, 0D))
+			return;
+		
+		driftEstimate += updateError;
+
+		if (delta > 0D) {
+			add(i, solution);
 			
-			// If this cell became a cooperator, add its effect.
-			// If there is no change, ignore it.
-			if (p.epsilonEquals(delta, 0D))
-				continue;
+		// If this cell became a cheater, subtract its effect.
+		} else if (delta < 0D) {
+			subtract(i, solution);
 			
-			else if (delta > 0D) {
-				//System.out.println("Adding");
-				add(i, solution);
+		} else {
+			throw new IllegalStateException();
+		}
+	}
+
+	private void subtract(int i, Vector solution) {
+		update(i, solution, -1D);
+	}
+
+	private void add(int i, Vector solution) {
+		update(i, solution, 1D);
+	}
+
+	/**
+	 * Add (sign = 1) or remove (sign = -1) the contribution of source i.
+	 * Only the sites within the support radius of the distribution are
+	 * visited, so the cost is O(r^2) rather than O(N).
+	 */
+	private void update(int i, Vector solution, double sign) {
+		int r = dist.getSupportRadius();
+		int w = p.W();
+		
+		double[] kernel = dist.getKernel();
+		int[] columns = dist.getColumnOffsets();
+		int[] rows = dist.getRowOffsets();
+		int shift = w - 1;
+		
+		int xs = i % w;
+		int ys = i / w;
+		
+		// The support covers the whole lattice: visit every site once
+		if (2 * r + 1 >= w) {
+			if (catalystChanges != null)
+				catalystChanges.addAll();
+			
+			for (int yt = 0; yt < w; yt++) {
+				int row = rows[ys - yt + shift];
 				
-			// If this cell became a cheater, subtract its effect.
-			} else if (delta < 0D) {
-				//System.out.println("Subtracting");
-				subtract(i, solution);
+				for (int xt = 0; xt < w; xt++) {
+					int j = yt * w + xt;
+					double c = solution.get(j);
+					c += sign * kernel[row + columns[xs - xt + shift]];
+					solution.set(j, c);
+				}
+			}
+			return;
+		}
+		
+		for (int dy = -r; dy <= r; dy++) {
+			int yt = wrap(ys + dy);
+			int row = rows[ys - yt + shift];
+			
+			for (int dx = -r; dx <= r; dx++) {
+				int xt = wrap(xs + dx);
+				int j = yt * w + xt;
+				double c = solution.get(j);
+				c += sign * kernel[row + columns[xs - xt + shift]];
+				solution.set(j, c);
 				
-			} else {
-				throw new IllegalStateException();
+				if (catalystChanges != null)
+					catalystChanges.add(j);
 			}
 		}
-		//System.out.println("In solver: " + check);
+	}
+	
+	/**
+	 * Number of resyncs merged so far.
+	 */
+	public int getResyncCount() {
+		return resyncCount;
+	}
 
-		//if (check < p.epsilon())
-		//	throw new IllegalStateException("Nothing changed!\n");
-		
-		return solution;
+	/**
+	 * Largest difference between the incremental and full solutions,
+	 * over all sites, at the most recent resync.
+	 */
+	public double getLastResyncError() {
+		return lastResyncError;
 	}
 
-	private void subtract(int i, Vector solution) {
-		for (int j = 0; j < p.N(); j++) {
-			double c = solution.get(j);
-			c -= getContribution(i, j);
-			solution.set(j, c);
-		}	
+	public double getMaxResyncError() {
+		return maxResyncError;
 	}
 
-	private void add(int i, Vector solution) {
-		for (int j = 0; j < p.N(); j++) {
-			double c = solution.get(j);
-			c += getContribution(i, j);
-			solution.set(j, c);
-		}
+	/**
+	 * Time spent on resyncs (full solves plus merges), in milliseconds.
+	 */
+	public double getResyncTime() {
+		return resyncNanos / 1e6;
+	}
+
+	/**
+	 * Current bound on the drift since the last resync.
+	 */
+	public double getDriftEstimate() {
+		return driftEstimate;
+	}
+
+	public String getDriftReport() {
+		return "Resyncs: " + resyncCount + "; error at last resync: " + lastResyncError
+				+ "; max error at resync: " + maxResyncError + "; resync time: "
+				+ getResyncTime() + " ms; current drift bound: " + driftEstimate;
+	}
+
+	private int wrap(int x) {
+		int w = p.W();
+		return (x < 0 ? (x % w + w) % w : x % w);
 	}
 
-	protected Double getContribution(int source, int target) {
+	protected double getContribution(int source, int target) {
 		int dx = xOffset(source, target);
 		int dy = yOffset(source, target);
 		
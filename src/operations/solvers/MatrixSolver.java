@@ -1,16 +1,14 @@
 package operations.solvers;
 
 import control.parameters.Parameters;
-import operations.matrix.Decay;
-import operations.matrix.Diffusion;
+import operations.matrix.DiffusionDecayStencil;
+import operations.matrix.MultigridPreconditioner;
 import structures.MatrixUtils;
 import structures.distributions.AbstractPointDistribution;
 import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.Matrix;
 import no.uib.cipr.matrix.Vector;
 import no.uib.cipr.matrix.sparse.CGS;
-import no.uib.cipr.matrix.sparse.CompDiagMatrix;
-import no.uib.cipr.matrix.sparse.CompRowMatrix;
 import no.uib.cipr.matrix.sparse.DiagonalPreconditioner;
 import no.uib.cipr.matrix.sparse.IterativeSolver;
 import no.uib.cipr.matrix.sparse.IterativeSolverNotConvergedException;
@@ -47,8 +45,6 @@ import no.uib.cipr.matrix.sparse.Preconditioner;
  */
 public class MatrixSolver extends AbstractRDSolver {
 
-	private CompRowMatrix D;
-	private Matrix I;
 	private double sourceConcentration;
 	
 	public MatrixSolver (Parameters p, AbstractPointDistribution dist) {
@@ -57,11 +53,6 @@ public class MatrixSolver extends AbstractRDSolver {
 		
 		sourceConcentration = dist.get(0, 0);
 		
-		Diffusion op = new Diffusion(p);
-		D = new CompRowMatrix(op);
-		
-		D.scale(-1D);
-		I = MatrixUtils.I(p.N());
 		//CellularAutomaton ca = new AlternatingLayer(p, 16);
 	}
 	@Override
@@ -78,8 +69,17 @@ public class MatrixSolver extends AbstractRDSolver {
 		System.out.println(source);
 		
 		IterativeSolver solver = new CGS(template);
-		Preconditioner preconditioner = new DiagonalPreconditioner(n);
-		preconditioner.setMatrix(operator);
+		Preconditioner preconditioner;
+		if (p.getPreconditioner().equalsIgnoreCase("MULTIGRID")) {
+			preconditioner = new MultigridPreconditioner(p);
+			preconditioner.setMatrix(operator);
+			solver.setPreconditioner(preconditioner);
+		} else {
+			// The diagonal of this operator is constant, so Jacobi would
+			// only rescale the system. It is built but not attached.
+			preconditioner = new DiagonalPreconditioner(n);
+			preconditioner.setMatrix(operator);
+		}
 		//solver.getIterationMonitor().setIterationReporter(new OutputIterationReporter());
 
 		Vector sol = new DenseVector(n);
@@ -95,20 +95,7 @@ public class MatrixSolver extends AbstractRDSolver {
 	
 	// Construct the matrix to be solved for enzyme concentration
 	private Matrix enzymeOperator(Parameters p) {
-		
-		CompDiagMatrix A = new CompDiagMatrix(p.N(), p.N());
-		A.add(new Decay(p.N(), p.getDecay()));
-		A.add(MatrixUtils.I(p.N()));
-		
-		Diffusion grad = new Diffusion(p);
-		grad.scale(-1D);
-		
-		A.add(grad);
-
-		//System.out.println(MatrixUtils.matrixForm(A));
-		//System.exit(-1);
-		
-		return A;
+		return new DiffusionDecayStencil(p);
 	}
 	@Override
 	public double getSourceConcentration() {
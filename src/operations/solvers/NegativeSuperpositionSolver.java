@@ -36,7 +36,7 @@ import java.util.*;
 public class NegativeSuperpositionSolver extends PositiveSuperpositionSolver {
 
 	// Highest possible concentration of catalyst, given that all cells are cooperators.
-	private Double ceiling;
+	private double ceiling;
 	
 	public NegativeSuperpositionSolver(Parameters p, AbstractPointDistribution dist) {
 		super(p, dist);		
@@ -78,25 +78,7 @@ public class NegativeSuperpositionSolver extends PositiveSuperpositionSolver {
 	 *
 	 */
 	public Vector solve(List<Integer> defectors) {
-		Vector result = new DenseVector(p.N());
-		
-		int m = defectors.size();
-		
-		// Consider each coordinate in the system (whether
-		// cooperator, cheater, dead or empty).
-		for (int i = 0; i < p.N(); i++) {
-			
-			Double c = ceiling;
-			
-			for (int j = 0; j < m; j++) {
-				
-				c -= getContribution(i, defectors.get(j));
-			}
-			
-			result.set(i, c);
-		}
-		
-		return result;
+		return superpose(defectors, ceiling, -1D);
 	}
 
 	/**
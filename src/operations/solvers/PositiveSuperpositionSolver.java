@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 import structures.distributions.AbstractPointDistribution;
 import control.parameters.Parameters;
@@ -57,13 +58,13 @@ public class PositiveSuperpositionSolver extends AbstractRDSolver {
 			BufferedWriter ub = new BufferedWriter(uw);
 			
 			for (int i = 0; i < p.N(); i++) {
-				Double a = getContribution(i, dist.origin());
-				Double b = getContribution(dist.origin(), i);
+				double a = getContribution(i, dist.origin());
+				double b = getContribution(dist.origin(), i);
 				
 				if (a != b)
 					throw new IllegalStateException();
 				
-				String toAppend = a.toString();
+				String toAppend = String.valueOf(a);
 				bw.append(toAppend);
 				bw.append('\t');
 				
@@ -105,31 +106,118 @@ public class PositiveSuperpositionSolver extends AbstractRDSolver {
 	}
 
 	public Vector solve(List<Integer> producers) {
-		Vector result = new DenseVector(p.N());
-
-		int m = producers.size();
+		return superpose(producers, 0D, 1D);
+	}
+	
+	/**
+	 * Starting from a baseline value at every site, add (sign = 1) or
+	 * subtract (sign = -1) the contribution of every listed source.
+	 * 
+	 * The sources are unpacked into primitive coordinate arrays once,
+	 * and contributions are looked up through the distribution's
+	 * offset tables, so the inner loop neither allocates nor divides.
+	 * 
+	 * If PARALLELISM > 1, rows of the output are split across the
+	 * shared worker pool. Every site is still summed by one thread in
+	 * source order, so the result does not depend on the thread count.
+	 */
+	protected Vector superpose(List<Integer> sources, double baseline, double sign) {
+		int w = p.W();
+		int m = sources.size();
+		
+		int[] sx = new int[m];
+		int[] sy = new int[m];
+		for (int j = 0; j < m; j++) {
+			int k = sources.get(j);
+			sx[j] = k % w;
+			sy[j] = k / w;
+		}
+		
+		double[] result = new double[p.N()];
+		
+		if (p.getParallelism() > 1) {
+			int grain = Math.max(1, w / (4 * p.getParallelism()));
+			p.getPool().invoke(new RowTask(sx, sy, baseline, sign, result, 0, w, grain));
+		} else {
+			superposeRows(sx, sy, baseline, sign, result, 0, w);
+		}
+		
+		return new DenseVector(result, false);
+	}
+	
+	/**
+	 * Fill in rows [y0, y1) of the superposition.
+	 */
+	private void superposeRows(int[] sx, int[] sy, double baseline, double sign,
+			double[] result, int y0, int y1) {
+		
+		int w = p.W();
+		int m = sx.length;
+		
+		double[] kernel = dist.getKernel();
+		int[] columns = dist.getColumnOffsets();
+		int[] rows = dist.getRowOffsets();
+		int shift = w - 1;
 		
 		// Consider each coordinate in the system (whether
 		// cooperator, cheater, dead or empty).
-		for (int i = 0; i < p.N(); i++) {
-
-			
-			Double c = 0.0;
-			// Consider each producer.
-			for (int j = 0; j < m; j++) {				
+		for (int y = y0; y < y1; y++) {
+			for (int x = 0; x < w; x++) {
+				double c = baseline;
 				
-				// Add contribution from that producer.
-				c += getContribution(i, producers.get(j));
+				// Consider each source.
+				for (int j = 0; j < m; j++) {
+					int index = columns[x - sx[j] + shift] + rows[y - sy[j] + shift];
+					c += sign * kernel[index];
+				}
+				
+				result[y * w + x] = c;
 			}
-			
-			result.set(i, c);
 		}
-		
-		return result;
 	}
 	
+	/**
+	 * Recursively splits a range of output rows until it is no larger
+	 * than the grain size, then computes it directly.
+	 */
+	private class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = -4712260317093186547L;
+		
+		private int[] sx;
+		private int[] sy;
+		private double baseline;
+		private double sign;
+		private double[] result;
+		private int y0;
+		private int y1;
+		private int grain;
+		
+		public RowTask(int[] sx, int[] sy, double baseline, double sign,
+				double[] result, int y0, int y1, int grain) {
+			this.sx = sx;
+			this.sy = sy;
+			this.baseline = baseline;
+			this.sign = sign;
+			this.result = result;
+			this.y0 = y0;
+			this.y1 = y1;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if (y1 - y0 <= grain) {
+				superposeRows(sx, sy, baseline, sign, result, y0, y1);
+				return;
+			}
+			
+			int mid = (y0 + y1) / 2;
+			invokeAll(new RowTask(sx, sy, baseline, sign, result, y0, mid, grain),
+					new RowTask(sx, sy, baseline, sign, result, mid, y1, grain));
+		}
+	}
 
-	protected Double getContribution(int i, int k) {
+	protected double getContribution(int i, int k) {
 		int dx = xOffset(i, k);
 		int dy = yOffset(i, k);
 		
@@ -28,7 +28,12 @@ import no.uib.cipr.matrix.sparse.SparseVector;
  * 
  * 
  * Uses either the positive or negative superposition solver depending
- * on whether there are more cooperators or more cheaters.
+ * on whether there are more cooperators or more cheaters. If even the
+ * smaller of the two populations is large enough that superposition
+ * would cost more than an FFT convolution (O(N * m) vs. O(N log N)),
+ * the convolution solver is used instead. Its result is equal to the
+ * superposition only up to rounding, so seeded output differs from
+ * that of builds that always used superposition.
  * 
  * @author dbborens@princeton.edu
  *
@@ -37,13 +42,19 @@ public class SmartSuperpositionSolver extends AbstractRDSolver {
 
 	protected PositiveSuperpositionSolver pos;
 	protected NegativeSuperpositionSolver neg;
+	protected ConvolutionSolver conv;
+	
+	// Above this many sources, convolution beats superposition
+	private int convolutionThreshold;
 	
 	public SmartSuperpositionSolver(Parameters p, AbstractPointDistribution dist) {
 		super(p, dist);
 		
 		pos = new PositiveSuperpositionSolver(p, dist);		
 		neg = new NegativeSuperpositionSolver(p, dist);
+		conv = new ConvolutionSolver(p, dist);
 		
+		convolutionThreshold = (int) Math.ceil(Math.log(p.N()) / Math.log(2D));
 	}
 
 	@Override
@@ -61,7 +72,9 @@ public class SmartSuperpositionSolver extends AbstractRDSolver {
 				producers.add(i);
 		}
 		
-		if (defectors.size() > producers.size())
+		if (Math.min(defectors.size(), producers.size()) > convolutionThreshold)
+			return conv.solve(source);
+		else if (defectors.size() > producers.size())
 			return pos.solve(producers);
 		else
 			return neg.solve(defectors);
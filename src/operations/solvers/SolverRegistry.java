@@ -0,0 +1,313 @@
+package operations.solvers;
+
+import java.util.Arrays;
+
+import structures.distributions.AbstractPointDistribution;
+import no.uib.cipr.matrix.Vector;
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * The solvers that SOLVER can name, and the benchmark behind
+ * SOLVER=AUTO. A solver's name is its class name without "Solver".
+ * 
+ * Which solver is fastest depends on the lattice size, the decay length
+ * (through the support radius of the distribution) and how many cells
+ * produce, so SOLVER=AUTO times every candidate on the production the
+ * first replicate starts from (see select). The choice depends on
+ * timings, and the solvers agree only up to rounding, so runs with
+ * SOLVER=AUTO are not bit-reproducible. MatrixSolver can be named,
+ * but is not a candidate: it solves the finite difference system itself
+ * rather than superposing the distribution, and prints every system it
+ * solves.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class SolverRegistry {
+
+	public static final String AUTO = "AUTO";
+
+	// Every solver, in the order they are benchmarked
+	private static final String[] NAMES = {"IterativeSmart", "Convolution", "SmartSuperposition",
+		"NegativeSuperposition", "PositiveSuperposition", "Matrix"};
+
+	// The solver that the others are checked against. Convolution uses
+	// the whole distribution, without truncation.
+	private static final String REFERENCE = "Convolution";
+
+	// Number of single-site changes timed after the first solve
+	private static final int STEPS = 8;
+
+	// Rounds of every candidate's steps before any is timed, so that the
+	// JIT compiler has warmed up
+	private static final int WARMUP = 10;
+
+	// Timed rounds of every candidate's steps
+	private static final int ROUNDS = 10;
+
+	// A candidate this many times slower than the best while warming up
+	// is not timed
+	private static final int PRUNE = 10;
+
+	public static boolean contains(String name) {
+		return find(name) != null;
+	}
+
+	/**
+	 * Returns the names of every solver, separated by commas.
+	 */
+	public static String names() {
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < NAMES.length; k++) {
+			if (k > 0)
+				sb.append(", ");
+
+			sb.append(NAMES[k]);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Constructs the named solver. Names are not case sensitive.
+	 */
+	public static AbstractRDSolver make(String name, Parameters p, AbstractPointDistribution dist) {
+		String found = find(name);
+
+		if ("IterativeSmart".equals(found))
+			return new IterativeSmartSolver(p, dist);
+		else if ("Convolution".equals(found))
+			return new ConvolutionSolver(p, dist);
+		else if ("SmartSuperposition".equals(found))
+			return new SmartSuperpositionSolver(p, dist);
+		else if ("NegativeSuperposition".equals(found))
+			return new NegativeSuperpositionSolver(p, dist);
+		else if ("PositiveSuperposition".equals(found))
+			return new PositiveSuperpositionSolver(p, dist);
+		else if ("Matrix".equals(found))
+			return new MatrixSolver(p, dist);
+		else
+			throw new IllegalArgumentException("Unrecognized solver " + name);
+	}
+
+	/**
+	 * Times every candidate on the given production and returns the name
+	 * of the fastest, logging the times and the choice.
+	 * 
+	 * Each candidate solves the production, then a series of productions
+	 * that differ from the previous one at a single site, as they do from
+	 * one time step to the next. It is ranked by the median time of these
+	 * steps, which is what a run spends nearly all of its time on; the
+	 * first solve is done once per replicate. A candidate whose first and
+	 * last solutions differ from the reference solver's by more than
+	 * SOLVER_TOLERANCE (relative to the largest value, on top of the mass
+	 * the distribution truncates) is passed over.
+	 * 
+	 * The JVM is cold when this runs, so the first candidate would
+	 * otherwise pay for compiling the code they share. Every candidate
+	 * first runs the series WARMUP times before it is timed. A candidate
+	 * whose fastest step in the second of those rounds is PRUNE times
+	 * slower than the best candidate's is dropped after it, since it
+	 * would not win. The rest are then timed over ROUNDS rounds. Each round runs every candidate in
+	 * turn, starting from a different one each time, so that drift in the
+	 * machine's speed is spread over all of them. The medians are taken
+	 * over every timed step.
+	 * 
+	 * The choice still depends on timings, so it can differ from one run
+	 * or machine to the next. The solvers agree only up to rounding, so
+	 * the seeded output of a SOLVER=AUTO run is not bit-reproducible.
+	 * Name the solver that was chosen (it is logged) to reproduce a run.
+	 */
+	public static String select(Parameters p, AbstractPointDistribution dist, Vector production) {
+		Vector[] sources = sources(p, production);
+
+		AbstractRDSolver reference = make(REFERENCE, p, dist);
+		Vector first = reference.solve(sources[0].copy());
+		Vector last = reference.solve(sources[STEPS].copy());
+
+		double scale = 0D;
+		for (int i = 0; i < p.N(); i++)
+			scale = Math.max(scale, Math.abs(first.get(i)));
+
+		double bound = p.getSolverTolerance() * scale + dist.getTruncationError();
+
+		// What to log for each candidate, in the order of NAMES
+		String[] results = new String[NAMES.length];
+
+		// Candidates that agree with the reference, by index in NAMES
+		AbstractRDSolver[] solvers = new AbstractRDSolver[NAMES.length];
+		long[] steps = new long[STEPS];
+
+		// The first warm-up round also checks each candidate's solutions
+		for (int k = 0; k < NAMES.length; k++) {
+			if (NAMES[k].equals("Matrix"))
+				continue;
+
+			AbstractRDSolver solver = make(NAMES[k], p, dist);
+			Vector[] ends = run(solver, sources, steps);
+
+			if (difference(ends[0], first) > bound || difference(ends[1], last) > bound)
+				results[k] = "disagrees with " + REFERENCE;
+			else
+				solvers[k] = solver;
+		}
+
+		// The second, once every candidate has run, decides which are worth
+		// timing
+		long[] fastest = new long[NAMES.length];
+		long best = Long.MAX_VALUE;
+
+		for (int k = 0; k < NAMES.length; k++) {
+			if (solvers[k] == null)
+				continue;
+
+			run(solvers[k], sources, steps);
+			Arrays.sort(steps);
+			fastest[k] = steps[0];
+			best = Math.min(best, fastest[k]);
+		}
+
+		int count = 0;
+		int[] candidates = new int[NAMES.length];
+
+		for (int k = 0; k < NAMES.length; k++) {
+			if (solvers[k] == null)
+				continue;
+
+			if (fastest[k] > PRUNE * best) {
+				results[k] = "slower (fastest warm-up step took " + millis(fastest[k]) + " ms)";
+				solvers[k] = null;
+				continue;
+			}
+
+			candidates[count] = k;
+			count++;
+		}
+
+		for (int round = 2; round < WARMUP; round++) {
+			for (int j = 0; j < count; j++)
+				run(solvers[candidates[j]], sources, steps);
+		}
+
+		long[][] times = new long[NAMES.length][ROUNDS * STEPS];
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int j = 0; j < count; j++) {
+				int k = candidates[(round + j) % count];
+
+				run(solvers[k], sources, steps);
+				System.arraycopy(steps, 0, times[k], round * STEPS, STEPS);
+			}
+		}
+
+		String chosen = null;
+		long bestMedian = Long.MAX_VALUE;
+
+		for (int j = 0; j < count; j++) {
+			int k = candidates[j];
+
+			Arrays.sort(times[k]);
+			long median = times[k][times[k].length / 2];
+			results[k] = millis(median) + " ms";
+
+			if (median < bestMedian) {
+				chosen = NAMES[k];
+				bestMedian = median;
+			}
+		}
+
+		StringBuilder log = new StringBuilder("Solver benchmark (median time per step):");
+		for (int k = 0; k < NAMES.length; k++) {
+			if (results[k] == null)
+				continue;
+
+			log.append("\n  ");
+			log.append(NAMES[k]);
+			log.append(": ");
+			log.append(results[k]);
+		}
+
+		System.out.println(log);
+		System.out.println("Using the " + chosen + " solver (SOLVER=AUTO).");
+
+		return chosen;
+	}
+
+	/**
+	 * Solves the production from scratch, then each of the productions
+	 * after it, recording the time of each of those steps. Returns copies
+	 * of the first and last solutions.
+	 */
+	private static Vector[] run(AbstractRDSolver solver, Vector[] sources, long[] steps) {
+		solver.reset();
+		Vector first = solver.solve(sources[0].copy()).copy();
+
+		Vector solution = first;
+		for (int k = 1; k <= STEPS; k++) {
+			long start = System.nanoTime();
+			solution = solver.solve(sources[k].copy());
+			steps[k - 1] = System.nanoTime() - start;
+		}
+
+		return new Vector[] {first, solution.copy()};
+	}
+
+	/**
+	 * The production, followed by STEPS productions that each differ from
+	 * the one before at one site, spread over the lattice.
+	 */
+	private static Vector[] sources(Parameters p, Vector production) {
+		Vector[] sources = new Vector[STEPS + 1];
+		sources[0] = production.copy();
+
+		for (int k = 1; k <= STEPS; k++) {
+			Vector source = sources[k - 1].copy();
+			int i = (int) ((long) k * p.N() / (STEPS + 1));
+
+			source.set(i, source.get(i) > 0D ? 0D : p.getProduction());
+			sources[k] = source;
+		}
+
+		return sources;
+	}
+
+	private static double difference(Vector a, Vector b) {
+		double max = 0D;
+		for (int i = 0; i < a.size(); i++)
+			max = Math.max(max, Math.abs(a.get(i) - b.get(i)));
+
+		return max;
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / 1E6);
+	}
+
+	private static String find(String name) {
+		for (String candidate : NAMES) {
+			if (candidate.equalsIgnoreCase(name))
+				return candidate;
+		}
+
+		return null;
+	}
+}
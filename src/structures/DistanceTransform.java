@@ -0,0 +1,261 @@
+package structures;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * The Manhattan distance from every site of a periodic W x W lattice
+ * to the nearest marked site, kept up to date as sites are marked and
+ * unmarked. Sites are indexed as i = y * W + x.
+ *
+ * Marking a site relaxes distances outward from it. Unmarking a site
+ * resets every site whose shortest path may have run through it (the
+ * sites reachable from it by steps that each add one to the distance),
+ * and recomputes them from the sites around that region. Either way,
+ * the work is proportional to the number of sites whose distance could
+ * change, not to the size of the lattice.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class DistanceTransform {
+
+	// Distance of every site when no site is marked
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private int w;
+
+	private int[] distance;
+	private boolean[] marked;
+	private int count;
+
+	// Work space for updates. Within one update, a site enters the queue
+	// at most once.
+	private int[] queue;
+	private int[] sorted;
+	private int[] bucket;
+	private SiteChangeList region;
+
+	public DistanceTransform(int w, boolean[] marked) {
+		this.w = w;
+		int n = w * w;
+
+		this.marked = new boolean[n];
+		distance = new int[n];
+		queue = new int[n];
+		sorted = new int[n];
+
+		// No distance exceeds W, and a bound from a neighbor exceeds it by
+		// at most one
+		bucket = new int[w + 2];
+		region = new SiteChangeList(n);
+
+		// Breadth-first search from every marked site at once
+		int tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (marked[i]) {
+				this.marked[i] = true;
+				count++;
+				distance[i] = 0;
+				queue[tail] = i;
+				tail++;
+			} else {
+				distance[i] = UNREACHABLE;
+			}
+		}
+
+		relax(0, tail);
+	}
+
+	/**
+	 * Returns the distance from site i to the nearest marked site, or
+	 * UNREACHABLE if no site is marked.
+	 */
+	public int distance(int i) {
+		return distance[i];
+	}
+
+	public boolean isMarked(int i) {
+		return marked[i];
+	}
+
+	/**
+	 * Returns the number of marked sites.
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Marks or unmarks site i. Has no effect if it is already in that
+	 * state.
+	 */
+	public void set(int i, boolean value) {
+		if (value)
+			mark(i);
+		else
+			unmark(i);
+	}
+
+	public void mark(int i) {
+		if (marked[i])
+			return;
+
+		marked[i] = true;
+		count++;
+		distance[i] = 0;
+		queue[0] = i;
+
+		relax(0, 1);
+	}
+
+	public void unmark(int i) {
+		if (!marked[i])
+			return;
+
+		marked[i] = false;
+		count--;
+
+		// Collect the sites whose distance may depend on site i
+		region.add(i);
+		for (int k = 0; k < region.size(); k++) {
+			int u = region.get(k);
+
+			for (int j = 0; j < 4; j++) {
+				int v = neighbor(u, j);
+				if (distance[v] == distance[u] + 1)
+					region.add(v);
+			}
+		}
+
+		for (int k = 0; k < region.size(); k++)
+			distance[region.get(k)] = UNREACHABLE;
+
+		// Bound each site in the region by its neighbors outside it, whose
+		// distances are unaffected, and count the sites with each bound
+		for (int b = 0; b < bucket.length; b++)
+			bucket[b] = 0;
+
+		for (int k = 0; k < region.size(); k++) {
+			int u = region.get(k);
+			int best = UNREACHABLE;
+
+			for (int j = 0; j < 4; j++) {
+				int v = neighbor(u, j);
+				if (!region.contains(v) && distance[v] != UNREACHABLE && distance[v] + 1 < best)
+					best = distance[v] + 1;
+			}
+
+			distance[u] = best;
+			if (best != UNREACHABLE)
+				bucket[best]++;
+		}
+
+		// Sort the bounded sites by their bounds (a counting sort). After
+		// this, bucket[b] is the position in "sorted" of the first site
+		// with bound b.
+		int start = 0;
+		for (int b = 0; b < bucket.length; b++) {
+			int size = bucket[b];
+			bucket[b] = start;
+			start += size;
+		}
+
+		for (int k = 0; k < region.size(); k++) {
+			int u = region.get(k);
+			if (distance[u] != UNREACHABLE) {
+				sorted[bucket[distance[u]]] = u;
+				bucket[distance[u]]++;
+			}
+		}
+
+		// bucket[b] now points one past the last site with bound b. Visit
+		// the bounded sites in order of distance, interleaved with the
+		// sites whose distances they improve (Dijkstra's algorithm, with
+		// unit weights).
+		int head = 0;
+		int tail = 0;
+		int next = 0;
+		for (int b = 0; b < bucket.length; b++) {
+			while (head < tail && distance[queue[head]] < b) {
+				tail = visit(queue[head], tail);
+				head++;
+			}
+
+			for (; next < bucket[b]; next++) {
+				int u = sorted[next];
+
+				// Skip sites that have since been given a shorter distance
+				if (distance[u] == b)
+					tail = visit(u, tail);
+			}
+		}
+
+		relax(head, tail);
+		region.clear();
+	}
+
+	/**
+	 * Breadth-first relaxation of the sites in queue[head..tail), whose
+	 * distances are final.
+	 */
+	private void relax(int head, int tail) {
+		while (head < tail) {
+			tail = visit(queue[head], tail);
+			head++;
+		}
+	}
+
+	/**
+	 * Offers each neighbor of site u a path through u, queueing the ones
+	 * that it shortens. Returns the new end of the queue.
+	 */
+	private int visit(int u, int tail) {
+		int d = distance[u] + 1;
+
+		for (int j = 0; j < 4; j++) {
+			int v = neighbor(u, j);
+			if (distance[v] > d) {
+				distance[v] = d;
+				queue[tail] = v;
+				tail++;
+			}
+		}
+
+		return tail;
+	}
+
+	/**
+	 * Returns the j-th of the four neighbors of site i (right, left,
+	 * down, up), honoring periodic boundary conditions.
+	 */
+	private int neighbor(int i, int j) {
+		int x = i % w;
+		int y = i / w;
+
+		if (j == 0)
+			return y * w + (x == w - 1 ? 0 : x + 1);
+		else if (j == 1)
+			return y * w + (x == 0 ? w - 1 : x - 1);
+		else if (j == 2)
+			return (y == w - 1 ? 0 : y + 1) * w + x;
+		else
+			return (y == 0 ? w - 1 : y - 1) * w + x;
+	}
+}
@@ -0,0 +1,227 @@
+package structures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * An indexed binary min-heap holding at most one scheduled time for
+ * each of the slots 0..n-1 (the "indexed priority queue" of Gibson and
+ * Bruck's next reaction method). The slot with the earliest time can be
+ * read in O(1), and a slot's time can be set, changed or removed in
+ * O(log n), wherever it is in the heap.
+ *
+ * Slots with an infinite time are never going to happen, so they are
+ * not kept in the heap. Ties are broken by slot index, so the order in
+ * which simultaneous events come out does not depend on the order in
+ * which they were scheduled.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class EventQueue {
+
+	// Slot stored at each heap position; heap[0] is the earliest
+	private int[] heap;
+	private int size;
+
+	// Heap position of every slot, or -1 if it is not scheduled
+	private int[] position;
+
+	private double[] time;
+
+	public EventQueue(int n) {
+		heap = new int[n];
+		position = new int[n];
+		time = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			position[i] = -1;
+			time[i] = Double.POSITIVE_INFINITY;
+		}
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot with the earliest time. The queue must not be empty.
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Returns the earliest scheduled time, or infinity if nothing is
+	 * scheduled.
+	 */
+	public double peekTime() {
+		if (size == 0)
+			return Double.POSITIVE_INFINITY;
+
+		return time[heap[0]];
+	}
+
+	/**
+	 * Returns the time at which slot i is scheduled, or infinity.
+	 */
+	public double getTime(int i) {
+		return time[i];
+	}
+
+	/**
+	 * Removes and returns the slot with the earliest time. The queue must
+	 * not be empty.
+	 */
+	public int poll() {
+		int i = heap[0];
+		remove(i);
+		return i;
+	}
+
+	/**
+	 * Schedules slot i at time t, replacing any time it already had.
+	 */
+	public void set(int i, double t) {
+		if (t == Double.POSITIVE_INFINITY) {
+			remove(i);
+			return;
+		}
+
+		if (Double.isNaN(t))
+			throw new IllegalArgumentException("Attempted to schedule slot " + i + " at an undefined time.");
+
+		if (position[i] == -1) {
+			heap[size] = i;
+			position[i] = size;
+			size++;
+		}
+
+		time[i] = t;
+		siftUp(position[i]);
+		siftDown(position[i]);
+	}
+
+	/**
+	 * Unschedules slot i, if it is scheduled.
+	 */
+	public void remove(int i) {
+		int k = position[i];
+		time[i] = Double.POSITIVE_INFINITY;
+
+		if (k == -1)
+			return;
+
+		size--;
+		position[i] = -1;
+
+		if (k == size)
+			return;
+
+		// Fill the hole with the last element and restore the heap order
+		int last = heap[size];
+		place(last, k);
+		siftUp(k);
+		siftDown(position[last]);
+	}
+
+	/**
+	 * Writes every scheduled slot and its time, for a checkpoint (see
+	 * io.Checkpoint). Since ties are broken by slot index, the order of
+	 * the heap need not be kept.
+	 */
+	public void save(DataOutput out) throws IOException {
+		out.writeInt(size);
+
+		for (int k = 0; k < size; k++) {
+			out.writeInt(heap[k]);
+			out.writeDouble(time[heap[k]]);
+		}
+	}
+
+	/**
+	 * Replaces the schedule with the one written by save.
+	 */
+	public void restore(DataInput in) throws IOException {
+		while (size > 0)
+			remove(heap[size - 1]);
+
+		int n = in.readInt();
+		for (int k = 0; k < n; k++) {
+			int i = in.readInt();
+			set(i, in.readDouble());
+		}
+	}
+
+	private void siftUp(int k) {
+		int i = heap[k];
+
+		while (k > 0) {
+			int parent = (k - 1) / 2;
+			if (!before(i, heap[parent]))
+				break;
+
+			place(heap[parent], k);
+			k = parent;
+		}
+
+		place(i, k);
+	}
+
+	private void siftDown(int k) {
+		int i = heap[k];
+
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= size)
+				break;
+
+			if (child + 1 < size && before(heap[child + 1], heap[child]))
+				child++;
+
+			if (!before(heap[child], i))
+				break;
+
+			place(heap[child], k);
+			k = child;
+		}
+
+		place(i, k);
+	}
+
+	private void place(int i, int k) {
+		heap[k] = i;
+		position[i] = k;
+	}
+
+	private boolean before(int i, int j) {
+		if (time[i] != time[j])
+			return time[i] < time[j];
+
+		return i < j;
+	}
+}
@@ -0,0 +1,300 @@
+package structures;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Discrete Fourier transform of a fixed length n, in one or two
+ * (square) dimensions. Powers of two use an iterative radix-2
+ * Cooley-Tukey transform. Any other length is handled with
+ * Bluestein's algorithm, which re-expresses the transform as a
+ * convolution of power-of-two length. Either way, the cost is
+ * O(n log n).
+ *
+ * Data are stored as separate real and imaginary arrays. Two
+ * dimensional data are row-major: i = y * n + x.
+ *
+ * Instances hold only the precomputed tables; scratch space is
+ * allocated per call, so one instance may be shared between threads.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class FourierTransform {
+
+	// Length of the transform
+	private int n;
+
+	// Length of the underlying radix-2 transform (n, or the Bluestein padding)
+	private int m;
+
+	// Twiddle factors exp(-2 pi i k / m), k < m / 2
+	private double[] cos;
+	private double[] sin;
+
+	// Bit-reversal permutation for length m
+	private int[] reversed;
+
+	// Bluestein chirp exp(-i pi k^2 / n), and the transformed chirp filter
+	private double[] chirpRe;
+	private double[] chirpIm;
+	private double[] filterRe;
+	private double[] filterIm;
+
+	public FourierTransform(int n) {
+		if (n < 1)
+			throw new IllegalArgumentException("Transform length must be positive.");
+
+		this.n = n;
+
+		if (isPowerOfTwo(n)) {
+			m = n;
+			initRadix2();
+		} else {
+			m = Integer.highestOneBit(2 * n - 1) << 1;
+			initRadix2();
+			initBluestein();
+		}
+	}
+
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Forward transform, in place.
+	 */
+	public void forward(double[] re, double[] im) {
+		forward(re, im, new Scratch());
+	}
+
+	/**
+	 * Inverse transform, in place, including the 1/n normalization.
+	 */
+	public void inverse(double[] re, double[] im) {
+		inverse(re, im, new Scratch());
+	}
+
+	private void forward(double[] re, double[] im, Scratch s) {
+		if (m == n)
+			radix2(re, im);
+		else
+			bluestein(re, im, s);
+	}
+
+	private void inverse(double[] re, double[] im, Scratch s) {
+		conjugate(im, n);
+		forward(re, im, s);
+		conjugate(im, n);
+
+		double scale = 1D / n;
+		for (int i = 0; i < n; i++) {
+			re[i] *= scale;
+			im[i] *= scale;
+		}
+	}
+
+	/**
+	 * Forward transform of an n x n array, in place.
+	 */
+	public void forward2D(double[] re, double[] im) {
+		transform2D(re, im, false);
+	}
+
+	/**
+	 * Inverse transform of an n x n array, in place, including
+	 * the 1/n^2 normalization.
+	 */
+	public void inverse2D(double[] re, double[] im) {
+		transform2D(re, im, true);
+	}
+
+	private void transform2D(double[] re, double[] im, boolean inverse) {
+		Scratch s = new Scratch();
+		double[] lineRe = s.lineRe;
+		double[] lineIm = s.lineIm;
+
+		// Rows are contiguous
+		for (int y = 0; y < n; y++) {
+			int offset = y * n;
+			System.arraycopy(re, offset, lineRe, 0, n);
+			System.arraycopy(im, offset, lineIm, 0, n);
+			transformLine(s, inverse);
+			System.arraycopy(lineRe, 0, re, offset, n);
+			System.arraycopy(lineIm, 0, im, offset, n);
+		}
+
+		// Columns are strided
+		for (int x = 0; x < n; x++) {
+			for (int y = 0; y < n; y++) {
+				lineRe[y] = re[y * n + x];
+				lineIm[y] = im[y * n + x];
+			}
+			transformLine(s, inverse);
+			for (int y = 0; y < n; y++) {
+				re[y * n + x] = lineRe[y];
+				im[y * n + x] = lineIm[y];
+			}
+		}
+	}
+
+	private void transformLine(Scratch s, boolean inverse) {
+		if (inverse)
+			inverse(s.lineRe, s.lineIm, s);
+		else
+			forward(s.lineRe, s.lineIm, s);
+	}
+
+	private void initRadix2() {
+		int half = m / 2;
+		cos = new double[Math.max(half, 1)];
+		sin = new double[Math.max(half, 1)];
+
+		for (int k = 0; k < half; k++) {
+			double theta = 2D * Math.PI * k / m;
+			cos[k] = Math.cos(theta);
+			sin[k] = Math.sin(theta);
+		}
+
+		int bits = Integer.numberOfTrailingZeros(m);
+		reversed = new int[m];
+		for (int i = 0; i < m; i++)
+			reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+	}
+
+	private void initBluestein() {
+		chirpRe = new double[n];
+		chirpIm = new double[n];
+
+		// k^2 is taken mod 2n so that the angle stays small and exact
+		long twoN = 2L * n;
+		for (int k = 0; k < n; k++) {
+			long kk = ((long) k * k) % twoN;
+			double theta = Math.PI * kk / n;
+			chirpRe[k] = Math.cos(theta);
+			chirpIm[k] = -Math.sin(theta);
+		}
+
+		// The filter is the conjugate chirp, wrapped to length m
+		filterRe = new double[m];
+		filterIm = new double[m];
+		filterRe[0] = chirpRe[0];
+		filterIm[0] = -chirpIm[0];
+		for (int k = 1; k < n; k++) {
+			filterRe[k] = chirpRe[k];
+			filterIm[k] = -chirpIm[k];
+			filterRe[m - k] = chirpRe[k];
+			filterIm[m - k] = -chirpIm[k];
+		}
+		radix2(filterRe, filterIm);
+	}
+
+	/**
+	 * Iterative in-place radix-2 transform of length m.
+	 */
+	private void radix2(double[] re, double[] im) {
+		for (int i = 0; i < m; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+
+		for (int size = 2; size <= m; size *= 2) {
+			int half = size / 2;
+			int step = m / size;
+			for (int i = 0; i < m; i += size) {
+				for (int j = i, k = 0; j < i + half; j++, k += step) {
+					int l = j + half;
+					double tRe = re[l] * cos[k] + im[l] * sin[k];
+					double tIm = im[l] * cos[k] - re[l] * sin[k];
+					re[l] = re[j] - tRe;
+					im[l] = im[j] - tIm;
+					re[j] += tRe;
+					im[j] += tIm;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Arbitrary-length transform as a chirp convolution of length m.
+	 */
+	private void bluestein(double[] re, double[] im, Scratch s) {
+		double[] bufRe = s.bufRe;
+		double[] bufIm = s.bufIm;
+
+		for (int k = 0; k < n; k++) {
+			bufRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+			bufIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+		}
+		for (int k = n; k < m; k++) {
+			bufRe[k] = 0D;
+			bufIm[k] = 0D;
+		}
+
+		radix2(bufRe, bufIm);
+
+		for (int k = 0; k < m; k++) {
+			double a = bufRe[k];
+			double b = bufIm[k];
+			bufRe[k] = a * filterRe[k] - b * filterIm[k];
+			bufIm[k] = a * filterIm[k] + b * filterRe[k];
+		}
+
+		// Inverse radix-2 by conjugation
+		conjugate(bufIm, m);
+		radix2(bufRe, bufIm);
+		conjugate(bufIm, m);
+
+		double scale = 1D / m;
+		for (int k = 0; k < n; k++) {
+			double a = bufRe[k] * scale;
+			double b = bufIm[k] * scale;
+			re[k] = a * chirpRe[k] - b * chirpIm[k];
+			im[k] = a * chirpIm[k] + b * chirpRe[k];
+		}
+	}
+
+	/**
+	 * Working space for one call. The line buffers hold a row or
+	 * column of a 2D transform; the Bluestein buffers are only
+	 * allocated when the length is not a power of two.
+	 */
+	private class Scratch {
+		private double[] lineRe = new double[n];
+		private double[] lineIm = new double[n];
+		private double[] bufRe = (m == n) ? null : new double[m];
+		private double[] bufIm = (m == n) ? null : new double[m];
+	}
+
+	private static void conjugate(double[] im, int length) {
+		for (int i = 0; i < length; i++)
+			im[i] = -im[i];
+	}
+
+	private static boolean isPowerOfTwo(int k) {
+		return (k & (k - 1)) == 0;
+	}
+}
@@ -0,0 +1,185 @@
+package structures;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * A histogram of durations in nanoseconds, in the manner of
+ * HdrHistogram: the buckets are a fixed number of linear sub-buckets
+ * per power of two, so every value is kept to within 1 part in
+ * SUB_BUCKETS (about 3%) from a nanosecond up to the range of a long,
+ * in a fixed amount of memory. Recording a value is a few shifts and
+ * an increment.
+ * 
+ * A disabled histogram ignores what it is given, and start() does not
+ * read the clock, so instrumented code costs next to nothing unless
+ * METRICS is set (see control.Metrics).
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class LatencyHistogram {
+
+	// Linear sub-buckets per power of two
+	private static final int BITS = 5;
+	private static final int SUB_BUCKETS = 1 << BITS;
+
+	// Values below SUB_BUCKETS have a bucket each; above that, each of
+	// the remaining powers of two has SUB_BUCKETS
+	private static final int BUCKETS = SUB_BUCKETS + (63 - BITS) * SUB_BUCKETS;
+
+	private boolean enabled;
+
+	private long[] counts;
+	private long count = 0L;
+	private long total = 0L;
+	private long min = Long.MAX_VALUE;
+	private long max = 0L;
+
+	public LatencyHistogram(boolean enabled) {
+		this.enabled = enabled;
+		counts = new long[BUCKETS];
+	}
+
+	/**
+	 * Returns the time, to be passed to stop() once the timed work is
+	 * done.
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Records the time since start.
+	 */
+	public void stop(long start) {
+		if (enabled)
+			record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns the time since start without recording it, for work that
+	 * is timed in several pieces.
+	 */
+	public long elapsed(long start) {
+		return enabled ? System.nanoTime() - start : 0L;
+	}
+
+	public void record(long nanos) {
+		if (!enabled)
+			return;
+
+		if (nanos < 0L)
+			nanos = 0L;
+
+		counts[bucket(nanos)]++;
+		count++;
+		total += nanos;
+
+		if (nanos < min)
+			min = nanos;
+
+		if (nanos > max)
+			max = nanos;
+	}
+
+	/**
+	 * Adds the values recorded by another histogram.
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int k = 0; k < BUCKETS; k++)
+			counts[k] += other.counts[k];
+
+		count += other.count;
+		total += other.total;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public long getMin() {
+		return count == 0L ? 0L : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0L ? 0D : (double) total / count;
+	}
+
+	/**
+	 * Returns the value below which the given fraction of the recorded
+	 * values lie, as the middle of the bucket it falls in.
+	 */
+	public long getPercentile(double fraction) {
+		if (count == 0L)
+			return 0L;
+
+		long rank = (long) Math.ceil(fraction * count);
+		if (rank < 1L)
+			rank = 1L;
+
+		long seen = 0L;
+		for (int k = 0; k < BUCKETS; k++) {
+			seen += counts[k];
+
+			if (seen >= rank)
+				return Math.max(min, Math.min(max, lowest(k) + width(k) / 2L));
+		}
+
+		return max;
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (magnitude - BITS)) & (SUB_BUCKETS - 1);
+
+		return SUB_BUCKETS + (magnitude - BITS) * SUB_BUCKETS + sub;
+	}
+
+	private static long lowest(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+
+		int magnitude = (bucket - SUB_BUCKETS) / SUB_BUCKETS + BITS;
+		long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+		return (1L << magnitude) | (sub << (magnitude - BITS));
+	}
+
+	private static long width(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return 1L;
+
+		int magnitude = (bucket - SUB_BUCKETS) / SUB_BUCKETS + BITS;
+		return 1L << (magnitude - BITS);
+	}
+}
@@ -0,0 +1,198 @@
+package structures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * A persistent set of weighted slots 0..n-1, stored as a binary sum
+ * tree over primitive arrays. Changing one weight and drawing a slot
+ * with probability weight / total both take O(log n) time, so a
+ * distribution that changes in only a few places between samples
+ * doesn't have to be rebuilt (compare WeightedUniformPDF).
+ *
+ * Each slot also belongs to one of a fixed number of categories, and
+ * the total weight of each category is kept as well.
+ *
+ * Every internal node is recomputed from its children whenever a
+ * weight below it changes, rather than adjusted by the difference, so
+ * the sums depend only on the current weights and do not drift. When
+ * most of the weights change at once, they can instead be put() and
+ * the sums rebuilt in a single O(n) pass.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class PropensityTree {
+
+	private int n;
+
+	// Number of leaves (a power of two >= n). Node k has children 2k and
+	// 2k + 1; slot i is leaf m + i.
+	private int m;
+
+	private double[] sum;
+	private double[][] categorySum;
+	private int[] category;
+
+	// Number of slots with positive weight
+	private int occupied;
+
+	public PropensityTree(int n, int categories) {
+		this.n = n;
+
+		m = 1;
+		while (m < n)
+			m *= 2;
+
+		sum = new double[2 * m];
+		categorySum = new double[categories][2 * m];
+		category = new int[n];
+	}
+
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Returns true if no slot has positive weight.
+	 */
+	public boolean isEmpty() {
+		return occupied == 0;
+	}
+
+	public double get(int i) {
+		return sum[m + i];
+	}
+
+	public double total() {
+		return sum[1];
+	}
+
+	public double total(int c) {
+		return categorySum[c][1];
+	}
+
+	/**
+	 * Sets the weight and category of slot i. Weights must not be
+	 * negative; a weight of zero means the slot is never sampled.
+	 */
+	public void set(int i, double weight, int c) {
+		put(i, weight, c);
+
+		for (int k = (m + i) / 2; k > 0; k /= 2) {
+			sum[k] = sum[2 * k] + sum[2 * k + 1];
+
+			for (double[] cs : categorySum)
+				cs[k] = cs[2 * k] + cs[2 * k + 1];
+		}
+	}
+
+	/**
+	 * Writes the weight and category of every slot, for a checkpoint (see
+	 * io.Checkpoint). The sums are not written: they depend only on the
+	 * weights.
+	 */
+	public void save(DataOutput out) throws IOException {
+		for (int i = 0; i < n; i++) {
+			out.writeDouble(sum[m + i]);
+			out.writeByte(category[i]);
+		}
+	}
+
+	/**
+	 * Sets the weight and category of slot i without updating the sums,
+	 * for when most slots are about to change. rebuild() must be called
+	 * once they have all been set, before the tree is read or sampled.
+	 */
+	public void put(int i, double weight, int c) {
+		if (weight < 0D)
+			throw new IllegalArgumentException("Negative weight " + weight + " for slot " + i);
+
+		int leaf = m + i;
+
+		if (sum[leaf] > 0D)
+			occupied--;
+		if (weight > 0D)
+			occupied++;
+
+		categorySum[category[i]][leaf] = 0D;
+		category[i] = c;
+		categorySum[c][leaf] = weight;
+		sum[leaf] = weight;
+	}
+
+	/**
+	 * Recomputes every sum from the weights, in O(n) time.
+	 */
+	public void rebuild() {
+		for (int k = m - 1; k > 0; k--) {
+			sum[k] = sum[2 * k] + sum[2 * k + 1];
+
+			for (double[] cs : categorySum)
+				cs[k] = cs[2 * k] + cs[2 * k + 1];
+		}
+	}
+
+	/**
+	 * Replaces every slot with the weights and categories written by
+	 * save, and recomputes the sums from them.
+	 */
+	public void restore(DataInput in) throws IOException {
+		for (int i = 0; i < n; i++) {
+			double weight = in.readDouble();
+			int c = in.readByte();
+
+			put(i, weight, c);
+		}
+
+		rebuild();
+	}
+
+	/**
+	 * Returns the slot in which u * total() falls, where slots are laid
+	 * end to end in index order. u should be in [0, 1).
+	 */
+	public int sample(double u) {
+		if (occupied == 0)
+			throw new IllegalStateException("Attempted to sample an empty distribution.");
+
+		double target = u * sum[1];
+		int k = 1;
+
+		while (k < m) {
+			int left = 2 * k;
+
+			// Rounding can leave the target at or just past the end of
+			// the last occupied slot; never descend into an empty subtree.
+			if (sum[left + 1] <= 0D || (target < sum[left] && sum[left] > 0D)) {
+				k = left;
+			} else {
+				target -= sum[left];
+				k = left + 1;
+			}
+		}
+
+		return k - m;
+	}
+}
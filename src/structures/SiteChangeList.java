@@ -0,0 +1,121 @@
+package structures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * A set of lattice indices, stored compactly so that it can be
+ * filled, read and cleared in time proportional to the number of
+ * entries rather than the size of the lattice. Adding an index that
+ * is already present has no effect.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class SiteChangeList {
+
+	// Indices, in the order they were added (until sorted)
+	private int[] sites;
+	private int size;
+
+	// Membership flag for every lattice index
+	private boolean[] member;
+
+	public SiteChangeList(int n) {
+		sites = new int[8];
+		member = new boolean[n];
+		size = 0;
+	}
+
+	public void add(int i) {
+		if (member[i])
+			return;
+
+		if (size == sites.length)
+			sites = Arrays.copyOf(sites, size * 2);
+
+		member[i] = true;
+		sites[size] = i;
+		size++;
+	}
+
+	/**
+	 * Adds every index from 0 to n - 1.
+	 */
+	public void addAll() {
+		for (int i = 0; i < member.length; i++)
+			add(i);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the k-th index in the list (not the k-th lattice site).
+	 */
+	public int get(int k) {
+		return sites[k];
+	}
+
+	public boolean contains(int i) {
+		return member[i];
+	}
+
+	/**
+	 * Puts the indices in ascending order, so that consumers visit
+	 * them in the same order as a scan of the whole lattice would.
+	 */
+	public void sort() {
+		Arrays.sort(sites, 0, size);
+	}
+
+	public void clear() {
+		for (int k = 0; k < size; k++)
+			member[sites[k]] = false;
+
+		size = 0;
+	}
+
+	/**
+	 * Writes the indices, in order, for a checkpoint (see io.Checkpoint).
+	 */
+	public void save(DataOutput out) throws IOException {
+		out.writeInt(size);
+
+		for (int k = 0; k < size; k++)
+			out.writeInt(sites[k]);
+	}
+
+	/**
+	 * Replaces the contents with indices written by save.
+	 */
+	public void restore(DataInput in) throws IOException {
+		clear();
+
+		int n = in.readInt();
+		for (int k = 0; k < n; k++)
+			add(in.readInt());
+	}
+}
@@ -0,0 +1,98 @@
+package structures;
+
+import java.util.Random;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * A fast generator (SplitMix64) that can be used wherever a Random is
+ * expected. The state is a single long that advances by a fixed odd
+ * constant, and each output is a strong mix of it. Unlike Random, it
+ * does not update an atomic on every draw, so it is not thread-safe:
+ * each replicate and subsystem has its own (see Parameters.getRandom).
+ *
+ * Independent streams are derived with child(seed, key), which depends
+ * only on its arguments. The stream of a subsystem of a replicate can
+ * therefore be recreated from the master seed without running anything
+ * else first.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class SplitRandom extends Random {
+
+	private static final long serialVersionUID = 3071592604683195527L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	// Serialized with the object (Random's own seed is not used). A
+	// deserialized generator carries on where the original left off.
+	private long state;
+
+	public SplitRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Returns the seed of the stream with the given key, derived from
+	 * the given seed. Different keys give unrelated streams.
+	 */
+	public static long child(long seed, long key) {
+		return mix64(mix64(seed) + GOLDEN_GAMMA * key);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		state = seed;
+	}
+
+	/**
+	 * The whole state of the generator. Passing it to setSeed resumes the
+	 * sequence where it was read.
+	 */
+	public long getState() {
+		return state;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix64(state);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Stafford's "Mix13" variant of the MurmurHash3 finalizer.
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
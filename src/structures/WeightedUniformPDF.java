@@ -99,7 +99,7 @@ public class WeightedUniformPDF {
 			throw new IllegalStateException("Attempted to sample the PDF before it was finalized.");
 		
 		// Scale a random number between 0 and 1 to the size of the unscaled PDF
-		Double rand = p.getRandom().nextDouble() * top;
+		Double rand = p.getRandom(Parameters.SAMPLING).nextDouble() * top;
 		
 		return pdf.floorEntry(rand).getValue();
 	}
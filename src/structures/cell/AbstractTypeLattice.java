@@ -0,0 +1,85 @@
+package structures.cell;
+
+import control.parameters.Parameters;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * What CellLattice and PackedCellLattice have in common: the behavior of
+ * each cell type, dispatched on its type code with the same arithmetic
+ * as the cell classes, so that the results are identical.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public abstract class AbstractTypeLattice implements TypeLattice {
+
+	protected Parameters p;
+	protected int w;
+
+	public AbstractTypeLattice(Parameters p) {
+		this.p = p;
+		w = p.W();
+	}
+
+	public int index(int x, int y) {
+		return y * w + x;
+	}
+
+	public double getProduction(int i) {
+		return production(getType(i));
+	}
+
+	/**
+	 * Growth rate of a cell of the given type at catalyst concentration c.
+	 * Empty and dead cells don't grow.
+	 */
+	protected double changeRate(byte type, double c) {
+		if (type != AbstractCell.CHEATER && type != AbstractCell.COOPERATOR)
+			return 0;
+
+		if (p.isInfiniteGamma())
+			return c;
+		else
+			return p.getGrowth() + (p.getBenefit() * c) - production(type);
+	}
+
+	protected double production(byte type) {
+		if (type == AbstractCell.COOPERATOR)
+			return p.getProduction();
+		else if (type == AbstractCell.CHEATER)
+			return 0d;
+		else
+			return 0;
+	}
+
+	/**
+	 * AbstractCell.duplicate constructs a new cell, whose constructor
+	 * draws a random biomass (then overwritten) if that type is
+	 * randomized. Dividing cells draw it here too, so the random sequence
+	 * is unchanged.
+	 */
+	protected void drawBiomass(byte type) {
+		if ((type == AbstractCell.CHEATER && p.randomizeCheaters())
+				|| (type == AbstractCell.COOPERATOR && p.randomizeCooperators()))
+			p.getRandom(Parameters.INITIAL_CONDITION).nextDouble();
+	}
+}
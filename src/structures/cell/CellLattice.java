@@ -0,0 +1,284 @@
+package structures.cell;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import structures.cell.ic.InitialCondition;
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * The state of every cell on the lattice, stored as parallel arrays of
+ * type codes, biomass and growth rate (the "old derivative") rather than
+ * as one AbstractCell object per site. Behavior that the cell classes
+ * implement by overriding is dispatched on the type code here, with the
+ * same arithmetic, so the results are identical.
+ *
+ * Dividing or moving a cell copies a few array entries instead of
+ * allocating a new object, and the lattice takes 17 bytes per site.
+ * The threshold processes also keep the time to which each cell's
+ * biomass is current (see advance); that takes another 8 bytes per
+ * site, allocated the first time it is used.
+ *
+ * The lattice is filled from the types and biomass assigned by an
+ * initial condition. getCell() returns a detached AbstractCell with the
+ * state of a site, for code that wants objects. Only the four standard
+ * types (EMPTY, CHEATER, COOPERATOR, DEAD) are supported.
+ *
+ * PackedCellLattice keeps only the types, for replacement processes on
+ * very large lattices. Code that only needs the types should depend on
+ * TypeLattice.
+ *
+ * Sites are indexed as i = y * W + x.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class CellLattice extends AbstractTypeLattice {
+
+	private byte[] types;
+	private double[] biomass;
+	private double[] derivatives;
+
+	// Time to which each biomass is current; null until advance is called
+	private double[] clock = null;
+
+	public CellLattice(Parameters p, InitialCondition ic) {
+		super(p);
+
+		types = ic.getTypes().clone();
+		biomass = new double[p.N()];
+		derivatives = new double[p.N()];
+
+		for (int i = 0; i < types.length; i++)
+			biomass[i] = ic.getBiomass(i);
+	}
+
+	public byte getType(int i) {
+		return types[i];
+	}
+
+	public double getBiomass(int i) {
+		return biomass[i];
+	}
+
+	public void setBiomass(int i, double value) {
+		biomass[i] = value;
+	}
+
+	/**
+	 * The growth rate most recently stored by getChangeRate() or
+	 * metabolise() (see AbstractCell.getOldDerivative).
+	 */
+	public double getDerivative(int i) {
+		return derivatives[i];
+	}
+
+	/**
+	 * See AbstractCell.getChangeRate.
+	 */
+	public double getChangeRate(int i, double c, boolean setDerivative) {
+		double changeRate = changeRate(types[i], c);
+
+		if (setDerivative)
+			derivatives[i] = changeRate;
+
+		return changeRate;
+	}
+
+	/**
+	 * See AbstractCell.criticalTime.
+	 */
+	public double criticalTime(int i, double c) {
+		byte type = types[i];
+
+		if (type != AbstractCell.CHEATER && type != AbstractCell.COOPERATOR)
+			return Double.POSITIVE_INFINITY;
+
+		double changeRate = getChangeRate(i, c, false);
+
+		// Growing: calculate time until cell division
+		if (changeRate > 0)
+			return (p.getThreshold() - biomass[i]) / changeRate;
+
+		// Starving: calculate time until death
+		else if (changeRate < 0)
+			return (biomass[i] / changeRate) * -1d;
+
+		// Equilibrium: nothing will ever happen
+		else
+			return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * See AbstractCell.metabolise.
+	 */
+	public int metabolise(int i, double c, double delta_t) {
+		byte type = types[i];
+
+		if (type != AbstractCell.CHEATER && type != AbstractCell.COOPERATOR)
+			return 0;
+
+		double cr = getChangeRate(i, c, true);
+		biomass[i] += cr * delta_t;
+		if (biomass[i] >= (p.getThreshold() - p.epsilon())) {
+			return 1;
+		} else if (biomass[i] <= p.epsilon()) {
+			return -1;
+		} else
+			return 0;
+	}
+
+	/**
+	 * Brings the biomass of the cell at site i forward to the given time,
+	 * at the growth rate most recently stored for it (see getDerivative).
+	 * The time is remembered with the cell, and moves with it when it is
+	 * copied, so cells can be brought up to date one at a time.
+	 */
+	public void advance(int i, double time) {
+		if (clock == null)
+			clock = new double[types.length];
+
+		biomass[i] += derivatives[i] * (time - clock[i]);
+		clock[i] = time;
+	}
+
+	public void copy(int from, int to) {
+		types[to] = types[from];
+		biomass[to] = biomass[from];
+		derivatives[to] = derivatives[from];
+
+		if (clock != null)
+			clock[to] = clock[from];
+	}
+
+	/**
+	 * Halves the biomass of the cell at site "parent" and places an
+	 * identical daughter at site "child".
+	 */
+	public void divide(int parent, int child) {
+		biomass[parent] /= 2.0;
+		drawBiomass(types[parent]);
+		copy(parent, child);
+	}
+
+	public void kill(int i, boolean vacate) {
+		if (vacate) {
+			types[i] = AbstractCell.EMPTY;
+			biomass[i] = 0;
+		} else {
+			types[i] = AbstractCell.DEAD;
+			biomass[i] = p.getThreshold() / 2d;
+		}
+
+		derivatives[i] = 0;
+	}
+
+	/**
+	 * Returns a new AbstractCell with the state of the cell at (x, y).
+	 * Changes to it do not affect the lattice.
+	 */
+	public AbstractCell getCell(int x, int y) {
+		int i = y * w + x;
+
+		AbstractCell cell;
+		if (types[i] == AbstractCell.CHEATER)
+			cell = new Cheater(p, x, y, biomass[i]);
+		else if (types[i] == AbstractCell.COOPERATOR)
+			cell = new Producer(p, x, y, biomass[i]);
+		else if (types[i] == AbstractCell.DEAD)
+			cell = new DeadCell(p, x, y);
+		else
+			cell = new EmptyCell(p, x, y);
+
+		cell.biomass = biomass[i];
+		cell.oldDerivative = derivatives[i];
+		return cell;
+	}
+
+	public int count(byte type) {
+		int n = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == type)
+				n++;
+		}
+
+		return n;
+	}
+
+	public void countCompetitors(byte[] competitors) {
+		for (int y = 0; y < w; y++) {
+			for (int x = 0; x < w; x++) {
+				int i = y * w + x;
+				byte self = types[i];
+
+				byte count = 0;
+
+				if (types[y * w + (x == w - 1 ? 0 : x + 1)] != self)
+					count++;
+
+				if (types[y * w + (x == 0 ? w - 1 : x - 1)] != self)
+					count++;
+
+				if (types[(y == w - 1 ? 0 : y + 1) * w + x] != self)
+					count++;
+
+				if (types[(y == 0 ? w - 1 : y - 1) * w + x] != self)
+					count++;
+
+				competitors[i] = count;
+			}
+		}
+	}
+
+	public void save(DataOutput out) throws IOException {
+		out.write(types);
+
+		for (int i = 0; i < types.length; i++) {
+			out.writeDouble(biomass[i]);
+			out.writeDouble(derivatives[i]);
+		}
+
+		out.writeBoolean(clock != null);
+		if (clock != null) {
+			for (int i = 0; i < types.length; i++)
+				out.writeDouble(clock[i]);
+		}
+	}
+
+	public void restore(DataInput in) throws IOException {
+		in.readFully(types);
+
+		for (int i = 0; i < types.length; i++) {
+			biomass[i] = in.readDouble();
+			derivatives[i] = in.readDouble();
+		}
+
+		if (in.readBoolean()) {
+			clock = new double[types.length];
+			for (int i = 0; i < types.length; i++)
+				clock[i] = in.readDouble();
+		} else {
+			clock = null;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package structures.cell;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import structures.cell.ic.InitialCondition;
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * A lattice that stores only the type of each cell, packed two bits
+ * per site into a long[] (LATTICE=PACKED). Replacement processes never
+ * read a cell's biomass, and a cell's growth rate follows from its
+ * type and the catalyst, so this is all they need. The lattice takes a
+ * quarter of a byte per site instead of 17.
+ *
+ * Each row starts on a new word, with site x of the row in bits
+ * 2 (x % 32) and 2 (x % 32) + 1 of word x / 32. Cell counts are taken
+ * 32 sites at a time with a popcount, and so are the differences
+ * between each site and its neighbors (see countCompetitors).
+ *
+ * The lattice is filled directly from the types assigned by an initial
+ * condition. Growth rates are computed but not stored: getDerivative
+ * always returns zero.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class PackedCellLattice extends AbstractTypeLattice {
+
+	// The low bit of every two-bit lane
+	private static final long LOW = 0x5555555555555555L;
+
+	private long[] words;
+
+	// Number of words per row, and the number of sites in the last word
+	// of each row
+	private int stride;
+	private int last;
+
+	public PackedCellLattice(Parameters p, InitialCondition ic) {
+		super(p);
+
+		stride = (w + 31) / 32;
+		last = w - 32 * (stride - 1);
+		words = new long[w * stride];
+
+		byte[] types = ic.getTypes();
+		for (int i = 0; i < types.length; i++)
+			set(i, types[i]);
+	}
+
+	@Override
+	public byte getType(int i) {
+		int x = i % w;
+		int y = i / w;
+
+		return (byte) ((words[y * stride + (x >>> 5)] >>> ((x & 31) << 1)) & 3L);
+	}
+
+	/**
+	 * Growth rates are not stored; LatticeStateTracker computes them from
+	 * the catalyst when it needs them. Returns zero.
+	 */
+	@Override
+	public double getDerivative(int i) {
+		return 0D;
+	}
+
+	/**
+	 * See AbstractCell.getChangeRate. The rate is not stored, whether or
+	 * not setDerivative is set.
+	 */
+	@Override
+	public double getChangeRate(int i, double c, boolean setDerivative) {
+		return changeRate(getType(i), c);
+	}
+
+	@Override
+	public void copy(int from, int to) {
+		set(to, getType(from));
+	}
+
+	@Override
+	public void divide(int parent, int child) {
+		drawBiomass(getType(parent));
+		copy(parent, child);
+	}
+
+	@Override
+	public void kill(int i, boolean vacate) {
+		set(i, vacate ? AbstractCell.EMPTY : AbstractCell.DEAD);
+	}
+
+	@Override
+	public int count(byte type) {
+		// The type code, repeated in every lane
+		long pattern = type * LOW;
+
+		int n = 0;
+		for (int y = 0; y < w; y++) {
+			for (int k = 0; k < stride; k++)
+				n += Long.bitCount(~differs(words[y * stride + k], pattern) & lanes(k));
+		}
+
+		return n;
+	}
+
+	/**
+	 * Compares each word with copies of itself shifted by one site in
+	 * each direction, so that the four neighbor comparisons are done
+	 * for 32 sites at once. Only the per-site totals are unpacked.
+	 */
+	@Override
+	public void countCompetitors(byte[] competitors) {
+		for (int y = 0; y < w; y++) {
+			int row = y * stride;
+			int up = (y == w - 1 ? 0 : y + 1) * stride;
+			int down = (y == 0 ? w - 1 : y - 1) * stride;
+
+			for (int k = 0; k < stride; k++) {
+				long self = words[row + k];
+				int sites = (k == stride - 1 ? last : 32);
+
+				// First site of the next word and last site of the previous
+				// one, wrapping around the row
+				long next = words[row + (k == stride - 1 ? 0 : k + 1)] & 3L;
+				int previous = (k == 0 ? stride - 1 : k - 1);
+				int previousSites = (previous == stride - 1 ? last : 32);
+				long before = (words[row + previous] >>> ((previousSites - 1) << 1)) & 3L;
+
+				// The right-hand neighbor of every site, and the left-hand one
+				int top = (sites - 1) << 1;
+				long right = ((self >>> 2) & ~(3L << top)) | (next << top);
+				long left = (self << 2) | before;
+
+				// Each lane of these sums is at most 2, so it fits in two bits
+				long horizontal = differs(self, right) + differs(self, left);
+				long vertical = differs(self, words[up + k]) + differs(self, words[down + k]);
+
+				int i = y * w + 32 * k;
+				for (int lane = 0; lane < sites; lane++) {
+					int shift = lane << 1;
+					competitors[i + lane] = (byte) (((horizontal >>> shift) & 3L) + ((vertical >>> shift) & 3L));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the packed words, which are the whole state.
+	 */
+	@Override
+	public void save(DataOutput out) throws IOException {
+		for (int k = 0; k < words.length; k++)
+			out.writeLong(words[k]);
+	}
+
+	@Override
+	public void restore(DataInput in) throws IOException {
+		for (int k = 0; k < words.length; k++)
+			words[k] = in.readLong();
+	}
+
+	private void set(int i, byte type) {
+		int x = i % w;
+		int y = i / w;
+		int k = y * stride + (x >>> 5);
+		int shift = (x & 31) << 1;
+
+		words[k] = (words[k] & ~(3L << shift)) | ((long) type << shift);
+	}
+
+	/**
+	 * Returns a word with the low bit of each lane set if that lane of a
+	 * differs from the same lane of b.
+	 */
+	private long differs(long a, long b) {
+		long t = a ^ b;
+		return (t | (t >>> 1)) & LOW;
+	}
+
+	/**
+	 * The low bits of the lanes of the k-th word of a row that hold
+	 * sites (all of them, except in the last word of a row).
+	 */
+	private long lanes(int k) {
+		if (k < stride - 1 || last == 32)
+			return LOW;
+
+		return LOW & ((1L << (last << 1)) - 1);
+	}
+}
@@ -30,11 +30,19 @@ public class Producer extends AbstractCell {
 	public Producer(Parameters p, int x, int y) {
 		super(p, x, y);
 		if (p.randomizeCooperators())
-			biomass = p.getRandom().nextDouble() * p.getThreshold();
+			biomass = p.getRandom(Parameters.INITIAL_CONDITION).nextDouble() * p.getThreshold();
 		else
 			biomass = p.getThreshold() / 2d;		
 	}
 
+	/**
+	 * Creates a cell with the given biomass, without drawing a random one.
+	 */
+	public Producer(Parameters p, int x, int y, double biomass) {
+		super(p, x, y);
+		this.biomass = biomass;
+	}
+
 	@Override
 	public AbstractCell duplicate(int xx, int yy) {
 		Producer cell = new Producer(p, xx, yy);
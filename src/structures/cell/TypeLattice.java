@@ -0,0 +1,102 @@
+package structures.cell;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * The type of the cell at every site of the lattice, and the behavior
+ * that depends only on the type: enzyme production, growth rate, and
+ * cells being copied, divided and killed. This is all that the
+ * replacement processes and the helpers that keep track of the lattice
+ * need. CellLattice also stores biomass, for processes that use it;
+ * PackedCellLattice stores only the types.
+ *
+ * Sites are indexed as i = y * W + x.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public interface TypeLattice {
+
+	public int index(int x, int y);
+
+	public byte getType(int i);
+
+	/**
+	 * Returns the amount of enzyme produced by the cell at site i, if any.
+	 */
+	public double getProduction(int i);
+
+	/**
+	 * Growth rate of the cell at site i at catalyst concentration c (see
+	 * AbstractCell.getChangeRate). If setDerivative is true, lattices
+	 * that store growth rates store it (see getDerivative).
+	 */
+	public double getChangeRate(int i, double c, boolean setDerivative);
+
+	/**
+	 * The growth rate most recently stored for the cell at site i by
+	 * getChangeRate, or zero if the lattice doesn't store growth rates.
+	 */
+	public double getDerivative(int i);
+
+	/**
+	 * Copies the cell at site "from" to site "to", overwriting whatever
+	 * was there.
+	 */
+	public void copy(int from, int to);
+
+	/**
+	 * Places a daughter of the cell at site "parent" at site "child".
+	 */
+	public void divide(int parent, int child);
+
+	/**
+	 * Replaces the cell at site i with an empty cell (if vacate is set)
+	 * or a dead one.
+	 */
+	public void kill(int i, boolean vacate);
+
+	/**
+	 * Returns the number of cells of the given type.
+	 */
+	public int count(byte type);
+
+	/**
+	 * Stores, for every site, the number of its four neighbors whose
+	 * type differs from its own (its "competitors").
+	 */
+	public void countCompetitors(byte[] competitors);
+
+	/**
+	 * Writes the state of every site, for a checkpoint (see
+	 * io.Checkpoint).
+	 */
+	public void save(DataOutput out) throws IOException;
+
+	/**
+	 * Replaces the state of every site with the one written by save.
+	 */
+	public void restore(DataInput in) throws IOException;
+}
@@ -1,8 +1,6 @@
 package structures.cell.ic;
 
 import structures.cell.AbstractCell;
-import structures.cell.Cheater;
-import structures.cell.Producer;
 import control.parameters.Parameters;
 
 /**
@@ -49,9 +47,7 @@ public class CheaterDisc extends InitialCondition {
 	private void placeBackground(Parameters p) {
 		for (int x = 0; x < p.W(); x++) {
 			for (int y = 0; y < p.W(); y++) {
-				AbstractCell c;
-				c = new Producer(p, x, y);
-				assign(x, y, c);
+				assign(x, y, AbstractCell.COOPERATOR);
 			}
 			
 		}
@@ -76,7 +72,6 @@ public class CheaterDisc extends InitialCondition {
 	}
 
 	private void makeCheater(Parameters p, int x, int y) {
-		Cheater c = new Cheater(p, x, y);
-		assign(x, y, c);
+		assign(x, y, AbstractCell.CHEATER);
 	}
 }
@@ -23,28 +23,108 @@ import structures.cell.AbstractCell;
  * http://creativecommons.org/licenses/by-nc/3.0/legalcode
  * 
  * 
+ * The cell type assigned to every site, and the initial biomass of the
+ * cells. Cooperators and cheaters start with half of the threshold
+ * biomass, or a random fraction of it if their type is randomized;
+ * dead cells start with half of it, and empty sites with none.
+ * 
+ * Assignments are stored as type codes, by site index i = y * W + x,
+ * rather than as cell objects, so that lattices that only store types
+ * (see PackedCellLattice) can be filled without ever holding an object
+ * per site. Biomass is only stored once a cell is assigned one that
+ * doesn't follow from its type.
+ * 
  * @author dbborens@princeton.edu
  *
  */
 public abstract class InitialCondition {
 
-	AbstractCell[][] lattice;
+	protected Parameters p;
+
+	private byte[] types;
+
+	// Initial biomass of every site; null while it follows from the types
+	private double[] biomass = null;
 
 	public InitialCondition(Parameters p) {
-		lattice = new AbstractCell[p.W()][p.W()];
+		this.p = p;
+		types = new byte[p.N()];
+	}
+	
+	/**
+	 * The type assigned to every site, by index y * W + x. Callers must
+	 * not modify it.
+	 */
+	public byte[] getTypes() {
+		return types;
+	}
+	
+	public byte getType(int x, int y) {
+		return types[y * p.W() + x];
 	}
 	
-	public AbstractCell[][] getConfiguration() {
-		return lattice;
+	public double getBiomass(int i) {
+		if (biomass == null)
+			return defaultBiomass(types[i]);
+		
+		return biomass[i];
+	}
+	
+	/**
+	 * Assigns a new cell of the given type to a lattice position. If the
+	 * type is randomized, its biomass is drawn here, from the same
+	 * stream and at the same point as the cell's constructor would.
+	 */
+	protected void assign(int x, int y, byte type) {
+		int i = y * p.W() + x;
+		checkType(type, x, y);
+		
+		types[i] = type;
+		
+		if ((type == AbstractCell.CHEATER && p.randomizeCheaters())
+				|| (type == AbstractCell.COOPERATOR && p.randomizeCooperators()))
+			setBiomass(i, p.getRandom(Parameters.INITIAL_CONDITION).nextDouble() * p.getThreshold());
+		else if (biomass != null)
+			biomass[i] = defaultBiomass(type);
 	}
 	
 	/**
-	 * Assigns a cell to a lattice position. Returns the old cell.
+	 * Assigns the type and biomass of an existing cell to a lattice
+	 * position, for initial conditions that construct cell objects.
 	 */
-	protected AbstractCell assign(int x, int y, AbstractCell cell) {
-		AbstractCell old = lattice[x][y];
-		lattice[x][y] = cell;
+	protected void assign(int x, int y, AbstractCell cell) {
+		int i = y * p.W() + x;
+		checkType(cell.getType(), x, y);
+		
+		types[i] = cell.getType();
+		
+		if (biomass != null || cell.getBiomass() != defaultBiomass(cell.getType()))
+			setBiomass(i, cell.getBiomass());
+	}
+	
+	private void setBiomass(int i, double value) {
+		if (biomass == null) {
+			biomass = new double[types.length];
+			for (int k = 0; k < types.length; k++)
+				biomass[k] = defaultBiomass(types[k]);
+		}
 		
-		return old;
+		biomass[i] = value;
+	}
+	
+	private double defaultBiomass(byte type) {
+		if (type == AbstractCell.EMPTY)
+			return 0D;
+		
+		return p.getThreshold() / 2d;
+	}
+	
+	/**
+	 * Only the four standard types can be stored on the lattice.
+	 */
+	private void checkType(byte type, int x, int y) {
+		if (type != AbstractCell.EMPTY && type != AbstractCell.CHEATER
+				&& type != AbstractCell.COOPERATOR && type != AbstractCell.DEAD)
+			throw new IllegalArgumentException("Unsupported cell type " + type + " at (" + x + ", " + y + ").");
 	}
 }
@@ -32,16 +32,14 @@ public class ProducerCheater extends InitialCondition {
 		super(p);
 		for (int x = 0; x < p.W(); x++) {
 			for (int y = 0; y < p.W(); y++) {
-				EmptyCell empty = new EmptyCell(p, x, y);
-				assign(x, y, empty);
+				assign(x, y, AbstractCell.EMPTY);
 
 			}
 		}
 
 		for (int x = (p.W() / 2) - 2; x <= (p.W() / 2) + 2; x++) {
 			for (int y = (p.W() / 2) - 2; y <= (p.W() / 2) + 2; y++) {
-				AbstractCell c = new Producer(p, x, y);
-				assign(x, y, c);
+				assign(x, y, AbstractCell.COOPERATOR);
 			}
 			
 		}
@@ -50,10 +48,7 @@ public class ProducerCheater extends InitialCondition {
 		int x = p.W() / 2;
 		int y = p.W() / 2;
 
-		AbstractCell c = new Cheater(p, x, y);
-		
-		//Cell founder = new TwoToneCell(p, c);
-		assign(x, y, c);
+		assign(x, y, AbstractCell.CHEATER);
 		
 	}
 }
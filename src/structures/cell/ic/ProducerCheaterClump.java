@@ -33,28 +33,21 @@ public class ProducerCheaterClump extends InitialCondition {
 		
 		for (int x = 0; x < p.W(); x++) {
 			for (int y = 0; y < p.W(); y++) {
-				EmptyCell empty = new EmptyCell(p, x, y);
-				assign(x, y, empty);
+				assign(x, y, AbstractCell.EMPTY);
 
 			}
 		}
 
 		for (int x = (p.W() / 2) - 4; x <= (p.W() / 2) + 4; x++) {
 			for (int y = (p.W() / 2) - 4; y <= (p.W() / 2) + 4; y++) {
-				AbstractCell c;
-				
-
-				c = new Producer(p, x, y);
-				
-				assign(x, y, c);
+				assign(x, y, AbstractCell.COOPERATOR);
 			}
 			
 		}
 
 		for (int x = (p.W() / 2) - 2; x <= (p.W() / 2) + 2; x++) {
 			for (int y = (p.W() / 2) - 2; y <= (p.W() / 2) + 2; y++) {
-				AbstractCell c = new Cheater(p, x, y);
-				assign(x, y, c);
+				assign(x, y, AbstractCell.CHEATER);
 			}
 			
 		}
@@ -1,8 +1,6 @@
 package structures.cell.ic;
 
 import structures.cell.AbstractCell;
-import structures.cell.Cheater;
-import structures.cell.Producer;
 import control.parameters.Parameters;
 
 /**
@@ -30,9 +28,7 @@ public class ProducerDisc extends InitialCondition {
 	private void placeBackground(Parameters p) {
 		for (int x = 0; x < p.W(); x++) {
 			for (int y = 0; y < p.W(); y++) {
-				AbstractCell c;
-				c = new Cheater(p, x, y);
-				assign(x, y, c);
+				assign(x, y, AbstractCell.CHEATER);
 			}
 			
 		}
@@ -57,7 +53,6 @@ public class ProducerDisc extends InitialCondition {
 	}
 
 	private void makeProducer(Parameters p, int x, int y) {
-		Producer c = new Producer(p, x, y);
-		assign(x, y, c);
+		assign(x, y, AbstractCell.COOPERATOR);
 	}
 }
@@ -37,9 +37,7 @@ public class SingleCheater extends InitialCondition {
 
 		for (int x = 0; x < p.W(); x++) {
 			for (int y = 0; y < p.W(); y++) {
-				AbstractCell c;
-				c = new Producer(p, x, y);
-				assign(x, y, c);
+				assign(x, y, AbstractCell.COOPERATOR);
 			}
 			
 		}
@@ -48,9 +46,7 @@ public class SingleCheater extends InitialCondition {
 		int x = p.W() / 2;
 		int y = p.W() / 2;
 
-		AbstractCell c = new Cheater(p, x, y);
-		
-		assign(x, y, c);
+		assign(x, y, AbstractCell.CHEATER);
 		
 	}
 }
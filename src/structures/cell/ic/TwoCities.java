@@ -34,8 +34,7 @@ public class TwoCities extends InitialCondition {
 		
 		for (int x = 0; x < p.W(); x++) {
 			for (int y = 0; y < p.W(); y++) {
-				EmptyCell empty = new EmptyCell(p, x, y);
-				assign(x, y, empty);
+				assign(x, y, AbstractCell.EMPTY);
 
 			}
 		}
@@ -43,14 +42,9 @@ public class TwoCities extends InitialCondition {
 		int x = p.W() / 4;
 		int y = p.W() / 2;
 
-		AbstractCell c;
-		
-		c = new Producer(p, x, y);
-		
-		assign(x, y, c);
+		assign(x, y, AbstractCell.COOPERATOR);
 		
 		x = p.W() - (p.W() / 4);
-		c = new Cheater(p, x, y);
-		assign(x, y, c);
+		assign(x, y, AbstractCell.CHEATER);
 	}
 }
@@ -34,11 +34,8 @@ public class TwoDomains extends InitialCondition {
 		
 		for (int x = 0; x < p.W() / 2; x++) {
 			for (int y = 0; y < p.W(); y++) {
-				AbstractCell c = new Producer(p, x, y);
-				assign(x, y, c);
-				
-				AbstractCell d = new Cheater(p, p.W() - x - 1, y);
-				assign(p.W() - x - 1, y, d);
+				assign(x, y, AbstractCell.COOPERATOR);
+				assign(p.W() - x - 1, y, AbstractCell.CHEATER);
 			}
 		}
 	}
@@ -60,12 +60,12 @@ public class WellMixed extends InitialCondition {
 
 	private void sprinkleCheaters(Parameters p) {
 		for (int i = 0; i < p.getIcArgument(); i++) {
-			int x = p.getRandom().nextInt(p.W());
-			int y = p.getRandom().nextInt(p.W());
+			int x = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
+			int y = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
 
-			while (lattice[x][y].getType() == AbstractCell.CHEATER) {
-				x = p.getRandom().nextInt(p.W());
-				y = p.getRandom().nextInt(p.W());
+			while (getType(x, y) == AbstractCell.CHEATER) {
+				x = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
+				y = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
 			}
 			//System.out.println("Invader: " + x + ", " + y);
 			placeCheater(p, x, y);
@@ -75,12 +75,12 @@ public class WellMixed extends InitialCondition {
 	private void sprinkleCooperators(Parameters p) {
 		int numCooperators = p.N() - p.getIcArgument();
 		for (int i = 0; i < numCooperators; i++) {
-			int x = p.getRandom().nextInt(p.W());
-			int y = p.getRandom().nextInt(p.W());
+			int x = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
+			int y = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
 
-			while (lattice[x][y].getType() == AbstractCell.COOPERATOR) {
-				x = p.getRandom().nextInt(p.W());
-				y = p.getRandom().nextInt(p.W());
+			while (getType(x, y) == AbstractCell.COOPERATOR) {
+				x = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
+				y = p.getRandom(Parameters.INITIAL_CONDITION).nextInt(p.W());
 			}
 			//System.out.println("Invader: " + x + ", " + y);
 			placeCooperator(p, x, y);
@@ -88,13 +88,10 @@ public class WellMixed extends InitialCondition {
 	}
 	
 	private void placeCooperator(Parameters p, int x, int y) {
-		AbstractCell c;
-		c = new Producer(p, x, y);
-		assign(x, y, c);
+		assign(x, y, AbstractCell.COOPERATOR);
 	}
 	
 	private void placeCheater(Parameters p, int x, int y) {
-		AbstractCell c = new Cheater(p, x, y);
-		assign(x, y, c);
+		assign(x, y, AbstractCell.CHEATER);
 	}
 }
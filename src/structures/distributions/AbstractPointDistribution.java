@@ -31,8 +31,52 @@ public interface AbstractPointDistribution {
 	 * Returns the value of the distribution at x, y. Note that x and y
 	 * can be negative.
 	 */
-	public abstract Double get(int x, int y);
+	public abstract double get(int x, int y);
+
+	/**
+	 * Returns the value of the distribution at a kernel index, as
+	 * obtained from the column and row offset tables:
+	 * 
+	 *   index = getColumnOffsets()[dx + W - 1] + getRowOffsets()[dy + W - 1]
+	 *   
+	 * for displacements -W < dx, dy < W. This avoids any division,
+	 * modulus or boxing in solver inner loops.
+	 */
+	public abstract double get(int index);
+
+	/**
+	 * Returns the distribution as a primitive array, indexed by
+	 * x + W * y for 0 <= x, y < W. Callers must not modify it.
+	 */
+	public abstract double[] getKernel();
+
+	/**
+	 * Maps a horizontal displacement dx (stored at dx + W - 1) to its
+	 * column in the kernel.
+	 */
+	public abstract int[] getColumnOffsets();
+
+	/**
+	 * Maps a vertical displacement dy (stored at dy + W - 1) to the
+	 * start of its row in the kernel.
+	 */
+	public abstract int[] getRowOffsets();
 
 	public abstract Double[] getSolution();
 
+	/**
+	 * Returns the smallest Chebyshev radius (in lattice units, measured
+	 * along the shortest periodic displacement) outside of which the
+	 * distribution falls below the kernel tolerance everywhere. Solvers
+	 * may ignore contributions beyond this radius.
+	 */
+	public abstract int getSupportRadius();
+
+	/**
+	 * Returns the total concentration that lies outside the support
+	 * radius. This bounds the error introduced at any one site by
+	 * truncating a single point source.
+	 */
+	public abstract double getTruncationError();
+
 }
\ No newline at end of file
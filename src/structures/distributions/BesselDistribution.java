@@ -0,0 +1,283 @@
+package structures.distributions;
+
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Generates the steady state distribution of a point source in closed
+ * form, instead of solving the N x N diffusion-decay system as
+ * ZeroOriginDistribution does.
+ *
+ * In the continuum, the steady state of
+ *
+ *   decay * c - D * laplacian(c) = rho * delta(x)
+ *
+ * is c(R) = rho / (2 pi D) * K0(R / L), where K0 is the modified
+ * Bessel function of the second kind and L = sqrt(D / decay) is the
+ * decay length. Periodic boundaries are handled by summing over
+ * images of the source until K0 is negligible.
+ *
+ * The continuum solution diverges at the source and differs from the
+ * lattice solution close to it. If LATTICE_CORRECTION is set, the
+ * nearest image is replaced, within NEAR_FIELD sites of the source,
+ * by the exact Green's function of the infinite 5-point lattice,
+ * evaluated as a one-dimensional integral. Otherwise, the value at
+ * the source is chosen so that the total concentration balances
+ * production (sum(c) = rho / decay), as it does on the lattice.
+ *
+ * If VALIDATE_KERNEL is set, the distribution is also computed with
+ * ZeroOriginDistribution and the difference is reported.
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public class BesselDistribution extends LatticeDistribution {
+
+	private static final double EULER_GAMMA = 0.5772156649015329;
+
+	// K0 is treated as zero beyond this argument (K0(40) ~ 1e-18)
+	private static final double MAX_ARGUMENT = 40D;
+
+	// Euclidean radius within which the lattice correction is applied
+	private static final double NEAR_FIELD = 16D;
+
+	// Scaled diffusion and decay constants
+	private double diffusion;
+	private double decay;
+
+	// Decay length, in lattice units
+	private double length;
+
+	// Number of quadrature intervals for the lattice Green's function
+	private int quadrature;
+
+	public BesselDistribution(Parameters p) {
+		super(p);
+
+		if (p.getProduction() < p.epsilon()) {
+			System.out.println("No production: using trivial solute distribution.");
+			trivialSolution();
+			finish();
+			return;
+		}
+
+		if (p.getDecay() < p.epsilon())
+			throw new IllegalArgumentException("The analytic kernel requires a non-zero DECAY.");
+
+		diffusion = p.getDiffusion();
+		decay = p.getDecay();
+		length = Math.sqrt(diffusion / decay);
+
+		// The lattice integrand is sharply peaked (width ~ 1 / length)
+		// near zero frequency, so resolve it with several points per width.
+		quadrature = 128 * (int) Math.ceil(Math.max(1D, length));
+
+		System.out.println("Calculating analytic distribution...");
+		long start = System.currentTimeMillis();
+		kernel = new double[p.N()];
+		populate();
+		System.out.println("Analytic distribution computed in " + (System.currentTimeMillis() - start) + " ms.");
+
+		finish();
+
+		if (p.isValidateKernel())
+			validate();
+	}
+
+	/**
+	 * Compute each value in one octant of the lattice and copy it to
+	 * its symmetric partners.
+	 */
+	private void populate() {
+		int w = p.W();
+		int images = (int) Math.ceil(MAX_ARGUMENT * length / w);
+
+		for (int y = 0; y <= w / 2; y++) {
+			for (int x = 0; x <= y; x++) {
+				double c = imageSum(x, y, images);
+				assign(x, y, c);
+			}
+		}
+
+		// Without a finite near field, fix the source by mass balance
+		if (!p.isLatticeCorrection()) {
+			double total = 0D;
+			for (int i = 1; i < p.N(); i++)
+				total += kernel[i];
+
+			kernel[0] = (p.getProduction() / decay) - total;
+		}
+	}
+
+	/**
+	 * Sum of contributions from every periodic image of the source.
+	 */
+	private double imageSum(int x, int y, int images) {
+		int w = p.W();
+		double prefactor = p.getProduction() / (2D * Math.PI * diffusion);
+		double c = 0D;
+
+		for (int j = -images; j <= images; j++) {
+			for (int i = -images; i <= images; i++) {
+				double dx = x + i * w;
+				double dy = y + j * w;
+				double r = Math.sqrt(dx * dx + dy * dy);
+
+				// Nearest image
+				if (i == 0 && j == 0) {
+					if (p.isLatticeCorrection() && r <= NEAR_FIELD) {
+						c += latticeGreen(x, y);
+						continue;
+					}
+
+					// Divergent: set by mass balance afterward
+					if (r == 0D)
+						continue;
+				}
+
+				double z = r / length;
+				if (z > MAX_ARGUMENT)
+					continue;
+
+				c += prefactor * k0(z);
+			}
+		}
+
+		return c;
+	}
+
+	/**
+	 * Exact steady state of the infinite 5-point lattice at (x, y):
+	 *
+	 *   G(x, y) = (rho / pi) * integral_0^pi cos(x t) u(t)^|y| / s(t) dt
+	 *
+	 * where a = decay + 4D - 2D cos(t), b = 2D, s = sqrt(a^2 - b^2) and
+	 * u = (a - s) / b. The integrand is smooth and periodic, so the
+	 * trapezoidal rule converges spectrally.
+	 */
+	private double latticeGreen(int x, int y) {
+		double h = Math.PI / quadrature;
+		double b = 2D * diffusion;
+		double sum = 0D;
+
+		for (int k = 0; k <= quadrature; k++) {
+			double t = k * h;
+			double a = decay + 4D * diffusion - b * Math.cos(t);
+			double s = Math.sqrt(a * a - b * b);
+			double u = (a - s) / b;
+			double f = Math.cos(x * t) * Math.pow(u, y) / s;
+
+			if (k == 0 || k == quadrature)
+				f *= 0.5D;
+
+			sum += f;
+		}
+
+		return p.getProduction() * sum * h / Math.PI;
+	}
+
+	/**
+	 * Assign a value to (x, y) and every position related to it by the
+	 * symmetries of the periodic square lattice.
+	 */
+	private void assign(int x, int y, double c) {
+		int w = p.W();
+		int[] xs = {x, (w - x) % w, y, (w - y) % w};
+		int[] ys = {y, (w - y) % w, x, (w - x) % w};
+
+		for (int a = 0; a < 2; a++) {
+			for (int b = 0; b < 2; b++) {
+				// (x, y) and its reflections, then (y, x) and its reflections
+				kernel[ys[b] * w + xs[a]] = c;
+				kernel[ys[2 + b] * w + xs[2 + a]] = c;
+			}
+		}
+	}
+
+	/**
+	 * Compare against the iterative solution and report the difference.
+	 */
+	private void validate() {
+		System.out.println("Validating analytic distribution against the CGS solution...");
+		ZeroOriginDistribution reference = new ZeroOriginDistribution(p);
+		double[] expected = reference.getKernel();
+
+		double maxAbs = 0D;
+		int argMax = 0;
+		for (int i = 0; i < p.N(); i++) {
+			double diff = Math.abs(kernel[i] - expected[i]);
+			if (diff > maxAbs) {
+				maxAbs = diff;
+				argMax = i;
+			}
+		}
+
+		double relSource = Math.abs(kernel[0] - expected[0]) / Math.abs(expected[0]);
+
+		System.out.println("Maximum absolute difference: " + maxAbs + " at (" + (argMax % p.W()) + ", " + (argMax / p.W()) + ")");
+		System.out.println("Relative difference at source: " + relSource);
+	}
+
+	/**
+	 * Modified Bessel function of the second kind, order zero.
+	 *
+	 * For z <= 2, uses the power series
+	 *
+	 *   K0(z) = -(ln(z/2) + gamma) I0(z) + sum_k (z^2/4)^k / (k!)^2 H_k
+	 *
+	 * where H_k is the k-th harmonic number. For z > 2, uses the
+	 * trapezoidal rule on K0(z) = integral_0^inf exp(-z cosh t) dt,
+	 * which converges to machine precision with a coarse step.
+	 */
+	protected static double k0(double z) {
+		if (z <= 2D) {
+			double q = z * z / 4D;
+			double term = 1D;
+			double harmonic = 0D;
+			double i0 = 1D;
+			double series = 0D;
+
+			for (int k = 1; k < 50; k++) {
+				term *= q / ((double) k * k);
+				harmonic += 1D / k;
+				i0 += term;
+				series += term * harmonic;
+
+				if (term < 1e-17 * i0)
+					break;
+			}
+
+			return -(Math.log(z / 2D) + EULER_GAMMA) * i0 + series;
+		}
+
+		double h = 0.2D;
+		double sum = 0.5D * Math.exp(-z);
+		for (int k = 1; ; k++) {
+			double term = Math.exp(-z * Math.cosh(k * h));
+			sum += term;
+
+			if (term < 1e-18 * sum)
+				break;
+		}
+
+		return sum * h;
+	}
+}
@@ -0,0 +1,192 @@
+package structures.distributions;
+
+import control.parameters.Parameters;
+
+/**
+ *
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * Storage and lookup shared by point source distributions on the
+ * periodic lattice, with the source at the origin. Subclasses only
+ * need to fill in the kernel (indexed by x + W * y) and then call
+ * finish().
+ *
+ * @author dbborens@princeton.edu
+ *
+ */
+public abstract class LatticeDistribution implements AbstractPointDistribution {
+
+	protected Parameters p;
+
+	protected double[] kernel;
+
+	// Maps signed displacements to kernel indices (see AbstractPointDistribution)
+	private int[] columnOffsets;
+	private int[] rowOffsets;
+
+	// Extent of the distribution above the kernel tolerance
+	private int supportRadius;
+	private double truncationError;
+
+	public LatticeDistribution(Parameters p) {
+		this.p = p;
+	}
+
+	/**
+	 * Builds the lookup tables once the kernel has been populated.
+	 */
+	protected void finish() {
+		calcOffsets();
+		calcSupport();
+		
+		if (p.getKernelTolerance() > 0D)
+			System.out.println("Kernel support radius: " + supportRadius + " (truncation error <= " + truncationError + ")");
+		else
+			System.out.println("Kernel not truncated (KERNEL_TOLERANCE=0).");
+	}
+
+	/**
+	 * Populate the kernel with zeros, for the special case of no production.
+	 */
+	protected void trivialSolution() {
+		kernel = new double[p.N()];
+	}
+
+	/**
+	 * Find the smallest radius outside of which every value of the
+	 * distribution is below KERNEL_TOLERANCE times its peak, and the
+	 * total concentration discarded by ignoring everything outside of
+	 * it. Being relative, the tolerance means the same thing whatever
+	 * the production and decay. A tolerance of zero keeps every site.
+	 */
+	private void calcSupport() {
+		int w = p.W();
+		supportRadius = 0;
+
+		double peak = 0D;
+		for (int i = 0; i < kernel.length; i++)
+			peak = Math.max(peak, Math.abs(kernel[i]));
+
+		double cutoff = p.getKernelTolerance() * peak;
+
+		for (int y = 0; y < w; y++) {
+			for (int x = 0; x < w; x++) {
+				if (Math.abs(kernel[y * w + x]) < cutoff)
+					continue;
+
+				int r = Math.max(shortest(x), shortest(y));
+				if (r > supportRadius)
+					supportRadius = r;
+			}
+		}
+
+		truncationError = 0D;
+		for (int y = 0; y < w; y++) {
+			for (int x = 0; x < w; x++) {
+				if (Math.max(shortest(x), shortest(y)) > supportRadius)
+					truncationError += Math.abs(kernel[y * w + x]);
+			}
+		}
+	}
+
+	// Shortest periodic displacement from the origin
+	protected int shortest(int x) {
+		return Math.min(x, p.W() - x);
+	}
+
+	/**
+	 * The distribution is symmetric about the origin, so a displacement
+	 * of d in either direction maps to |d| in the kernel.
+	 */
+	private void calcOffsets() {
+		int w = p.W();
+		columnOffsets = new int[2 * w - 1];
+		rowOffsets = new int[2 * w - 1];
+
+		for (int d = 1 - w; d < w; d++) {
+			columnOffsets[d + w - 1] = Math.abs(d);
+			rowOffsets[d + w - 1] = Math.abs(d) * w;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.AbstractPointDistribution#origin()
+	 */
+	@Override
+	public int origin() {
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.AbstractPointDistribution#get(int, int)
+	 */
+	@Override
+	public double get(int x, int y) {
+
+		int x1 = Math.abs(x);
+		int y1 = Math.abs(y);
+
+		int i = x1 + p.W() * y1;
+
+		return kernel[i];
+	}
+
+	@Override
+	public double get(int index) {
+		return kernel[index];
+	}
+
+	@Override
+	public double[] getKernel() {
+		return kernel;
+	}
+
+	@Override
+	public int[] getColumnOffsets() {
+		return columnOffsets;
+	}
+
+	@Override
+	public int[] getRowOffsets() {
+		return rowOffsets;
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.AbstractPointDistribution#getSolution()
+	 */
+	@Override
+	public Double[] getSolution() {
+		Double[] solution = new Double[kernel.length];
+
+		for (int i = 0; i < kernel.length; i++)
+			solution[i] = kernel[i];
+
+		return solution;
+	}
+
+	@Override
+	public int getSupportRadius() {
+		return supportRadius;
+	}
+
+	@Override
+	public double getTruncationError() {
+		return truncationError;
+	}
+}
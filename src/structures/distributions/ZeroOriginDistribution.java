@@ -1,8 +1,8 @@
 package structures.distributions;
 
 
-import operations.matrix.Decay;
-import operations.matrix.Diffusion;
+import operations.matrix.DiffusionDecayStencil;
+import operations.matrix.MultigridPreconditioner;
 import no.uib.cipr.matrix.*;
 import no.uib.cipr.matrix.sparse.*;
 import java.util.Arrays;
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import structures.MatrixUtils;
 
 import control.parameters.Parameters;
+import io.KernelCache;
 
 /**
  *
@@ -38,7 +39,7 @@ import control.parameters.Parameters;
  * @author dbborens@princeton.edu
  *
  */
-public class ZeroOriginDistribution implements AbstractPointDistribution {
+public class ZeroOriginDistribution extends LatticeDistribution {
 
 	// The dimensionless parameter R = ( alpha * dt ) / (dx)^2 controls
 	// the error of the discrete Laplacian. In two dimensions, the Laplacian
@@ -46,9 +47,6 @@ public class ZeroOriginDistribution implements AbstractPointDistribution {
 	// error. We assume that dx=1.
 	
 	
-	private Double[] solution;
-	
-	private Parameters p;
 	private int x0;
 	private int y0;
 	/**
@@ -60,59 +58,66 @@ public class ZeroOriginDistribution implements AbstractPointDistribution {
 	 * @param rho Production constant.
 	 */
 	public ZeroOriginDistribution (Parameters p) {
-		this.p = p;
+		super(p);
 		
 		// In the special case of zero production, skip all the logic and just
 		// populate the solution with zeros.
 		if (p.getProduction() < p.epsilon()) {
 			System.out.println("No production: using trivial solute distribution.");
 			trivialSolution();
+			finish();
 			return;
 		}
 		
-		// We want to solve c = [decay - diffusion]^-1 source,
-		// so operator is decay-diffusion.
-		CompDiagMatrix operator = buildOperator(p.getDiffusion(), p.getDecay());
-
-		//System.out.println(MatrixUtils.matrixForm(operator));
-		//System.exit(-1);
-		
-		// Source vector is just rho * dt at the origin.
-		Vector source = new SparseVector(p.N(), 1);
-		
 		// Origin is (0, 0)
 		x0 = 0;
 		y0 = 0;
-				
-		source.set(origin(), p.getProduction());
 		
-		System.out.println("Calculating distribution...");
-		solution = solve(operator, source);
+		// Use a stored copy of the distribution if there is one.
+		KernelCache cache = null;
+		if (p.getKernelCache() != null) {
+			cache = new KernelCache(p);
+			kernel = cache.load();
+		}
 		
-	}
-
-	private void trivialSolution() {
-		solution = new Double[p.N()];
+		if (kernel == null) {
+			// We want to solve c = [decay - diffusion]^-1 source,
+			// so operator is decay-diffusion.
+			Matrix operator = buildOperator(p.getDiffusion(), p.getDecay());
+	
+			//System.out.println(MatrixUtils.matrixForm(operator));
+			//System.exit(-1);
+			
+			// Source vector is just rho * dt at the origin.
+			Vector source = new SparseVector(p.N(), 1);
+			source.set(origin(), p.getProduction());
+			
+			System.out.println("Calculating distribution...");
+			kernel = solve(operator, source);
+			
+			if (cache != null)
+				cache.store(kernel);
+		}
 		
-		for (int i = 0; i < p.N(); i++)
-			solution[i] = 0D;
+		finish();
 	}
 
-	/* (non-Javadoc)
-	 * @see structures.AbstractPointDistribution#origin()
-	 */
-	@Override
-	public int origin() {
-		return 0;
-	}
-	
-	private Double[] solve (CompDiagMatrix operator, Vector source) {
+	private double[] solve (Matrix operator, Vector source) {
 		int n = p.N();
 		Vector template = source.copy();
 		
 		IterativeSolver solver = new CGS(template);
-		Preconditioner preconditioner = new DiagonalPreconditioner(n);
-		preconditioner.setMatrix(operator);
+		Preconditioner preconditioner;
+		if (p.getPreconditioner().equalsIgnoreCase("MULTIGRID")) {
+			preconditioner = new MultigridPreconditioner(p);
+			preconditioner.setMatrix(operator);
+			solver.setPreconditioner(preconditioner);
+		} else {
+			// The diagonal of this operator is constant, so Jacobi would
+			// only rescale the system. It is built but not attached.
+			preconditioner = new DiagonalPreconditioner(n);
+			preconditioner.setMatrix(operator);
+		}
 		//solver.getIterationMonitor().setIterationReporter(new OutputIterationReporter());
 
 		Vector sol = new DenseVector(n);
@@ -123,43 +128,11 @@ public class ZeroOriginDistribution implements AbstractPointDistribution {
 			ex.printStackTrace();
 		}
 		
-		return MatrixUtils.toArray(sol);
+		return Matrices.getArray(sol);
 		
 	}
 	
-	private CompDiagMatrix buildOperator(double diffusion, double decay) {
-		
-		CompDiagMatrix A = new CompDiagMatrix(p.N(), p.N());
-		A.add(new Decay(p.N(), decay));
-		A.add(MatrixUtils.I(p.N()));
-		
-		Diffusion grad = new Diffusion(p);
-		grad.scale(-1D);
-		
-		A.add(grad);
-
-		return A;
-	}
-	
-	/* (non-Javadoc)
-	 * @see structures.AbstractPointDistribution#get(int, int)
-	 */
-	@Override
-	public Double get(int x, int y) {
-		
-		int x1 = Math.abs(x);
-		int y1 = Math.abs(y);
-				
-		int i = x1 + p.W() * y1;
-		
-		return solution[i];
-	}
-
-	/* (non-Javadoc)
-	 * @see structures.AbstractPointDistribution#getSolution()
-	 */
-	@Override
-	public Double[] getSolution() {
-		return solution;
+	private Matrix buildOperator(double diffusion, double decay) {
+		return new DiffusionDecayStencil(p.W(), diffusion, decay);
 	}
 }
@@ -0,0 +1,232 @@
+package control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Checks that a run killed part way through and then resumed from its
+ * checkpoints (see io.Checkpoint) produces exactly the output of a run
+ * that was never interrupted, and that a checkpoint that is corrupt or
+ * for other parameters is discarded rather than resumed.
+ * 
+ * The run to be interrupted is started in a separate JVM, which is
+ * killed as soon as it has written a checkpoint. It checkpoints after
+ * every time step, which keeps it slow enough to be caught part way
+ * through; the resumed runs only checkpoint occasionally.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class CheckpointTest extends TestCase {
+
+	private static final String[] ARGUMENTS = {"CELL_OPERATOR=ContinuousReplacement", "RANDOM_STREAMS=SPLIT",
+		"OUTPUT=SPARSE", "REPLICATES=2", "MAX_TIME_STEP=5000"};
+
+	private static final String[] EVERY_STEP = {"CHECKPOINT_INTERVAL=1"};
+
+	private static final String[] OCCASIONALLY = {"CHECKPOINT_INTERVAL=1000"};
+
+	private static final String[] PACKED = {"LATTICE=PACKED"};
+
+	// How long to wait for the interrupted run to write its first checkpoint
+	private static final long TIMEOUT = 120000L;
+
+	// What the last run started by capture printed
+	private String log;
+
+	public void testResume() throws IOException, InterruptedException {
+		resume(new String[0]);
+	}
+
+	/**
+	 * The PACKED lattice doesn't keep growth rates, so the tracker's
+	 * totals are rebuilt from the catalyst after a restore.
+	 */
+	public void testResumePacked() throws IOException, InterruptedException {
+		resume(PACKED);
+	}
+
+	private void resume(String[] lattice) throws IOException, InterruptedException {
+		Map<String, String> arguments = TrajectoryRegressionTest.arguments(ARGUMENTS, OCCASIONALLY, lattice);
+		File killed = interrupt(lattice);
+
+		SimulationRun uninterrupted = new SimulationRun(arguments);
+
+		try {
+			SimulationRun resumed = capture(arguments, killed);
+
+			assertTrue(log, log.contains("Resumed replicate 0"));
+			assertFalse(new File(killed, "checkpoints").exists());
+			assertEquals(uninterrupted.manifest(), resumed.manifest());
+		} finally {
+			uninterrupted.delete();
+			delete(killed);
+		}
+	}
+
+	/**
+	 * Flips a byte in the middle of every checkpoint, which the resumed
+	 * run must notice and start over.
+	 */
+	public void testCorrupt() throws IOException, InterruptedException {
+		Map<String, String> arguments = TrajectoryRegressionTest.arguments(ARGUMENTS, OCCASIONALLY);
+		File killed = interrupt(new String[0]);
+
+		SimulationRun uninterrupted = new SimulationRun(arguments);
+
+		try {
+			for (File file : checkpoints(killed)) {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				long middle = raf.length() / 2;
+				raf.seek(middle);
+				int b = raf.read();
+				raf.seek(middle);
+				raf.write(b ^ 0xFF);
+				raf.close();
+			}
+
+			SimulationRun resumed = capture(arguments, killed);
+
+			assertTrue(log, log.contains("Discarding invalid checkpoint"));
+			assertFalse(log, log.contains("Resumed replicate"));
+			assertFalse(new File(killed, "checkpoints").exists());
+			assertEquals(uninterrupted.manifest(), resumed.manifest());
+		} finally {
+			uninterrupted.delete();
+			delete(killed);
+		}
+	}
+
+	/**
+	 * Resumes with a different growth rate, which changes the
+	 * fingerprint of the parameters: the checkpoints must be discarded.
+	 */
+	public void testOtherParameters() throws IOException, InterruptedException {
+		Map<String, String> arguments = TrajectoryRegressionTest.arguments(ARGUMENTS, OCCASIONALLY,
+				new String[] {"GROWTH=0.2"});
+		File killed = interrupt(new String[0]);
+
+		SimulationRun uninterrupted = new SimulationRun(arguments);
+
+		try {
+			SimulationRun resumed = capture(arguments, killed);
+
+			assertTrue(log, log.contains("which is for other parameters"));
+			assertFalse(log, log.contains("Resumed replicate"));
+			assertFalse(new File(killed, "checkpoints").exists());
+			assertEquals(uninterrupted.manifest(), resumed.manifest());
+		} finally {
+			uninterrupted.delete();
+			delete(killed);
+		}
+	}
+
+	/**
+	 * Starts a run in a JVM of its own, kills it once it has written a
+	 * checkpoint, and returns its output directory.
+	 */
+	private File interrupt(String[] overrides) throws IOException, InterruptedException {
+		File path = SimulationRun.createDirectory();
+		File output = File.createTempFile("interrupted", ".log");
+
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RunFromArguments.class.getName());
+		for (String arg : SimulationRun.commandLine(TrajectoryRegressionTest.arguments(ARGUMENTS, EVERY_STEP, overrides), path))
+			command.add(arg);
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(output);
+		Process process = builder.start();
+
+		try {
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while (checkpoints(path).isEmpty() && process.isAlive() && System.currentTimeMillis() < deadline)
+				Thread.sleep(5L);
+		} finally {
+			process.destroyForcibly();
+			process.waitFor();
+			output.delete();
+		}
+
+		if (checkpoints(path).isEmpty()) {
+			delete(path);
+			fail("The run finished or timed out before it could be interrupted.");
+		}
+
+		return path;
+	}
+
+	/**
+	 * Runs the simulation in the given directory, keeping what it printed
+	 * in log.
+	 */
+	private SimulationRun capture(Map<String, String> arguments, File path) throws IOException {
+		PrintStream out = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		System.setOut(new PrintStream(bytes, true));
+		try {
+			return new SimulationRun(arguments, path);
+		} finally {
+			System.setOut(out);
+			log = bytes.toString();
+		}
+	}
+
+	private List<File> checkpoints(File path) {
+		List<File> found = new ArrayList<File>();
+		File[] files = new File(path, "checkpoints").listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(".checkpoint"))
+					found.add(file);
+			}
+		}
+
+		return found;
+	}
+
+	private void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+
+		Files.deleteIfExists(file.toPath());
+	}
+}
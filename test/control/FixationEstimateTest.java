@@ -0,0 +1,156 @@
+package control;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import structures.cell.AbstractCell;
+import control.parameters.Parameters;
+import control.parameters.ParametersFromArgs;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Checks the Wilson interval of FixationEstimate against values worked
+ * out independently, and pins the stopping rule, including the case in
+ * which no replicate fixes: with the defaults (MIN_REPLICATES=10, 95%
+ * confidence), the half-width is already about 0.139 after ten
+ * replicates, so a tolerance of 0.14 stops there.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class FixationEstimateTest extends TestCase {
+
+	private static final double TOLERANCE = 1e-7;
+
+	public void testNoTrials() {
+		FixationEstimate estimate = new FixationEstimate(parameters("0.1", "0.95"));
+
+		assertEquals(0.5D, estimate.getHalfWidth(), 0D);
+		assertEquals(0.5D, estimate.getCenter(), 0D);
+		assertFalse(estimate.isPrecise());
+	}
+
+	public void testWilsonInterval() {
+		checkInterval("0.95", 10, 0, 0.13876639993144455, 0.13876639993144457);
+		checkInterval("0.95", 100, 50, 0.09616846963400434, 0.5);
+		checkInterval("0.95", 20, 3, 0.15402505942227016, 0.20639380531848675);
+		checkInterval("0.99", 20, 3, 0.198399829876492, 0.23718689038456364);
+		checkInterval("0.99", 40, 0, 0.07113660675379219, 0.07113660675379219);
+	}
+
+	/**
+	 * With no fixations, the half-width after n replicates is
+	 * z^2 / (2 (n + z^2)), about 0.139 at n = 10. A tolerance of 0.14 is
+	 * met as soon as MIN_REPLICATES have been recorded; 0.13 is not.
+	 */
+	public void testStopsWithoutFixations() {
+		FixationEstimate loose = new FixationEstimate(parameters("0.14", "0.95"));
+		FixationEstimate tight = new FixationEstimate(parameters("0.13", "0.95"));
+		FixationEstimate early = new FixationEstimate(parameters("0.2", "0.95"));
+
+		for (int k = 0; k < 9; k++) {
+			loose.record(AbstractCell.OTHER);
+			tight.record(AbstractCell.OTHER);
+			early.record(AbstractCell.OTHER);
+		}
+
+		assertFalse(loose.isPrecise());
+
+		// Within 0.2 already, but MIN_REPLICATES has not been reached
+		assertTrue(early.getHalfWidth() <= 0.2D);
+		assertFalse(early.isPrecise());
+
+		loose.record(AbstractCell.OTHER);
+		tight.record(AbstractCell.OTHER);
+		early.record(AbstractCell.OTHER);
+
+		assertTrue(loose.isPrecise());
+		assertFalse(tight.isPrecise());
+		assertTrue(early.isPrecise());
+		assertEquals(0D, loose.getProbability(), 0D);
+	}
+
+	public void testCooperatorFixationsCountAgainstCheaters() {
+		FixationEstimate estimate = new FixationEstimate(parameters("0.1", "0.95"));
+		estimate.record(AbstractCell.CHEATER);
+		estimate.record(AbstractCell.COOPERATOR);
+		estimate.record(AbstractCell.OTHER);
+		estimate.record(AbstractCell.CHEATER);
+
+		assertEquals(4, estimate.getTrials());
+		assertEquals(0.5D, estimate.getProbability(), 0D);
+	}
+
+	/**
+	 * The same rule, end to end: no replicate can fix in a few steps, so
+	 * a run of at most 50 replicates with REPLICATE_TOLERANCE=0.14 stops
+	 * after MIN_REPLICATES.
+	 */
+	public void testRunStopsAtMinReplicates() throws IOException {
+		SimulationRun run = new SimulationRun(TrajectoryRegressionTest.arguments(
+				new String[] {"CELL_OPERATOR=ContinuousReplacement", "OUTPUT=MINIMAL", "MAX_TIME_STEP=5",
+						"REPLICATES=50", "REPLICATE_TOLERANCE=0.14"}));
+
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(new File(run.getPath(), "fix.precision.txt")));
+			List<String> lines = new ArrayList<String>();
+			for (String line = in.readLine(); line != null; line = in.readLine())
+				lines.add(line);
+			in.close();
+
+			assertTrue(lines.toString(), lines.contains("REPLICATES_RUN=10"));
+			assertTrue(lines.toString(), lines.contains("CHEATER_FIXATIONS=0"));
+			assertTrue(lines.toString(), lines.contains("PRECISE=true"));
+		} finally {
+			run.delete();
+		}
+	}
+
+	private void checkInterval(String confidence, int trials, int fixations, double halfWidth, double center) {
+		FixationEstimate estimate = new FixationEstimate(parameters("0.1", confidence));
+
+		for (int k = 0; k < trials; k++)
+			estimate.record(k < fixations ? AbstractCell.CHEATER : AbstractCell.OTHER);
+
+		String message = trials + " trials, " + fixations + " fixations at " + confidence;
+		assertEquals(message, halfWidth, estimate.getHalfWidth(), TOLERANCE);
+		assertEquals(message, center, estimate.getCenter(), TOLERANCE);
+	}
+
+	private Parameters parameters(String tolerance, String confidence) {
+		Map<String, String> arguments = TrajectoryRegressionTest.arguments(
+				new String[] {"CELL_OPERATOR=ContinuousReplacement", "PATH=unused/",
+						"REPLICATE_TOLERANCE=" + tolerance, "REPLICATE_CONFIDENCE=" + confidence});
+
+		List<String> args = new ArrayList<String>();
+		for (String key : arguments.keySet())
+			args.add(key + "=" + arguments.get(key));
+
+		return new ParametersFromArgs(args.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,111 @@
+package control;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import control.parameters.Parameters;
+import control.parameters.ParametersFromArgs;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Checks that seeded output depends only on RANDOM_SEED when every
+ * replicate has its own random number streams (RANDOM_STREAMS=SPLIT):
+ * not on the number of threads running the replicates, and not on
+ * which other replicates ran in the same batch.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class ReplicateStreamsTest extends TestCase {
+
+	private static final String[] SPLIT = {"RANDOM_STREAMS=SPLIT", "REPLICATES=3"};
+
+	private static final String[] REPLACEMENT = {"CELL_OPERATOR=ContinuousReplacement"};
+
+	private static final String[] DIVISION = {"CELL_OPERATOR=ContinuousDivision",
+		"IC=ProducerCheaterClump", "IC_ARGUMENT=-1", "RANDOMIZE_CHEATERS=true"};
+
+	public void testReplacementThreads() throws IOException {
+		checkThreads("ContinuousReplacement", REPLACEMENT);
+	}
+
+	public void testDivisionThreads() throws IOException {
+		checkThreads("ContinuousDivision", DIVISION);
+	}
+
+	public void testReplacementReplicateSeed() throws IOException {
+		checkReplicateSeed("ContinuousReplacement", REPLACEMENT);
+	}
+
+	public void testDivisionReplicateSeed() throws IOException {
+		checkReplicateSeed("ContinuousDivision", DIVISION);
+	}
+
+	/**
+	 * Runs the replicates on one thread and on three, and compares all of
+	 * the output.
+	 */
+	private void checkThreads(String name, String[] operator) throws IOException {
+		SimulationRun serial = new SimulationRun(TrajectoryRegressionTest.arguments(operator, SPLIT,
+				new String[] {"REPLICATE_THREADS=1"}));
+		SimulationRun parallel = new SimulationRun(TrajectoryRegressionTest.arguments(operator, SPLIT,
+				new String[] {"REPLICATE_THREADS=3"}));
+
+		try {
+			assertEquals(name, serial.manifest(), parallel.manifest());
+		} finally {
+			serial.delete();
+			parallel.delete();
+		}
+	}
+
+	/**
+	 * Reruns the last replicate of a batch on its own, with its seed, and
+	 * compares its output with that of the original.
+	 */
+	private void checkReplicateSeed(String name, String[] operator) throws IOException {
+		Map<String, String> arguments = TrajectoryRegressionTest.arguments(operator, SPLIT);
+		SimulationRun batch = new SimulationRun(arguments);
+
+		List<String> args = new ArrayList<String>();
+		for (String key : arguments.keySet())
+			args.add(key + "=" + arguments.get(key));
+		args.add("PATH=" + batch.getPath().getPath());
+
+		Parameters p = new ParametersFromArgs(args.toArray(new String[0]));
+
+		arguments.put("RANDOM_SEED", String.valueOf(p.replicateSeed(2)));
+		arguments.put("REPLICATES", "1");
+		SimulationRun single = new SimulationRun(arguments);
+
+		try {
+			assertFalse(name + ": no output", batch.manifest("2").isEmpty());
+			TrajectoryRegressionTest.compare(name, single.manifest(), batch.manifest("2"));
+		} finally {
+			batch.delete();
+			single.delete();
+		}
+	}
+}
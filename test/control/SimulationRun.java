@@ -0,0 +1,208 @@
+package control;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * A simulation run in a directory of its own, from the same arguments
+ * that RunFromArguments takes, for the regression tests. The output is
+ * summarized as a manifest: the SHA-1 digest of every output file, by
+ * path relative to the output directory. Manifests are read and written
+ * in the format of sha1sum.
+ * 
+ * Only RunFromArguments is used, so that this class (and the tests that
+ * don't need anything newer) can be compiled against older revisions to
+ * produce their reference manifests.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+class SimulationRun {
+
+	private File path;
+
+	/**
+	 * Runs the simulation. PATH is set to a new temporary directory.
+	 * 
+	 * @param arguments Parameter values by name
+	 */
+	public SimulationRun(Map<String, String> arguments) throws IOException {
+		this(arguments, createDirectory());
+	}
+
+	/**
+	 * Runs the simulation in an existing directory, such as one left
+	 * behind by an interrupted run.
+	 */
+	public SimulationRun(Map<String, String> arguments, File path) throws IOException {
+		this.path = path;
+		RunFromArguments.main(commandLine(arguments, path));
+	}
+
+	/**
+	 * The arguments of RunFromArguments, with PATH set to the given
+	 * directory.
+	 */
+	public static String[] commandLine(Map<String, String> arguments, File path) {
+		List<String> args = new ArrayList<String>();
+		for (String key : arguments.keySet())
+			args.add(key + "=" + arguments.get(key));
+
+		args.add("PATH=" + path.getPath() + File.separator);
+
+		return args.toArray(new String[0]);
+	}
+
+	/**
+	 * Creates a new, empty temporary directory.
+	 */
+	public static File createDirectory() throws IOException {
+		File path = File.createTempFile("regression", "");
+		if (!path.delete() || !path.mkdir())
+			throw new IOException("Could not create output directory " + path);
+
+		return path;
+	}
+
+	public File getPath() {
+		return path;
+	}
+
+	/**
+	 * The digest of every output file under the given subdirectory, by
+	 * path relative to it. params.txt is left out, because it records
+	 * PATH, and so are the images, which only depict data.txt.
+	 */
+	public SortedMap<String, String> manifest(String subdirectory) throws IOException {
+		SortedMap<String, String> manifest = new TreeMap<String, String>();
+		collect(new File(path, subdirectory), "", manifest);
+
+		return manifest;
+	}
+
+	public SortedMap<String, String> manifest() throws IOException {
+		return manifest("");
+	}
+
+	private void collect(File dir, String prefix, SortedMap<String, String> manifest) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null)
+			throw new IOException("Could not list " + dir);
+
+		for (File file : files) {
+			String name = prefix + file.getName();
+
+			if (file.isDirectory())
+				collect(file, name + "/", manifest);
+			else if (!(file.getName().equals("params.txt") || file.getName().endsWith(".png")))
+				manifest.put(name, digest(file));
+		}
+	}
+
+	private static String digest(File file) throws IOException {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[65536];
+			int n;
+
+			while ((n = in.read(buffer)) > 0)
+				sha.update(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : sha.digest())
+			sb.append(String.format("%02x", b));
+
+		return sb.toString();
+	}
+
+	/**
+	 * Removes the output directory and everything in it.
+	 */
+	public void delete() {
+		delete(path);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+
+		file.delete();
+	}
+
+	public static SortedMap<String, String> readManifest(File file) throws IOException {
+		SortedMap<String, String> manifest = new TreeMap<String, String>();
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.length() == 0)
+					continue;
+
+				// "<digest>  <path>"
+				int split = line.indexOf("  ");
+				manifest.put(line.substring(split + 2), line.substring(0, split));
+			}
+		} finally {
+			in.close();
+		}
+
+		return manifest;
+	}
+
+	public static void writeManifest(SortedMap<String, String> manifest, File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			for (String name : manifest.keySet())
+				out.print(manifest.get(name) + "  " + name + "\n");
+		} finally {
+			out.close();
+		}
+	}
+}
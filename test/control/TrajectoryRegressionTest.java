@@ -0,0 +1,198 @@
+package control;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Runs short simulations with fixed seeds and checks that their output
+ * is the same, byte for byte, as that of the object lattice (one
+ * AbstractCell per site), which the parallel-array lattice replaced.
+ * Each case is run with and without randomized initial biomass; the
+ * replacement cases are also run on the PACKED lattice.
+ * 
+ * The reference for each case is a manifest of output digests in
+ * test/reference (see SimulationRun). The object lattice drew every
+ * random number from one java.util.Random, so the cases run with
+ * RANDOM_STREAMS=SHARED, which does the same.
+ * 
+ * The references were written by this class, compiled against the last
+ * revision with the object lattice and run from the project directory
+ * with -Dregression.write=true. When a change to seeded output is
+ * accepted, "ant test -Dregression.write=true" rewrites them from the
+ * current tree; the commit that does so should say why.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class TrajectoryRegressionTest extends TestCase {
+
+	private static final File REFERENCE = new File("test/reference");
+
+	private static final boolean WRITE = Boolean.getBoolean("regression.write");
+
+	private static final String[] ARGUMENTS = {
+		"MAX_R=0.0001", "RANDOM_SEED=7", "PRODUCTION=0.5", "GROWTH=0.1", "DECAY=0.1",
+		"OUTPUT=FULL", "IC=WellMixed", "IC_ARGUMENT=50", "dx=1.0",
+		"RANDOMIZE_CHEATERS=false", "RANDOMIZE_COOPERATORS=false", "THRESHOLD=2.0",
+		"MAX_TIME_STEP=200", "HALT_COUNT=-1", "REPLICATES=1", "DIFFUSION=1.0",
+		"BENEFIT=1.0", "W=16", "H=16", "STAMP=false", "INFINITE_GAMMA=false",
+		"RANDOM_STREAMS=SHARED"
+	};
+
+	private static final String[] REPLACEMENT = {"CELL_OPERATOR=ContinuousReplacement"};
+
+	private static final String[] ZERO_BASELINE = {"CELL_OPERATOR=ZeroBaselineReplacement",
+		"PRODUCTION=0.05", "GROWTH=0.5"};
+
+	private static final String[] DIVISION = {"CELL_OPERATOR=ContinuousDivision",
+		"IC=ProducerCheaterClump", "IC_ARGUMENT=-1"};
+
+	private static final String[] RANDOMIZED = {"RANDOMIZE_CHEATERS=true", "RANDOMIZE_COOPERATORS=true"};
+
+	private static final String[] PACKED = {"LATTICE=PACKED", "OUTPUT=REDUCED"};
+
+	public void testContinuousReplacement() throws IOException {
+		check("ContinuousReplacement", REPLACEMENT);
+	}
+
+	public void testContinuousReplacementRandomized() throws IOException {
+		check("ContinuousReplacementRandomized", REPLACEMENT, RANDOMIZED);
+	}
+
+	public void testZeroBaselineReplacement() throws IOException {
+		check("ZeroBaselineReplacement", ZERO_BASELINE);
+	}
+
+	public void testZeroBaselineReplacementRandomized() throws IOException {
+		check("ZeroBaselineReplacementRandomized", ZERO_BASELINE, RANDOMIZED);
+	}
+
+	public void testContinuousDivision() throws IOException {
+		check("ContinuousDivision", DIVISION);
+	}
+
+	public void testContinuousDivisionRandomized() throws IOException {
+		check("ContinuousDivisionRandomized", DIVISION, RANDOMIZED);
+	}
+
+	public void testPackedContinuousReplacement() throws IOException {
+		checkPacked("ContinuousReplacement", REPLACEMENT);
+	}
+
+	public void testPackedContinuousReplacementRandomized() throws IOException {
+		checkPacked("ContinuousReplacementRandomized", REPLACEMENT, RANDOMIZED);
+	}
+
+	public void testPackedZeroBaselineReplacement() throws IOException {
+		checkPacked("ZeroBaselineReplacement", ZERO_BASELINE);
+	}
+
+	public void testPackedZeroBaselineReplacementRandomized() throws IOException {
+		checkPacked("ZeroBaselineReplacementRandomized", ZERO_BASELINE, RANDOMIZED);
+	}
+
+	/**
+	 * The common arguments, with each group of overrides applied in turn.
+	 */
+	static Map<String, String> arguments(String[]... overrides) {
+		Map<String, String> arguments = new LinkedHashMap<String, String>();
+		put(arguments, ARGUMENTS);
+
+		for (String[] group : overrides)
+			put(arguments, group);
+
+		return arguments;
+	}
+
+	private static void put(Map<String, String> arguments, String[] assignments) {
+		for (String assignment : assignments) {
+			int split = assignment.indexOf('=');
+			arguments.put(assignment.substring(0, split), assignment.substring(split + 1));
+		}
+	}
+
+	/**
+	 * Runs a case and compares every output file with the reference (or,
+	 * with -Dregression.write=true, replaces the reference).
+	 */
+	private void check(String name, String[]... overrides) throws IOException {
+		SimulationRun run = new SimulationRun(arguments(overrides));
+
+		try {
+			File reference = new File(REFERENCE, name + ".sha1");
+			SortedMap<String, String> actual = run.manifest();
+
+			if (WRITE) {
+				SimulationRun.writeManifest(actual, reference);
+				return;
+			}
+
+			SortedMap<String, String> expected = SimulationRun.readManifest(reference);
+			compare(name, expected, actual);
+			assertEquals(name + ": output files", expected.keySet(), actual.keySet());
+		} finally {
+			run.delete();
+		}
+	}
+
+	/**
+	 * Runs a case on the PACKED lattice. That lattice doesn't support
+	 * OUTPUT=FULL, so only the files the reduced output shares with the
+	 * reference are compared.
+	 */
+	private void checkPacked(String name, String[]... overrides) throws IOException {
+		if (WRITE)
+			return;
+
+		String[][] packed = new String[overrides.length + 1][];
+		System.arraycopy(overrides, 0, packed, 0, overrides.length);
+		packed[overrides.length] = PACKED;
+
+		SimulationRun run = new SimulationRun(arguments(packed));
+
+		try {
+			SortedMap<String, String> expected = SimulationRun.readManifest(new File(REFERENCE, name + ".sha1"));
+			SortedMap<String, String> actual = run.manifest();
+
+			assertTrue(name + ": no output", actual.containsKey("interval.txt"));
+			compare(name, expected, actual);
+		} finally {
+			run.delete();
+		}
+	}
+
+	/**
+	 * Checks that each file in actual is in expected, with the same digest.
+	 */
+	static void compare(String name, SortedMap<String, String> expected, SortedMap<String, String> actual) {
+		for (String file : actual.keySet()) {
+			assertTrue(name + ": unexpected output file " + file, expected.containsKey(file));
+			assertEquals(name + ": " + file + " differs", expected.get(file), actual.get(file));
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package structures;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Checks the distances kept by DistanceTransform against a breadth-first
+ * search from scratch, after random marks and unmarks, on periodic
+ * lattices of odd and even width.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class DistanceTransformTest extends TestCase {
+
+	private static final int[] WIDTHS = {2, 3, 8, 11};
+
+	public void testInitial() {
+		Random random = new Random(1);
+
+		for (int w : WIDTHS) {
+			boolean[] marked = new boolean[w * w];
+			for (int i = 0; i < marked.length; i++)
+				marked[i] = random.nextInt(5) == 0;
+
+			assertMatches("W = " + w, new DistanceTransform(w, marked), marked, w);
+		}
+	}
+
+	public void testNoneMarked() {
+		DistanceTransform transform = new DistanceTransform(4, new boolean[16]);
+
+		for (int i = 0; i < 16; i++)
+			assertEquals(DistanceTransform.UNREACHABLE, transform.distance(i));
+	}
+
+	/**
+	 * Random fills and vacates, from an empty lattice. Sparse and dense
+	 * phases alternate, so that unmarking has to recompute both small
+	 * regions and most of the lattice.
+	 */
+	public void testRandomUpdates() {
+		Random random = new Random(2);
+
+		for (int w : WIDTHS) {
+			boolean[] marked = new boolean[w * w];
+			DistanceTransform transform = new DistanceTransform(w, marked);
+
+			for (int step = 0; step < 3000; step++) {
+				int i = random.nextInt(w * w);
+				double fill = ((step / 500) % 2 == 0 ? 0.1D : 0.8D);
+				boolean value = random.nextDouble() < fill;
+
+				transform.set(i, value);
+				marked[i] = value;
+
+				assertMatches("W = " + w + ", step " + step, transform, marked, w);
+			}
+		}
+	}
+
+	/**
+	 * Unmarks every site of a full lattice, one at a time.
+	 */
+	public void testEmptying() {
+		Random random = new Random(3);
+		int w = 9;
+		boolean[] marked = new boolean[w * w];
+		Arrays.fill(marked, true);
+
+		DistanceTransform transform = new DistanceTransform(w, marked);
+
+		for (int k = 0; k < w * w; k++) {
+			int i;
+			do {
+				i = random.nextInt(w * w);
+			} while (!marked[i]);
+
+			transform.unmark(i);
+			marked[i] = false;
+
+			assertMatches("site " + i, transform, marked, w);
+		}
+	}
+
+	private void assertMatches(String message, DistanceTransform transform, boolean[] marked, int w) {
+		int[] expected = bfs(marked, w);
+		int count = 0;
+
+		for (int i = 0; i < marked.length; i++) {
+			assertEquals(message + ", marked " + i, marked[i], transform.isMarked(i));
+			assertEquals(message + ", distance " + i, expected[i], transform.distance(i));
+
+			if (marked[i])
+				count++;
+		}
+
+		assertEquals(message, count, transform.count());
+	}
+
+	/**
+	 * Breadth-first search from every marked site, over the four
+	 * neighbors with periodic boundaries.
+	 */
+	private int[] bfs(boolean[] marked, int w) {
+		int n = w * w;
+		int[] distance = new int[n];
+		int[] queue = new int[n];
+		int head = 0;
+		int tail = 0;
+
+		Arrays.fill(distance, DistanceTransform.UNREACHABLE);
+		for (int i = 0; i < n; i++) {
+			if (marked[i]) {
+				distance[i] = 0;
+				queue[tail++] = i;
+			}
+		}
+
+		while (head < tail) {
+			int i = queue[head++];
+			int x = i % w;
+			int y = i / w;
+			int[] neighbors = {y * w + (x + 1) % w, y * w + (x + w - 1) % w,
+					((y + 1) % w) * w + x, ((y + w - 1) % w) * w + x};
+
+			for (int j : neighbors) {
+				if (distance[j] == DistanceTransform.UNREACHABLE) {
+					distance[j] = distance[i] + 1;
+					queue[tail++] = j;
+				}
+			}
+		}
+
+		return distance;
+	}
+}
@@ -0,0 +1,180 @@
+package structures;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Checks EventQueue against a plain array of times: the earliest slot,
+ * with ties broken by slot index, after every schedule, reschedule and
+ * removal, and the order in which the slots are drained.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class EventQueueTest extends TestCase {
+
+	public void testRandomOperations() {
+		Random random = new Random(1);
+		int n = 40;
+		EventQueue queue = new EventQueue(n);
+		double[] times = new double[n];
+		Arrays.fill(times, Double.POSITIVE_INFINITY);
+
+		for (int step = 0; step < 5000; step++) {
+			int i = random.nextInt(n);
+			int op = random.nextInt(4);
+
+			if (op == 0) {
+				queue.remove(i);
+				times[i] = Double.POSITIVE_INFINITY;
+			} else if (op == 1 && !queue.isEmpty()) {
+				int expected = earliest(times);
+				assertEquals(expected, queue.poll());
+				times[expected] = Double.POSITIVE_INFINITY;
+			} else {
+				// Few distinct times, so that there are plenty of ties
+				times[i] = random.nextInt(20);
+				queue.set(i, times[i]);
+			}
+
+			assertMatches(queue, times);
+		}
+
+		drain(queue, times);
+	}
+
+	/**
+	 * Moves scheduled slots both earlier and later, so that they have to
+	 * sift in both directions.
+	 */
+	public void testReschedule() {
+		Random random = new Random(2);
+		int n = 64;
+		EventQueue queue = new EventQueue(n);
+		double[] times = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			times[i] = random.nextDouble();
+			queue.set(i, times[i]);
+		}
+
+		for (int step = 0; step < 1000; step++) {
+			int i = random.nextInt(n);
+			times[i] += random.nextGaussian();
+			queue.set(i, times[i]);
+
+			assertMatches(queue, times);
+		}
+
+		drain(queue, times);
+	}
+
+	public void testTies() {
+		EventQueue queue = new EventQueue(5);
+		queue.set(3, 1D);
+		queue.set(1, 1D);
+		queue.set(4, 1D);
+		queue.set(0, 2D);
+
+		assertEquals(1, queue.poll());
+		assertEquals(3, queue.poll());
+		assertEquals(4, queue.poll());
+		assertEquals(0, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	public void testInfinityUnschedules() {
+		EventQueue queue = new EventQueue(3);
+		queue.set(1, 5D);
+		queue.set(1, Double.POSITIVE_INFINITY);
+
+		assertTrue(queue.isEmpty());
+		assertEquals(Double.POSITIVE_INFINITY, queue.peekTime(), 0D);
+		assertEquals(Double.POSITIVE_INFINITY, queue.getTime(1), 0D);
+
+		// Removing a slot that isn't scheduled does nothing
+		queue.remove(2);
+		assertEquals(0, queue.size());
+	}
+
+	public void testUndefinedTime() {
+		EventQueue queue = new EventQueue(3);
+
+		try {
+			queue.set(0, Double.NaN);
+			fail("Scheduled a slot at NaN");
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	private void drain(EventQueue queue, double[] times) {
+		double previous = Double.NEGATIVE_INFINITY;
+		int last = -1;
+
+		while (!queue.isEmpty()) {
+			int expected = earliest(times);
+			int i = queue.poll();
+			assertEquals(expected, i);
+
+			assertTrue(times[i] > previous || (times[i] == previous && i > last));
+			previous = times[i];
+			last = i;
+			times[i] = Double.POSITIVE_INFINITY;
+		}
+
+		assertEquals(-1, earliest(times));
+	}
+
+	private void assertMatches(EventQueue queue, double[] times) {
+		int count = 0;
+		for (int i = 0; i < times.length; i++) {
+			assertEquals(times[i], queue.getTime(i), 0D);
+			if (times[i] != Double.POSITIVE_INFINITY)
+				count++;
+		}
+
+		assertEquals(count, queue.size());
+
+		int expected = earliest(times);
+		if (expected == -1) {
+			assertTrue(queue.isEmpty());
+		} else {
+			assertEquals(expected, queue.peek());
+			assertEquals(times[expected], queue.peekTime(), 0D);
+		}
+	}
+
+	// Earliest scheduled slot, lowest index first, or -1
+	private int earliest(double[] times) {
+		int best = -1;
+
+		for (int i = 0; i < times.length; i++) {
+			if (times[i] != Double.POSITIVE_INFINITY && (best == -1 || times[i] < times[best]))
+				best = i;
+		}
+
+		return best;
+	}
+}
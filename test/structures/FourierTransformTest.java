@@ -0,0 +1,151 @@
+package structures;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Compares FourierTransform with a naive discrete Fourier transform,
+ * for power-of-two lengths (radix-2) and other lengths (Bluestein).
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class FourierTransformTest extends TestCase {
+
+	private static final int[] LENGTHS = {1, 2, 16, 21, 33};
+
+	private static final double TOLERANCE = 1e-10;
+
+	public void testForward() {
+		for (int n : LENGTHS) {
+			double[][] x = random(n, n);
+			double[][] expected = naive(x[0], x[1], 1, n);
+
+			new FourierTransform(n).forward(x[0], x[1]);
+			assertClose("n = " + n, expected, x);
+		}
+	}
+
+	public void testForward2D() {
+		for (int n : LENGTHS) {
+			double[][] x = random(n, n * n);
+			double[][] expected = naive(x[0], x[1], n, n);
+
+			new FourierTransform(n).forward2D(x[0], x[1]);
+			assertClose("n = " + n, expected, x);
+		}
+	}
+
+	public void testInverse2D() {
+		for (int n : LENGTHS) {
+			double[][] x = random(n, n * n);
+			double[][] expected = {x[0].clone(), x[1].clone()};
+
+			FourierTransform fft = new FourierTransform(n);
+			fft.forward2D(x[0], x[1]);
+			fft.inverse2D(x[0], x[1]);
+			assertClose("n = " + n, expected, x);
+		}
+	}
+
+	/**
+	 * The inverse of the naive transform is its conjugate, scaled by
+	 * 1 / n^2; checks inverse2D against it directly.
+	 */
+	public void testInverse2DNaive() {
+		for (int n : LENGTHS) {
+			double[][] x = random(n, n * n);
+
+			double[] im = x[1].clone();
+			for (int i = 0; i < im.length; i++)
+				im[i] = -im[i];
+
+			double[][] expected = naive(x[0], im, n, n);
+			for (int i = 0; i < im.length; i++) {
+				expected[0][i] /= n * n;
+				expected[1][i] /= -n * n;
+			}
+
+			new FourierTransform(n).inverse2D(x[0], x[1]);
+			assertClose("n = " + n, expected, x);
+		}
+	}
+
+	/**
+	 * Transform of an h x w row-major array (h = 1 for one dimension),
+	 * summed term by term.
+	 */
+	private double[][] naive(double[] re, double[] im, int h, int w) {
+		double[] outRe = new double[h * w];
+		double[] outIm = new double[h * w];
+
+		for (int ky = 0; ky < h; ky++) {
+			for (int kx = 0; kx < w; kx++) {
+				double sumRe = 0D;
+				double sumIm = 0D;
+
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						// Reduce the phase exactly before scaling it
+						long phase = ((long) kx * x % w) * h + ((long) ky * y % h) * w;
+						double angle = -2D * Math.PI * phase / ((double) h * w);
+
+						double c = Math.cos(angle);
+						double s = Math.sin(angle);
+						int i = y * w + x;
+
+						sumRe += re[i] * c - im[i] * s;
+						sumIm += re[i] * s + im[i] * c;
+					}
+				}
+
+				outRe[ky * w + kx] = sumRe;
+				outIm[ky * w + kx] = sumIm;
+			}
+		}
+
+		return new double[][] {outRe, outIm};
+	}
+
+	private double[][] random(int seed, int length) {
+		Random random = new Random(seed);
+		double[][] x = new double[2][length];
+
+		for (int i = 0; i < length; i++) {
+			x[0][i] = random.nextDouble() - 0.5D;
+			x[1][i] = random.nextDouble() - 0.5D;
+		}
+
+		return x;
+	}
+
+	private void assertClose(String message, double[][] expected, double[][] actual) {
+		for (int c = 0; c < 2; c++) {
+			assertEquals(message, expected[c].length, actual[c].length);
+
+			for (int i = 0; i < expected[c].length; i++)
+				assertEquals(message + ", element " + i, expected[c][i], actual[c][i], TOLERANCE * expected[c].length);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package structures;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Copyright (c) 2013, David Bruce Borenstein.
+ * 
+ * This file is part of the source code for "Non-local interaction via diffusible resource 
+ * prevents coexistence of cooperators and cheaters in a lattice model"
+ * (PLOS ONE, Borenstein, et al. 2013).
+ * 
+ * This work is licensed under the Creative Commons 2.0 BY-NC license.
+ * 
+ * Attribute (BY) -- You must attribute the work in the manner specified 
+ * by the author or licensor (but not in any way that suggests that they 
+ * endorse you or your use of the work).
+ * 
+ * Noncommercial (NC) -- You may not use this work for commercial purposes.
+ * 
+ * For the full license, please visit:
+ * http://creativecommons.org/licenses/by-nc/3.0/legalcode
+ * 
+ * 
+ * 
+ * Checks the sums kept by PropensityTree against direct sums, and the
+ * slot that sample() returns at the boundaries between slots, with
+ * zero-weight slots and lengths that are not powers of two.
+ * 
+ * @author dbborens@princeton.edu
+ *
+ */
+public class PropensityTreeTest extends TestCase {
+
+	public void testSums() {
+		Random random = new Random(1);
+		int n = 37;
+		PropensityTree tree = new PropensityTree(n, 2);
+		double[] weights = new double[n];
+		int[] categories = new int[n];
+
+		for (int step = 0; step < 500; step++) {
+			int i = random.nextInt(n);
+			weights[i] = (random.nextInt(4) == 0 ? 0D : random.nextDouble());
+			categories[i] = random.nextInt(2);
+			tree.set(i, weights[i], categories[i]);
+
+			assertSums(tree, weights, categories);
+		}
+	}
+
+	/**
+	 * Putting every weight and rebuilding gives exactly the sums that
+	 * setting them one at a time does.
+	 */
+	public void testRebuild() {
+		Random random = new Random(2);
+		int n = 21;
+		PropensityTree set = new PropensityTree(n, 2);
+		PropensityTree put = new PropensityTree(n, 2);
+
+		for (int i = 0; i < n; i++) {
+			double weight = random.nextDouble();
+			int c = random.nextInt(2);
+
+			set.set(i, weight, c);
+			put.put(i, weight, c);
+		}
+
+		put.rebuild();
+
+		assertEquals(set.total(), put.total(), 0D);
+		assertEquals(set.total(0), put.total(0), 0D);
+		assertEquals(set.total(1), put.total(1), 0D);
+	}
+
+	public void testCategoryChange() {
+		PropensityTree tree = new PropensityTree(3, 2);
+		tree.set(1, 2D, 0);
+		tree.set(1, 2D, 1);
+
+		assertEquals(0D, tree.total(0), 0D);
+		assertEquals(2D, tree.total(1), 0D);
+		assertEquals(2D, tree.total(), 0D);
+	}
+
+	/**
+	 * Each slot is drawn for u at its own start and just short of its
+	 * end; zero-weight slots, including the first and last, never are.
+	 */
+	public void testSampleBoundaries() {
+		double[] weights = {0D, 1D, 0D, 0D, 2D, 1D, 0D};
+		PropensityTree tree = make(weights);
+
+		assertEquals(1, tree.sample(0D));
+		assertEquals(1, tree.sample(Math.nextAfter(0.25D, 0D)));
+		assertEquals(4, tree.sample(0.25D));
+		assertEquals(4, tree.sample(Math.nextAfter(0.75D, 0D)));
+		assertEquals(5, tree.sample(0.75D));
+		assertEquals(5, tree.sample(Math.nextAfter(1D, 0D)));
+	}
+
+	public void testSampleLastSlot() {
+		double[] weights = {1D, 0D, 0D, 0D, 0D, 3D};
+		PropensityTree tree = make(weights);
+
+		assertEquals(0, tree.sample(Math.nextAfter(0.25D, 0D)));
+		assertEquals(5, tree.sample(0.25D));
+		assertEquals(5, tree.sample(Math.nextAfter(1D, 0D)));
+	}
+
+	/**
+	 * Rounding may leave the target past the last occupied slot; the
+	 * sample must still land on an occupied slot.
+	 */
+	public void testSampleNeverEmpty() {
+		Random random = new Random(3);
+		int n = 50;
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++)
+			weights[i] = (i % 3 == 0 ? 0D : random.nextDouble() * 1e-3);
+
+		PropensityTree tree = make(weights);
+
+		for (int k = 0; k < 1000; k++)
+			assertTrue(weights[tree.sample(random.nextDouble())] > 0D);
+
+		assertTrue(weights[tree.sample(Math.nextAfter(1D, 0D))] > 0D);
+	}
+
+	public void testEmpty() {
+		PropensityTree tree = new PropensityTree(4, 1);
+		assertTrue(tree.isEmpty());
+
+		tree.set(2, 1D, 0);
+		assertFalse(tree.isEmpty());
+
+		tree.set(2, 0D, 0);
+		assertTrue(tree.isEmpty());
+
+		try {
+			tree.sample(0.5D);
+			fail("Sampled an empty tree");
+		} catch (IllegalStateException ex) {
+		}
+	}
+
+	public void testNegativeWeight() {
+		PropensityTree tree = new PropensityTree(4, 1);
+
+		try {
+			tree.set(0, -1D, 0);
+			fail("Accepted a negative weight");
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	public void testSaveRestore() throws IOException {
+		double[] weights = {0.5D, 0D, 2D, 1D, 0.25D};
+		PropensityTree tree = make(weights);
+		tree.set(3, 1D, 1);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		tree.save(new DataOutputStream(bytes));
+
+		PropensityTree copy = new PropensityTree(weights.length, 2);
+		copy.restore(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(tree.total(), copy.total(), 0D);
+		assertEquals(tree.total(1), copy.total(1), 0D);
+		for (int i = 0; i < weights.length; i++)
+			assertEquals(tree.get(i), copy.get(i), 0D);
+
+		assertEquals(tree.sample(0.9D), copy.sample(0.9D));
+	}
+
+	private PropensityTree make(double[] weights) {
+		PropensityTree tree = new PropensityTree(weights.length, 2);
+
+		for (int i = 0; i < weights.length; i++)
+			tree.set(i, weights[i], 0);
+
+		return tree;
+	}
+
+	private void assertSums(PropensityTree tree, double[] weights, int[] categories) {
+		double total = 0D;
+		double[] totals = new double[2];
+		boolean empty = true;
+
+		for (int i = 0; i < weights.length; i++) {
+			assertEquals(weights[i], tree.get(i), 0D);
+
+			total += weights[i];
+			totals[categories[i]] += weights[i];
+			empty &= (weights[i] == 0D);
+		}
+
+		assertEquals(total, tree.total(), 1e-12);
+		assertEquals(totals[0], tree.total(0), 1e-12);
+		assertEquals(totals[1], tree.total(1), 1e-12);
+		assertEquals(empty, tree.isEmpty());
+	}
+}